@@ -0,0 +1,63 @@
+package net.ivango.benchmarks;
+
+import net.ivango.clock.InstantClock;
+import net.ivango.components.CoffeeMachine;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.metrics.EventProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static net.ivango.config.Properties.PICK_COFFEE_PARALLELISM;
+
+/**
+ * Cost of a single dispatch decision of each policy, with the machines under a random load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"RANDOM", "LEAST_LOADED", "JOIN_SHORTEST_QUEUE", "POWER_OF_TWO_CHOICES", "COFFEE_TYPE_AFFINITY"})
+    private StandardDispatchPolicy policy;
+
+    @Param({"2", "16"})
+    private int machines;
+
+    private CoffeeMachine[] coffeeMachines;
+
+    @Setup
+    public void setUp() {
+        Config config = Config.load().with(PICK_COFFEE_PARALLELISM, machines);
+        EventProcessor eventProcessor = new EventProcessor(config);
+        Random random = new Random(42);
+        coffeeMachines = CoffeeMachine.createCoffeeMachines(eventProcessor, InstantClock.INSTANCE, config);
+        for (int i=0; i < machines; i++) {
+            for (int j = random.nextInt(10); j > 0; j--) {
+                coffeeMachines[i].assign(CoffeeType.values()[random.nextInt(CoffeeType.values().length)]);
+            }
+        }
+    }
+
+    /* each benchmark thread has its own random stream, as each customer does */
+    @State(Scope.Thread)
+    public static class CustomerRandom {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CoffeeMachine select(CustomerRandom customer) { return policy.select(coffeeMachines, CoffeeType.LATTE, customer.random); }
+
+    /* the same decision with the menus and the availability of the machines checked first */
+    @Benchmark
+    @Threads(4)
+    public CoffeeMachine selectAvailable(CustomerRandom customer) { return policy.selectAvailable(coffeeMachines, CoffeeType.LATTE, customer.random); }
+}
@@ -0,0 +1,73 @@
+package net.ivango.benchmarks;
+
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Stage;
+import net.ivango.metrics.EventProcessor;
+import net.ivango.metrics.PackedEvent;
+import net.ivango.metrics.events.CupDispensed;
+import net.ivango.metrics.events.CupSold;
+import net.ivango.metrics.events.CustomerServiced;
+import net.ivango.metrics.events.StageCompleted;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event submission throughput of the EventProcessor with an increasing amount of the submitting threads.
+ * Each operation submits one event of each type a customer produces, encoded into longs as the simulations do.
+ * submitEventObjectsSingleThread allocates the event objects instead: compare the two with -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventProcessorBenchmark {
+
+    private EventProcessor eventProcessor;
+
+    /* not constants: the events are encoded on each operation */
+    private PaymentType paymentType = PaymentType.CASH;
+    private CoffeeType coffeeType = CoffeeType.LATTE;
+    private long paymentTime = 1000, serviceTime = 2750;
+
+    @Setup
+    public void setUp() {
+        eventProcessor = new EventProcessor(Config.load());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void submitSingleThread() { submit(); }
+
+    @Benchmark
+    @Threads(2)
+    public void submitTwoThreads() { submit(); }
+
+    @Benchmark
+    @Threads(4)
+    public void submitFourThreads() { submit(); }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void submitAllCores() { submit(); }
+
+    @Benchmark
+    @Threads(1)
+    public void submitEventObjectsSingleThread() {
+        eventProcessor.submitEvent(new CupSold(paymentType, 1, paymentTime));
+        eventProcessor.submitEvent(new CupDispensed(coffeeType, 1));
+        eventProcessor.submitEvent(new CustomerServiced(serviceTime));
+        eventProcessor.submitEvent(new StageCompleted(Stage.PAYMENT, 0, 1200, 1200 + paymentTime));
+    }
+
+    private void submit() {
+        eventProcessor.submitEvent( PackedEvent.cupSold(paymentType, 1, paymentTime) );
+        eventProcessor.submitEvent( PackedEvent.cupDispensed(coffeeType, 1) );
+        eventProcessor.submitEvent( PackedEvent.customerServiced(serviceTime) );
+        eventProcessor.submitEvent( PackedEvent.stageCompleted(Stage.PAYMENT, paymentTime, StageCompleted.NO_COFFEE_MACHINE), 1200 );
+    }
+}
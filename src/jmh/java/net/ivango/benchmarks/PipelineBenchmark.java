@@ -0,0 +1,42 @@
+package net.ivango.benchmarks;
+
+import net.ivango.CoffeeModeling;
+import net.ivango.DiscreteEventModeling;
+import net.ivango.arrivals.ArrivalProcess;
+import net.ivango.clock.InstantClock;
+import net.ivango.components.QueueFiller;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end overhead of the simulator: customers processed per second with zero-delay timings,
+ * so only the simulation machinery (threads, queues, metrics, the report) is measured.
+ * The discrete-event simulation runs in the virtual time, so its delays cost nothing anyway.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final int CUSTOMERS = 10_000;
+
+    @Param({"THREAD_POOLS", "RING_BUFFERS", "VIRTUAL_THREADS", "DISCRETE_EVENT"})
+    private String mode;
+
+    private final QueueFiller queueFiller = new QueueFiller(InstantClock.INSTANCE);
+
+    @Benchmark
+    @OperationsPerInvocation(CUSTOMERS)
+    public void customers() {
+        if ("DISCRETE_EVENT".equals(mode)) {
+            new DiscreteEventModeling().launch(queueFiller.streamRandomCustomers(CUSTOMERS), ArrivalProcess.simultaneous());
+        } else {
+            new CoffeeModeling(InstantClock.INSTANCE, CoffeeModeling.ExecutionMode.valueOf(mode))
+                    .launch(queueFiller.streamRandomCustomers(CUSTOMERS), ArrivalProcess.simultaneous());
+        }
+    }
+}
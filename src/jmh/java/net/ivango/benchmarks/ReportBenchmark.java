@@ -0,0 +1,56 @@
+package net.ivango.benchmarks;
+
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Stage;
+import net.ivango.metrics.EventProcessor;
+import net.ivango.metrics.events.CupDispensed;
+import net.ivango.metrics.events.CupSold;
+import net.ivango.metrics.events.CustomerServiced;
+import net.ivango.metrics.events.StageCompleted;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to generate the html report, the file output excluded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Param({"1000", "100000"})
+    private int customers;
+
+    private EventProcessor eventProcessor;
+
+    @Setup
+    public void setUp() {
+        eventProcessor = new EventProcessor(Config.load());
+        Random random = new Random(42);
+        for (int i=0; i < customers; i++) {
+            eventProcessor.submitEvent(new CupSold(PaymentType.values()[random.nextInt(PaymentType.values().length)], 1, 1000));
+            eventProcessor.submitEvent(new CupDispensed(CoffeeType.values()[random.nextInt(CoffeeType.values().length)], 1 + random.nextInt(2)));
+            eventProcessor.submitEvent(new CustomerServiced(random.nextInt(1_000_000)));
+            for (Stage stage : Stage.values()) {
+                eventProcessor.submitEvent(new StageCompleted(stage, 0, random.nextInt(10_000), 10_000 + random.nextInt(1000)));
+            }
+        }
+        eventProcessor.setModeledTime(1_000_000);
+    }
+
+    @Benchmark
+    public String writeReport() throws IOException {
+        StringWriter writer = new StringWriter();
+        eventProcessor.writeReport(writer);
+        return writer.toString();
+    }
+}
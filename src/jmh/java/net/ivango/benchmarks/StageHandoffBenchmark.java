@@ -0,0 +1,93 @@
+package net.ivango.benchmarks;
+
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Programmer;
+import net.ivango.pipeline.RingBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handoff of the customers between two stages of the pipeline:
+ * a producer stage offers the customers, a consumer stage takes them.
+ * Compares the blocking queue of the THREAD_POOLS mode of CoffeeModeling with the ring buffer of the RING_BUFFERS mode,
+ * the latter taking the customers one by one and in batches. Both are bounded to the same capacity.
+ *
+ * The score to compare is the "customers" counter: the customers moved per second.
+ * The primary score counts the calls, the failed offers to a full queue and the polls of an empty one included.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageHandoffBenchmark {
+
+    private static final int RING_CAPACITY = 1024;
+
+    private BlockingQueue<Programmer> queue;
+    private RingBuffer<Programmer> ring;
+    private final Programmer programmer = new Programmer(PaymentType.CREDIT);
+
+    /**
+     * Customers taken by the consumer stage: only the successful transfers count.
+     * */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Transfers {
+        public long customers;
+
+        @Setup(Level.Iteration)
+        public void reset() { customers = 0; }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queue = new LinkedBlockingDeque<>(RING_CAPACITY);
+        ring = new RingBuffer<>(RING_CAPACITY);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean offer() { return queue.offer(programmer); }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public void poll(Transfers transfers, Blackhole blackhole) {
+        /* non-blocking: a blocked consumer would never finish the iteration once the producer stops */
+        Programmer taken = queue.poll();
+        if (taken != null) { transfers.customers++; }
+        blackhole.consume(taken);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public boolean ringOffer() { return ring.offer(programmer); }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public void ringPoll(Transfers transfers, Blackhole blackhole) throws InterruptedException {
+        transfers.customers += ring.poll(blackhole::consume, 1);
+    }
+
+    @Benchmark
+    @Group("ringBatched")
+    @GroupThreads(1)
+    public boolean ringBatchedOffer() { return ring.offer(programmer); }
+
+    @Benchmark
+    @Group("ringBatched")
+    @GroupThreads(1)
+    public void ringBatchedPoll(Transfers transfers, Blackhole blackhole) throws InterruptedException {
+        /* a call moves up to a batch of the customers: the counter gets each of them */
+        transfers.customers += ring.poll(blackhole::consume, 64);
+    }
+}
@@ -1,20 +1,36 @@
 package net.ivango;
 
+import net.ivango.arrivals.ArrivalProcess;
+import net.ivango.clock.Clock;
+import net.ivango.clock.RealTimeClock;
 import net.ivango.components.CashRegister;
 import net.ivango.components.CoffeeMachine;
+import net.ivango.components.DispatchPolicy;
+import net.ivango.components.QueuePolicy;
+import net.ivango.components.StandardDispatchPolicy;
 import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
 import net.ivango.entities.Cup;
 import net.ivango.entities.Programmer;
+import net.ivango.entities.Stage;
 import net.ivango.metrics.EventProcessor;
-import net.ivango.metrics.events.CustomerServiced;
+import net.ivango.metrics.MappedEventLog;
+import net.ivango.metrics.PackedEvent;
+import net.ivango.monitoring.SimulationProbe;
+import net.ivango.pipeline.RingBuffer;
+import net.ivango.metrics.events.CustomerLost;
+import net.ivango.metrics.events.StageCompleted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
 
 import static net.ivango.config.Properties.*;
 
@@ -22,49 +38,296 @@ import static net.ivango.config.Properties.*;
  * Models the coffee-drinking process:
  * a queue of customers (programmers) chooses coffee type to drink,
  * then pays for it, then pour the drink and leaves.
+ * Each coffee machine has its own queue: customers are assigned to the machines by a {@link DispatchPolicy}.
  *
  * An html report is generated as a result of this execution.
  * An instance of this class is not reusable after calling the launch() method.
  *
+ * Three execution modes are supported (see {@link ExecutionMode}):
+ * fixed worker thread pools connected with blocking queues or with pre-allocated ring buffers,
+ * or a virtual thread per customer with the components guarded by semaphores.
+ *
+ * The payment and the dispense queues may be bounded, see {@link QueuePolicy}.
+ * Under the RENEGE policy a customer waiting for a place in a full queue (or for a server of the VIRTUAL_THREADS mode)
+ * leaves once his patience runs out, like in the discrete-event simulation. A customer out of patience in a queue
+ * of the worker threads leaves once he reaches its head: a server finds him gone and takes the next customer at once.
+ * The queue length is bounded by the capacity anyway.
+ *
  * Created by Ivan Golubev <igolubev@ea.com> on 4/3/16.
  */
-public class CoffeeModeling {
+public class CoffeeModeling implements SimulationProbe {
+
+    /**
+     * Defines how the customers are run.
+     * */
+    public enum ExecutionMode {
+        /* each stage is served by a fixed pool of worker threads, customers are passed via blocking queues */
+        THREAD_POOLS,
+        /* the same worker threads, customers are passed via lock-free ring buffers (see {@link RingBuffer}):
+         * the handoff allocates nothing and the single worker of a coffee machine takes the waiting customers in batches */
+        RING_BUFFERS,
+        /* each customer runs on its own virtual thread (Java 21+), stages are limited by semaphores.
+         * Falls back to the platform threads on older JVMs. */
+        VIRTUAL_THREADS
+    }
+
+    private ExecutionMode executionMode;
+
+    /**
+     * Passes a customer to the queue of the next stage: returns false if the customer balked, the queue is full.
+     * */
+    @FunctionalInterface
+    private interface Handoff {
+        boolean pass(Programmer programmer) throws InterruptedException;
+    }
 
     /* Thread pools and queues to run the simulation */
     private ExecutorService coffeeSelectionThreadPool, paymentThreadPool, pickCoffeeThreadPool;
-    private CountDownLatch doneSignal;
-    private BlockingQueue<Programmer> paymentQueue = new LinkedBlockingDeque<>(),
-                                      dispenseQueue = new LinkedBlockingDeque<>();
+    /* released once per serviced or lost customer */
+    private Semaphore servicedCustomers = new Semaphore(0);
+    /* a payment queue per cash register, indexed by the register number - 1 */
+    private List<BlockingQueue<Programmer>> paymentQueues = new ArrayList<>();
+    /* a dispense queue per coffee machine, indexed by the machine number - 1 */
+    private List<BlockingQueue<Programmer>> dispenseQueues = new ArrayList<>();
+
+    /* Ring buffers replacing the queues in the RING_BUFFERS mode: the arrivals one feeds the coffee selection workers */
+    private RingBuffer<Programmer> arrivalRing;
+    /* a payment ring per cash register and a dispense ring per coffee machine, indexed by the register/ machine number - 1 */
+    private List<RingBuffer<Programmer>> paymentRings = new ArrayList<>(), dispenseRings = new ArrayList<>();
+    /* ring buffers are pre-allocated: an unbounded queue is replaced with a ring of this capacity */
+    private static final int UNBOUNDED_RING_CAPACITY = 1 << 16;
+    /* maximum amount of customers the single worker of a cash register or a coffee machine takes from its ring at once */
+    private static final int BATCH_SIZE = 64;
+
+    /* pass a customer to the payment queue of each cash register and to the dispense queue of each coffee machine,
+     * indexed by the register/ machine number - 1 */
+    private Handoff[] paymentHandoffs, dispenseHandoffs;
+
+    /* Customer threads and semaphores to run the simulation in the VIRTUAL_THREADS mode */
+    private ExecutorService customerExecutor;
+    private Semaphore coffeeSelectionPlaces;
+    /* a semaphore per cash register and per coffee machine with a permit per cash desk/ outlet, indexed by the register/ machine number - 1 */
+    private Semaphore[] cashDesks, coffeeMachineOutlets;
+    /* places in the bounded queues plus the server: one per cash register and one per coffee machine, null if unbounded */
+    private Semaphore[] paymentLines, coffeeMachineLines;
 
     /* event aggregator/ processor */
     private EventProcessor eventProcessor;
     /* components to emulate the coffee-drinking process */
-    private CashRegister cashRegister;
+    private CashRegister[] cashRegisters;
     private CoffeeMachine[] coffeeMachines;
+    /* coffee types poured by the machines: the customers choose among them */
+    private CoffeeType[] coffeeTypes;
+    /* assigns the customers to the coffee machines */
+    private DispatchPolicy dispatchPolicy;
+    /* defines what the customers do when a queue is full */
+    private QueuePolicy queuePolicy = QueuePolicy.BLOCK;
+    /* binary log of all the events, absent if null */
+    private MappedEventLog eventLog;
+
+    /* settings of this simulation, stored in the event log */
+    private Config config;
+    /* modeled time source: real-time or accelerated */
+    private Clock clock;
+    /* modeled time in milliseconds when the launch started, NOT_STARTED before the launch */
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    private volatile long launchStart = NOT_STARTED;
 
     /* miscellaneous objects */
     private Logger logger = LoggerFactory.getLogger(CoffeeModeling.class);
-    private Random random = new Random();
 
-    public CoffeeModeling() {
+    public CoffeeModeling() { this(RealTimeClock.INSTANCE); }
+
+    public CoffeeModeling(Clock clock) { this(clock, ExecutionMode.THREAD_POOLS); }
+
+    public CoffeeModeling(Clock clock, ExecutionMode executionMode) { this(clock, executionMode, StandardDispatchPolicy.RANDOM); }
+
+    /**
+     * @param clock – modeled time source shared by all the components, e.g. a {@link net.ivango.clock.ScaledClock}
+     *              to run the simulation faster than the real time. The virtual time is supported by {@link DiscreteEventModeling}.
+     * @param executionMode – defines how the customers are run.
+     * @param dispatchPolicy – assigns the customers to the coffee machines.
+     * */
+    public CoffeeModeling(Clock clock, ExecutionMode executionMode, DispatchPolicy dispatchPolicy) {
         /* read configuration setting from external JSON file */
-        Config.init();
+        this(Config.load(), clock, executionMode, dispatchPolicy);
+    }
+
+    /**
+     * @param config – settings of this simulation, e.g. the levels of parallelism.
+     *               The customers should be generated with the same settings, see {@link net.ivango.components.QueueFiller}.
+     * @param clock – modeled time source shared by all the components.
+     * @param executionMode – defines how the customers are run.
+     * @param dispatchPolicy – assigns the customers to the coffee machines.
+     * */
+    public CoffeeModeling(Config config, Clock clock, ExecutionMode executionMode, DispatchPolicy dispatchPolicy) {
+        this.config = config;
+        this.clock = clock;
+        this.executionMode = executionMode;
+        this.dispatchPolicy = dispatchPolicy;
 
         /* initialize the components */
-        eventProcessor = new EventProcessor();
-        cashRegister = new CashRegister(eventProcessor);
-        /* initialize the coffee machines: each machine should have a number (to name it later in reports) */
-        coffeeMachines = new CoffeeMachine[Config.get(PICK_COFFEE_PARALLELISM)];
-        for (int i=0; i < Config.get(PICK_COFFEE_PARALLELISM); i++) { coffeeMachines[i] = new CoffeeMachine(eventProcessor, i+1); }
+        eventProcessor = new EventProcessor(config);
+        eventProcessor.addScenarioProperty("Execution mode", executionMode);
+        eventProcessor.addScenarioProperty("Dispatch policy", dispatchPolicy);
+        /* each cash register has a number as well and accepts some of the payment types */
+        cashRegisters = CashRegister.createCashRegisters(eventProcessor, clock, config);
+        /* initialize the coffee machines: each machine should have a number (to name it later in reports), a menu and outlets */
+        coffeeMachines = CoffeeMachine.createCoffeeMachines(eventProcessor, clock, config);
+        coffeeTypes = CoffeeMachine.getCoffeeTypes(coffeeMachines);
+
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            /* the levels of parallelism limit the amount of customers served simultaneously at each stage */
+            coffeeSelectionPlaces = new Semaphore(config.get(COFFEE_SELECT_PARALLELISM), true);
+            cashDesks = new Semaphore[cashRegisters.length];
+            for (int i=0; i < cashRegisters.length; i++) { cashDesks[i] = new Semaphore(1, true); }
+            coffeeMachineOutlets = new Semaphore[coffeeMachines.length];
+            for (int i=0; i < coffeeMachines.length; i++) { coffeeMachineOutlets[i] = new Semaphore(coffeeMachines[i].getOutlets(), true); }
+            if (config.get(PAYMENT_QUEUE_CAPACITY) > 0) {
+                paymentLines = new Semaphore[cashRegisters.length];
+                for (int i=0; i < cashRegisters.length; i++) { paymentLines[i] = new Semaphore(config.get(PAYMENT_QUEUE_CAPACITY) + 1, true); }
+            }
+            if (config.get(DISPENSE_QUEUE_CAPACITY) > 0) {
+                coffeeMachineLines = new Semaphore[coffeeMachines.length];
+                for (int i=0; i < coffeeMachines.length; i++) {
+                    coffeeMachineLines[i] = new Semaphore(config.get(DISPENSE_QUEUE_CAPACITY) + coffeeMachines[i].getOutlets(), true);
+                }
+            }
+            customerExecutor = newVirtualThreadPerTaskExecutor();
+            return;
+        }
 
         /* initialize the worker thread pools */
-        coffeeSelectionThreadPool = Executors.newFixedThreadPool(Config.get(COFFEE_SELECT_PARALLELISM));
-        paymentThreadPool = Executors.newFixedThreadPool(Config.get(PAYMENT_PARALLELISM));
-        pickCoffeeThreadPool = Executors.newFixedThreadPool(Config.get(PICK_COFFEE_PARALLELISM));
+        coffeeSelectionThreadPool = Executors.newFixedThreadPool(config.get(COFFEE_SELECT_PARALLELISM));
+        paymentThreadPool = Executors.newFixedThreadPool(config.get(PAYMENT_PARALLELISM));
+        /* a pick coffee worker per outlet */
+        pickCoffeeThreadPool = Executors.newFixedThreadPool( Arrays.stream(coffeeMachines).mapToInt(CoffeeMachine::getOutlets).sum() );
+        paymentHandoffs = new Handoff[cashRegisters.length];
+        dispenseHandoffs = new Handoff[coffeeMachines.length];
+
+        if (executionMode == ExecutionMode.RING_BUFFERS) {
+            /* initialize the rings and the tasks: the coffee selection workers take the arrived customers from a ring as well */
+            arrivalRing = new RingBuffer<>(UNBOUNDED_RING_CAPACITY);
+            for (int i=0; i < config.get(COFFEE_SELECT_PARALLELISM); i++) {
+                coffeeSelectionThreadPool.submit( ringWorkerTask("Select Coffee", arrivalRing, this::selectCoffee, 1) );
+            }
+            for (CashRegister cashRegister : cashRegisters) {
+                RingBuffer<Programmer> paymentRing = newRing(config.get(PAYMENT_QUEUE_CAPACITY));
+                paymentRings.add(paymentRing);
+                paymentHandoffs[cashRegister.getCashRegisterNumber() - 1] = programmer -> enqueue(paymentRing, programmer);
+                paymentThreadPool.submit( ringWorkerTask("Payment", paymentRing,
+                        programmer -> pay(cashRegister, programmer), BATCH_SIZE) );
+            }
+            for (CoffeeMachine coffeeMachine : coffeeMachines) {
+                RingBuffer<Programmer> dispenseRing = newRing(config.get(DISPENSE_QUEUE_CAPACITY));
+                dispenseRings.add(dispenseRing);
+                dispenseHandoffs[coffeeMachine.getCoffeeMachineNumber() - 1] = programmer -> enqueue(dispenseRing, programmer);
+                for (int i=0; i < coffeeMachine.getOutlets(); i++) {
+                    pickCoffeeThreadPool.submit( ringWorkerTask("Pick Coffee", dispenseRing,
+                            programmer -> pickCoffee(coffeeMachine, programmer), coffeeMachine.getOutlets() == 1 ? BATCH_SIZE : 1) );
+                }
+            }
+            return;
+        }
+
+        /* initialize the queues and the tasks */
+        /* each payment worker serves the queue of its own cash register */
+        for (CashRegister cashRegister : cashRegisters) {
+            BlockingQueue<Programmer> paymentQueue = newQueue(config.get(PAYMENT_QUEUE_CAPACITY));
+            paymentQueues.add(paymentQueue);
+            paymentHandoffs[cashRegister.getCashRegisterNumber() - 1] = programmer -> enqueue(paymentQueue, programmer);
+            paymentThreadPool.submit( paymentTask(cashRegister) );
+        }
+        /* each pick coffee worker serves an outlet of its own coffee machine: the outlets share the queue of the machine */
+        for (CoffeeMachine coffeeMachine : coffeeMachines) {
+            BlockingQueue<Programmer> dispenseQueue = newQueue(config.get(DISPENSE_QUEUE_CAPACITY));
+            dispenseQueues.add(dispenseQueue);
+            dispenseHandoffs[coffeeMachine.getCoffeeMachineNumber() - 1] = programmer -> enqueue(dispenseQueue, programmer);
+            for (int i=0; i < coffeeMachine.getOutlets(); i++) { pickCoffeeThreadPool.submit( pickCoffeeTask(coffeeMachine) ); }
+        }
+    }
+
+    /**
+     * @param capacity – maximum amount of the waiting customers, 0 for an unbounded queue.
+     * */
+    private static BlockingQueue<Programmer> newQueue(int capacity) {
+        return capacity > 0 ? new LinkedBlockingDeque<>(capacity) : new LinkedBlockingDeque<>();
+    }
+
+    /**
+     * @param capacity – maximum amount of the waiting customers, 0 for an unbounded queue.
+     * */
+    private static RingBuffer<Programmer> newRing(int capacity) { return new RingBuffer<>(capacity > 0 ? capacity : UNBOUNDED_RING_CAPACITY); }
+
+    /**
+     * @param queuePolicy – defines what the customers do when a queue is full, BLOCK by default.
+     *                    Should be set before the launch.
+     * */
+    public void setQueuePolicy(QueuePolicy queuePolicy) { this.queuePolicy = queuePolicy; }
 
-        /* initialize the tasks */
-        for (int i=0; i < Config.get(PAYMENT_PARALLELISM); i++) { paymentThreadPool.submit( paymentTask() ); }
-        for (int i=0; i < Config.get(PICK_COFFEE_PARALLELISM); i++) { pickCoffeeThreadPool.submit( pickCoffeeTask() ); }
+    /**
+     * @return an executor starting a new virtual thread for each task.
+     * Virtual threads are only available since Java 21: on older JVMs platform threads are used instead.
+     * */
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by this JVM, falling back to the platform threads");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * @return event aggregator of this simulation, e.g. to get the service time percentiles after the launch.
+     * */
+    @Override
+    public EventProcessor getEventProcessor() { return eventProcessor; }
+
+    @Override
+    public long getModeledTime() {
+        long start = launchStart;
+        return start == NOT_STARTED ? 0 : clock.currentTimeMillis() - start;
+    }
+
+    @Override
+    public int getPaymentQueueLength() {
+        int length = 0;
+        for (CashRegister cashRegister : cashRegisters) { length += getPaymentQueueLength( cashRegister.getCashRegisterNumber() ); }
+        return length;
+    }
+
+    /**
+     * @return amount of the customers waiting in the queue of the given cash register.
+     * */
+    public int getPaymentQueueLength(int cashRegisterNumber) {
+        switch (executionMode) {
+            case VIRTUAL_THREADS: return cashDesks[cashRegisterNumber - 1].getQueueLength();
+            case RING_BUFFERS: return paymentRings.get(cashRegisterNumber - 1).size();
+            default: return paymentQueues.get(cashRegisterNumber - 1).size();
+        }
+    }
+
+    @Override
+    public int getDispenseQueueLength(int coffeeMachineNumber) {
+        switch (executionMode) {
+            case VIRTUAL_THREADS: return coffeeMachineOutlets[coffeeMachineNumber - 1].getQueueLength();
+            case RING_BUFFERS: return dispenseRings.get(coffeeMachineNumber - 1).size();
+            default: return dispenseQueues.get(coffeeMachineNumber - 1).size();
+        }
+    }
+
+    /**
+     * Records all the events of the simulation into a binary log,
+     * e.g. to rebuild the reports later with {@link net.ivango.metrics.EventLogReader}.
+     * Should be called before the launch, the log is closed once all the customers are serviced.
+     *
+     * @param path – file to write, replaced if exists.
+     * */
+    public void logEventsTo(Path path) throws IOException {
+        eventLog = new MappedEventLog(path, clock, config);
+        eventProcessor.setEventSink(eventLog);
     }
 
     /**
@@ -72,25 +335,66 @@ public class CoffeeModeling {
      * Each customer (programmer) is serviced.
      * As a result an html report with statistics is generated.
      *
-     * @param arrivedCustomers – list of all customers to process.
+     * @param arrivedCustomers – list of all customers to process, all of them arrive at the simulation start.
+     * */
+    public void launch(List<Programmer> arrivedCustomers) { launch(arrivedCustomers.iterator(), ArrivalProcess.simultaneous()); }
+
+    /**
+     * Launches the simulation of an open system: the customers keep arriving while the previous ones are being served.
+     * Each customer (programmer) is serviced.
+     * As a result an html report with statistics is generated.
+     *
+     * @param customers – customers to process, taken lazily one by one as they arrive.
+     * @param arrivalProcess – defines the moments the customers arrive at.
+     *                       The simulation ends once either the customers or the arrivals are exhausted.
      * */
-    public void launch(List<Programmer> arrivedCustomers) {
+    public void launch(Iterator<Programmer> customers, ArrivalProcess arrivalProcess) {
+        eventProcessor.addScenarioProperty("Arrival process", arrivalProcess);
+        eventProcessor.addScenarioProperty("Queue policy", queuePolicy);
         try {
-            doneSignal = new CountDownLatch( arrivedCustomers.size() );
-            /* 1. First all the programmers select their favourite coffee */
-            coffeeSelectionThreadPool.invokeAll(
-                    arrivedCustomers.stream().map(this::selectCoffeeTask).collect(Collectors.toList())
-            );
-            /* initiate an orderly shutdown after finishing the previously submitted tasks */
-            coffeeSelectionThreadPool.shutdown();
-            /* 2. Then they pay for it using cash or a credit card – done via worker threads plus blocking queue */
-            /* 3. Then they pick the coffee and leave - done via worker threads plus blocking queue */
-
-            /* wait for the processing to finish */
-            doneSignal.await();
-            /* do a graceful shutdown */
-            paymentThreadPool.shutdown();
-            pickCoffeeThreadPool.shutdown();
+            long start = clock.currentTimeMillis();
+            launchStart = start;
+            if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+                /* each arrived customer gets its own thread */
+                feedCustomers(customers, arrivalProcess, programmer -> {
+                    customerExecutor.submit( customerTask(programmer) );
+                    return true;
+                });
+                /* wait for the processing to finish */
+                customerExecutor.shutdown();
+                customerExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } else {
+                /* 1. First the arrived programmers select their favourite coffee */
+                long arrived;
+                if (executionMode == ExecutionMode.RING_BUFFERS) {
+                    arrived = feedCustomers(customers, arrivalProcess, programmer -> {
+                        arrivalRing.put(programmer);
+                        return true;
+                    });
+                } else {
+                    arrived = feedCustomers(customers, arrivalProcess, programmer -> {
+                        coffeeSelectionThreadPool.submit( selectCoffeeTask(programmer) );
+                        return true;
+                    });
+                }
+                /* initiate an orderly shutdown after finishing the previously submitted tasks */
+                coffeeSelectionThreadPool.shutdown();
+                /* 2. Then they pay for it using cash or a credit card – done via worker threads plus blocking queue */
+                /* 3. Then they pick the coffee and leave - done via worker threads plus blocking queue */
+
+                /* wait for the processing to finish */
+                servicedCustomers.acquire( Math.toIntExact(arrived) );
+                /* do a graceful shutdown */
+                paymentThreadPool.shutdown();
+                pickCoffeeThreadPool.shutdown();
+            }
+            long modeledTime = clock.currentTimeMillis() - start;
+            eventProcessor.setModeledTime(modeledTime);
+            if (eventLog != null) {
+                /* all the events are submitted by now */
+                eventLog.setModeledTime(modeledTime);
+                eventLog.close();
+            }
 
             /* Once all the work is complete - gather the stats */
             eventProcessor.processEvents();
@@ -102,10 +406,42 @@ public class CoffeeModeling {
         }
     }
 
+    /**
+     * Passes the customers to the first stage at the moments defined by the arrival process.
+     * Blocks the calling thread till the last arrival.
+     *
+     * @return amount of the arrived customers.
+     * */
+    private long feedCustomers(Iterator<Programmer> customers, ArrivalProcess arrivalProcess, Handoff firstStage) throws InterruptedException {
+        long arrived = 0;
+        /* the arrival moments are tracked in the absolute time: the sleep inaccuracies do not accumulate */
+        long nextArrival = clock.currentTimeMillis();
+        while ( customers.hasNext() ) {
+            long interArrivalTime = arrivalProcess.nextInterArrivalTime();
+            if (interArrivalTime == ArrivalProcess.NO_MORE_ARRIVALS) { break; }
+            nextArrival += interArrivalTime;
+            long delay = nextArrival - clock.currentTimeMillis();
+            if (delay > 0) { clock.sleep(delay); }
+
+            /* the programmer arrives and joins the coffee selection queue */
+            Programmer programmer = customers.next();
+            programmer.markStageEnqueued();
+            firstStage.pass(programmer);
+            arrived++;
+        }
+        return arrived;
+    }
+
     /**
      * Cleans up all the resources (thread pools) if necessary.
      * */
     private void shutdown(){
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            if ( !customerExecutor.isTerminated() ) {
+                customerExecutor.shutdownNow();
+            }
+            return;
+        }
         if ( !coffeeSelectionThreadPool.isTerminated() ) {
             coffeeSelectionThreadPool.shutdownNow();
         }
@@ -118,46 +454,228 @@ public class CoffeeModeling {
     }
 
     /**
-     * @return a task which emulates a coffee selection process
-     * and then forwards this customer to a payment queue to pay for the coffee.
+     * @return a task which emulates the whole coffee-drinking process for a single customer:
+     * select a coffee, pay for it, pick it and leave.
+     * Each stage is entered only after acquiring a permit of the corresponding semaphore.
      *
      * @param programmer – a customer to process.
      * */
-    private Callable<Void> selectCoffeeTask(Programmer programmer) {
+    private Callable<Void> customerTask(Programmer programmer) {
         return () -> {
             /* save the processing start timestamp for this customer for later use*/
             programmer.markServiceStart();
 
-            logger.debug("Selecting coffee...");
-            programmer.selectFavouriteCoffee( CoffeeMachine.getCoffeeTypes() );
-            /* send him to the payment queue */
-            paymentQueue.offer(programmer);
+            /* 1. Select the favourite coffee */
+            boolean admitted;
+            CashRegister cashRegister;
+            coffeeSelectionPlaces.acquire();
+            try {
+                programmer.markStageStarted();
+                logger.debug("Selecting coffee...");
+                programmer.selectFavouriteCoffee( coffeeTypes );
+                programmer.completeStage(Stage.SELECTION, eventProcessor);
+                /* the selection place is kept till there is a place in the queue of the chosen cash register */
+                cashRegister = CashRegister.select( cashRegisters, programmer.getPaymentType(), programmer.getRandom() );
+                cashRegister.assign();
+                admitted = enterLine( paymentLines != null ? paymentLines[cashRegister.getCashRegisterNumber() - 1] : null, programmer );
+            } finally {
+                coffeeSelectionPlaces.release();
+            }
+            if (!admitted) {
+                cashRegister.unassign();
+                programmer.abandonStage(Stage.PAYMENT, getLossReason(), StageCompleted.NO_COFFEE_MACHINE, eventProcessor);
+                return null;
+            }
+
+            /* 2. Pay for it using cash or a credit card, then choose a coffee machine */
+            CoffeeMachine coffeeMachine;
+            int registerNumber = cashRegister.getCashRegisterNumber();
+            Semaphore cashDesk = cashDesks[registerNumber - 1];
+            try {
+                if ( !acquireServer(cashDesk, programmer) ) {
+                    cashRegister.unassign();
+                    programmer.abandonStage(Stage.PAYMENT, CustomerLost.Reason.RENEGED, StageCompleted.NO_COFFEE_MACHINE, eventProcessor);
+                    return null;
+                }
+                try {
+                    programmer.markStageStarted();
+                    logger.debug("Paying...");
+                    cashRegister.pay( programmer.getPaymentType(), programmer.getRandom() );
+                    cashRegister.unassign();
+                    programmer.completeStage(Stage.PAYMENT, eventProcessor);
+
+                    /* the cash desk is kept till there is a place in the dispense queue */
+                    coffeeMachine = dispatchPolicy.selectAvailable( coffeeMachines, programmer.getSelectedCoffee(), programmer.getRandom() );
+                    coffeeMachine.assign( programmer.getSelectedCoffee() );
+                    admitted = enterLine( coffeeMachineLines != null ? coffeeMachineLines[coffeeMachine.getCoffeeMachineNumber() - 1] : null, programmer );
+                } finally {
+                    cashDesk.release();
+                }
+            } finally {
+                if (paymentLines != null) { paymentLines[registerNumber - 1].release(); }
+            }
+            int machineNumber = coffeeMachine.getCoffeeMachineNumber();
+            if (!admitted) {
+                coffeeMachine.unassign( programmer.getSelectedCoffee() );
+                programmer.abandonStage(Stage.CUP_FINDING, getLossReason(), machineNumber, eventProcessor);
+                return null;
+            }
+
+            /* 3. Queue at the coffee machine, pick the coffee and leave */
+            Semaphore outlet = coffeeMachineOutlets[machineNumber - 1];
+            long serviced;
+            try {
+                if ( !acquireServer(outlet, programmer) ) {
+                    programmer.abandonStage(Stage.CUP_FINDING, CustomerLost.Reason.RENEGED, machineNumber, eventProcessor);
+                    return null;
+                }
+                try {
+                    programmer.markStageStarted();
+                    logger.debug("Picking coffee...");
+                    Cup cup = programmer.findCup();
+                    programmer.completeStage(Stage.CUP_FINDING, machineNumber, eventProcessor);
+                    cup = coffeeMachine.pourCoffee( cup, programmer.getSelectedCoffee(), programmer.getRandom() );
+                    programmer.completeStage(Stage.POURING, machineNumber, eventProcessor);
+                    logger.debug("Leaving...");
+                    programmer.takeTheCupAndLeave( cup );
+                    programmer.completeStage(Stage.LEAVING, machineNumber, eventProcessor);
+                    serviced = clock.currentTimeMillis();
+                    /* the outlet is kept while the machine is offline */
+                    coffeeMachine.serviceIfNeeded( programmer.getRandom() );
+                } finally {
+                    outlet.release();
+                }
+            } finally {
+                if (coffeeMachineLines != null) { coffeeMachineLines[machineNumber - 1].release(); }
+                coffeeMachine.unassign( programmer.getSelectedCoffee() );
+            }
+
+            /* submit an event: customer services – for a later report */
+            eventProcessor.submitEvent( PackedEvent.customerServiced(serviced - programmer.getServiceStart()) );
+            return null;
+        };
+    }
+
+    /**
+     * Takes a place in the queue of the next stage according to the queue policy.
+     *
+     * @param line – places in the queue plus the servers of the stage, null if the queue is unbounded.
+     * @return false if the customer left: he balked at a full queue or ran out of patience waiting for a place, see {@link #getLossReason()}.
+     * */
+    private boolean enterLine(Semaphore line, Programmer programmer) throws InterruptedException {
+        enterQueue(programmer);
+        if (line == null) { return true; }
+        switch (queuePolicy) {
+            case BALK: return line.tryAcquire();
+            case RENEGE: return line.tryAcquire( getRemainingPatience(programmer), TimeUnit.NANOSECONDS );
+            default:
+                line.acquire();
+                return true;
+        }
+    }
+
+    /**
+     * Takes a server of the stage, waiting no longer than the patience of the customer under the RENEGE policy.
+     *
+     * @return false if the customer ran out of patience.
+     * */
+    private boolean acquireServer(Semaphore server, Programmer programmer) throws InterruptedException {
+        if (queuePolicy == QueuePolicy.RENEGE) { return server.tryAcquire( getRemainingPatience(programmer), TimeUnit.NANOSECONDS ); }
+        server.acquire();
+        return true;
+    }
+
+    /**
+     * Puts the customer into the queue of the next stage according to the queue policy.
+     * Blocks the calling worker while the queue is full, unless the customer balks or runs out of patience.
+     *
+     * @return false if the customer left, see {@link #getLossReason()}.
+     * */
+    private boolean enqueue(BlockingQueue<Programmer> queue, Programmer programmer) throws InterruptedException {
+        enterQueue(programmer);
+        switch (queuePolicy) {
+            case BALK: return queue.offer(programmer);
+            case RENEGE: return queue.offer( programmer, getRemainingPatience(programmer), TimeUnit.NANOSECONDS );
+            default:
+                queue.put(programmer);
+                return true;
+        }
+    }
+
+    private boolean enqueue(RingBuffer<Programmer> ring, Programmer programmer) throws InterruptedException {
+        enterQueue(programmer);
+        switch (queuePolicy) {
+            case BALK: return ring.offer(programmer);
+            case RENEGE: return ring.offer( programmer, getRemainingPatience(programmer), TimeUnit.NANOSECONDS );
+            default:
+                ring.put(programmer);
+                return true;
+        }
+    }
+
+    /**
+     * Tracks the customer starting to wait for the next stage, the patience covers both waiting for a place in its queue
+     * and waiting in the queue.
+     * */
+    private void enterQueue(Programmer programmer) {
+        programmer.markStageEnqueued();
+        if (queuePolicy == QueuePolicy.RENEGE) { programmer.drawPatience(); }
+    }
+
+    /* real time in nanoseconds the customer still agrees to wait */
+    private long getRemainingPatience(Programmer programmer) { return clock.toNanos( programmer.getRemainingPatience() ); }
+
+    /**
+     * @return why a customer is lost if he did not get a place in a queue: he balked or he ran out of patience meanwhile.
+     * */
+    private CustomerLost.Reason getLossReason() {
+        return queuePolicy == QueuePolicy.RENEGE ? CustomerLost.Reason.RENEGED : CustomerLost.Reason.BALKED;
+    }
+
+    /**
+     * @return true if the customer reaching the head of a queue has already left it: his patience ran out.
+     * */
+    private boolean isOutOfPatience(Programmer programmer) {
+        return queuePolicy == QueuePolicy.RENEGE && programmer.isOutOfPatience();
+    }
+
+    /**
+     * Submits the customer leaving without the service and marks him processed.
+     * */
+    private void loseCustomer(Programmer programmer, Stage stage, CustomerLost.Reason reason, int coffeeMachineNumber) {
+        programmer.abandonStage(stage, reason, coffeeMachineNumber, eventProcessor);
+        servicedCustomers.release();
+    }
+
+    /**
+     * @return a task which emulates a coffee selection process
+     * and then forwards this customer to a payment queue to pay for the coffee.
+     *
+     * @param programmer – a customer to process.
+     * */
+    private Callable<Void> selectCoffeeTask(Programmer programmer) {
+        return () -> {
+            selectCoffee(programmer);
             return null;
         };
     }
 
     /**
      * @return a task which emulates a payment procedure:
-     * a customer is taken from a queue, then after a payment
-     * he/she is forwarded to a coffee machine (dispense queue)
+     * a customer is taken from the queue of the cash register, then after a payment
+     * he/she is forwarded to a coffee machine (its dispense queue) chosen by the dispatch policy
      * to pour a coffee.
      *
      * This task is supposed to be used as a worker thread, which will operate until interrupted.
+     *
+     * @param cashRegister – register served by this worker: the customers are taken from its payment queue.
      * */
-    private Runnable paymentTask() {
+    private Runnable paymentTask(CashRegister cashRegister) {
         return () -> {
             try {
                 while ( !Thread.interrupted() ) {
-
                     /* take next guy from the payment queue */
-                    Programmer programmer = paymentQueue.take();
-
-                    /* the payment operation itself */
-                    logger.debug("Paying...");
-                    cashRegister.pay( programmer.getPaymentType() );
-
-                    /* send this guy to a dispense queue */
-                    dispenseQueue.offer( programmer );
+                    pay( cashRegister, paymentQueues.get( cashRegister.getCashRegisterNumber() - 1 ).take() );
                 }
             } catch (InterruptedException ie) {
                 logger.info("Payment worker thread interrupted.");
@@ -171,32 +689,15 @@ public class CoffeeModeling {
      * pick a cup, pour coffee and leave.
      *
      * This task is supposed to be used as a worker thread, which will operate until interrupted.
+     *
+     * @param coffeeMachine – machine served by this worker: the customers are taken from its dispense queue.
      * */
-    private Runnable pickCoffeeTask() {
+    private Runnable pickCoffeeTask(CoffeeMachine coffeeMachine) {
         return () -> {
             try {
                 while ( !Thread.interrupted() ) {
-
                     /* take next guy from the dispense queue */
-                    Programmer programmer = dispenseQueue.take();
-
-                    logger.debug("Picking coffee...");
-                    /* 1. First - the programmer looks for a cup */
-                    Cup cup = programmer.findCup();
-
-                    /* 2. Then he puts it under the outlet, pick the type of coffee he paid for and waits till the cup is filled */
-                    CoffeeMachine coffeeMachine = coffeeMachines[random.nextInt(coffeeMachines.length)];
-                    cup = coffeeMachine.pourCoffee( cup, programmer.getSelectedCoffee() );
-
-                    logger.debug("Leaving...");
-                    /* 3. Finally he takes the cup and leaves */
-                    programmer.takeTheCupAndLeave( cup );
-
-                    /* mark the completion of this task */
-                    doneSignal.countDown();
-
-                    /* submit an event: customer services – for a later report */
-                    eventProcessor.submitEvent(new CustomerServiced(programmer.getServiceStart(), LocalDateTime.now()));
+                    pickCoffee( coffeeMachine, dispenseQueues.get( coffeeMachine.getCoffeeMachineNumber() - 1 ).take() );
                 }
             } catch (InterruptedException ie) {
                 logger.info("Pick Coffee worker thread interrupted.");
@@ -205,4 +706,113 @@ public class CoffeeModeling {
         };
     }
 
+    /**
+     * @return a task serving a stage of the RING_BUFFERS mode:
+     * takes the customers from the ring buffer in batches and processes them one by one.
+     *
+     * This task is supposed to be used as a worker thread, which will operate until interrupted.
+     *
+     * @param name – name of the stage for the logs.
+     * @param batchSize – maximum amount of customers to claim at once: a single worker of a stage may claim all the waiting ones,
+     *                  while the workers sharing a ring claim one by one to keep the others busy.
+     * */
+    private Runnable ringWorkerTask(String name, RingBuffer<Programmer> ring, RingBuffer.Handler<Programmer> stage, int batchSize) {
+        return () -> {
+            try {
+                while ( !Thread.interrupted() ) {
+                    ring.take(stage, batchSize);
+                }
+            } catch (InterruptedException ie) {
+                logger.info(name + " worker thread interrupted.");
+            }
+            logger.info(name + " worker thread stopped.");
+        };
+    }
+
+    /**
+     * Emulates a coffee selection process
+     * and then forwards this customer to the shortest queue of the cash registers accepting his payment type.
+     * */
+    private void selectCoffee(Programmer programmer) throws InterruptedException {
+        /* save the processing start timestamp for this customer for later use*/
+        programmer.markServiceStart();
+        programmer.markStageStarted();
+
+        logger.debug("Selecting coffee...");
+        programmer.selectFavouriteCoffee( coffeeTypes );
+        programmer.completeStage(Stage.SELECTION, eventProcessor);
+        /* send him to the payment queue */
+        CashRegister cashRegister = CashRegister.select( cashRegisters, programmer.getPaymentType(), programmer.getRandom() );
+        cashRegister.assign();
+        if ( !paymentHandoffs[cashRegister.getCashRegisterNumber() - 1].pass(programmer) ) {
+            cashRegister.unassign();
+            loseCustomer(programmer, Stage.PAYMENT, getLossReason(), StageCompleted.NO_COFFEE_MACHINE);
+        }
+    }
+
+    /**
+     * Emulates a payment procedure for a customer taken from the payment queue of the cash register,
+     * then forwards him to a coffee machine (its dispense queue) chosen by the dispatch policy.
+     * */
+    private void pay(CashRegister cashRegister, Programmer programmer) throws InterruptedException {
+        if ( isOutOfPatience(programmer) ) {
+            cashRegister.unassign();
+            loseCustomer(programmer, Stage.PAYMENT, CustomerLost.Reason.RENEGED, StageCompleted.NO_COFFEE_MACHINE);
+            return;
+        }
+        programmer.markStageStarted();
+
+        /* the payment operation itself */
+        logger.debug("Paying...");
+        cashRegister.pay( programmer.getPaymentType(), programmer.getRandom() );
+        cashRegister.unassign();
+        programmer.completeStage(Stage.PAYMENT, eventProcessor);
+
+        /* send this guy to the dispense queue of a coffee machine */
+        CoffeeMachine coffeeMachine = dispatchPolicy.selectAvailable( coffeeMachines, programmer.getSelectedCoffee(), programmer.getRandom() );
+        coffeeMachine.assign( programmer.getSelectedCoffee() );
+        if ( !dispenseHandoffs[coffeeMachine.getCoffeeMachineNumber() - 1].pass(programmer) ) {
+            coffeeMachine.unassign( programmer.getSelectedCoffee() );
+            loseCustomer(programmer, Stage.CUP_FINDING, getLossReason(), coffeeMachine.getCoffeeMachineNumber());
+        }
+    }
+
+    /**
+     * Emulates the final step for a customer taken from the dispense queue of the coffee machine:
+     * pick a cup, pour coffee and leave.
+     * */
+    private void pickCoffee(CoffeeMachine coffeeMachine, Programmer programmer) throws InterruptedException {
+        int machineNumber = coffeeMachine.getCoffeeMachineNumber();
+        if ( isOutOfPatience(programmer) ) {
+            coffeeMachine.unassign( programmer.getSelectedCoffee() );
+            loseCustomer(programmer, Stage.CUP_FINDING, CustomerLost.Reason.RENEGED, machineNumber);
+            return;
+        }
+        programmer.markStageStarted();
+
+        logger.debug("Picking coffee...");
+        /* 1. First - the programmer looks for a cup */
+        Cup cup = programmer.findCup();
+        programmer.completeStage(Stage.CUP_FINDING, machineNumber, eventProcessor);
+
+        /* 2. Then he puts it under the outlet, pick the type of coffee he paid for and waits till the cup is filled */
+        cup = coffeeMachine.pourCoffee( cup, programmer.getSelectedCoffee(), programmer.getRandom() );
+        programmer.completeStage(Stage.POURING, machineNumber, eventProcessor);
+
+        logger.debug("Leaving...");
+        /* 3. Finally he takes the cup and leaves */
+        programmer.takeTheCupAndLeave( cup );
+        programmer.completeStage(Stage.LEAVING, machineNumber, eventProcessor);
+        coffeeMachine.unassign( programmer.getSelectedCoffee() );
+
+        /* submit an event: customer services – for a later report */
+        eventProcessor.submitEvent( PackedEvent.customerServiced(clock.currentTimeMillis() - programmer.getServiceStart()) );
+
+        /* the worker of the machine takes it offline if it needs a refill or a maintenance */
+        coffeeMachine.serviceIfNeeded( programmer.getRandom() );
+
+        /* mark the completion of this task: all its events are submitted */
+        servicedCustomers.release();
+    }
+
 }
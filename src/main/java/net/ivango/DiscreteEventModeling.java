@@ -0,0 +1,800 @@
+package net.ivango;
+
+import net.ivango.arrivals.ArrivalProcess;
+import net.ivango.clock.Clock;
+import net.ivango.components.CashRegister;
+import net.ivango.components.CoffeeMachine;
+import net.ivango.components.DispatchPolicy;
+import net.ivango.components.QueueFiller;
+import net.ivango.components.QueuePolicy;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.Programmer;
+import net.ivango.entities.Stage;
+import net.ivango.metrics.EventProcessor;
+import net.ivango.metrics.MappedEventLog;
+import net.ivango.metrics.PackedEvent;
+import net.ivango.monitoring.SimulationProbe;
+import net.ivango.metrics.events.CustomerLost;
+import net.ivango.metrics.events.StageCompleted;
+import net.ivango.simulation.DiscreteEventSimulation;
+import net.ivango.simulation.Resource;
+import net.ivango.simulation.ScheduledEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static net.ivango.config.Properties.*;
+
+/**
+ * Models the same coffee-drinking process as {@link CoffeeModeling},
+ * but in the virtual time of a discrete-event simulation instead of sleeping worker threads:
+ * the whole run takes a fraction of the modeled time and produces the same html report.
+ *
+ * The thread pools are replaced with resources of the same capacity:
+ * coffee selection places, cash desks and the outlets of the coffee machines (each machine has its own queue).
+ * A bounded queue is modeled with one more resource: the places in the queue plus the servers of the stage.
+ *
+ * A long simulation may be checkpointed periodically and resumed from the last checkpoint if it dies partway,
+ * see {@link #checkpointTo(Path, long)}: a checkpoint is taken in between two events whatever the load, so it stores
+ * the pending events, the requests queued at the resources, the customers being served with their random streams,
+ * the states of the arrival process, of the customer stream and of the machines, and the aggregated statistics.
+ * To make it possible the steps of the customers are scheduled as plain descriptors (see {@link Step}) instead of closures.
+ *
+ * An instance of this class is not reusable after calling the launch() method.
+ */
+public class DiscreteEventModeling implements SimulationProbe {
+
+    private DiscreteEventSimulation simulation = new DiscreteEventSimulation();
+    /* resources replacing the worker thread pools */
+    private Resource coffeeSelectionPlaces;
+    /* a resource per cash register and per coffee machine with a unit per cash desk/ outlet, indexed by the register/ machine number - 1 */
+    private Resource[] cashDesks, coffeeMachineOutlets;
+    /* the pours in progress at each coffee machine, a unit per outlet: a refill or a maintenance takes all the units,
+     * so it waits for the pours at the other outlets and no pour starts till it is over */
+    private Resource[] coffeeMachinePours;
+    /* places in the bounded queues plus the server: one per cash register and one per coffee machine, null if unbounded */
+    private Resource[] paymentLines, coffeeMachineLines;
+
+    /* event aggregator/ processor */
+    private EventProcessor eventProcessor;
+    /* components to emulate the coffee-drinking process */
+    private CashRegister[] cashRegisters;
+    private CoffeeMachine[] coffeeMachines;
+    /* coffee types poured by the machines: the customers choose among them */
+    private CoffeeType[] coffeeTypes;
+    /* assigns the customers to the coffee machines */
+    private DispatchPolicy dispatchPolicy;
+    /* defines what the customers do when a queue is full */
+    private QueuePolicy queuePolicy = QueuePolicy.BLOCK;
+    /* binary log of all the events, absent if null */
+    private MappedEventLog eventLog;
+    /* settings of this simulation, stored in the event log */
+    private Config config;
+
+    /* file to write the checkpoints to, none if null, the modeled time in milliseconds between them and the next one is due at */
+    private Path checkpointPath;
+    private long checkpointInterval, nextCheckpoint;
+    /* checkpoint to resume from, read past the settings it was taken with; the simulation starts from scratch if null */
+    private DataInputStream resumed;
+    /* customers still to arrive and the moments they arrive at */
+    private Iterator<Programmer> customers;
+    private ArrivalProcess arrivalProcess;
+    /* description of the arrival process, stored in the checkpoints */
+    private String arrivals;
+    /* customers arrived so far */
+    private long customersArrived;
+    private static final int CHECKPOINT_MAGIC = 0x434B5054, CHECKPOINT_VERSION = 3;
+
+    /**
+     * Steps of the customers scheduled as the simulation events or queued at the resources:
+     * unlike closures they are stored in the checkpoints, along with the customer taking the step.
+     * A place is taken in a bounded queue, a service starts once a server of the stage is granted.
+     * */
+    private enum Step {
+        ARRIVAL, SELECTION_STARTED, SELECTION_COMPLETED, PLACE_TAKEN, PLACE_TIMED_OUT, SERVICE_STARTED, SERVICE_TIMED_OUT,
+        PAYMENT_COMPLETED, CUP_FOUND, POURING_STARTED, POURING_COMPLETED, LEFT, POUR_UNIT_TAKEN, DOWNTIME_COMPLETED
+    }
+
+    /* a step of a customer, none for an arrival */
+    private class Action implements Runnable {
+        private final Step step;
+        private final Customer customer;
+
+        private Action(Step step, Customer customer) {
+            this.step = step;
+            this.customer = customer;
+        }
+
+        @Override
+        public void run() { take(step, customer); }
+    }
+
+    /* a customer being served: the one leaving a coffee machine stays till the downtime he triggered is over */
+    private static class Customer {
+        private final Programmer programmer;
+        /* modeled time in milliseconds the customer arrived at */
+        private final long serviceStart;
+        /* stage whose queue the customer joins: PAYMENT or CUP_FINDING */
+        private Stage stage;
+        /* modeled time in milliseconds when the customer joined the queue of the current stage (or of the pour),
+         * when its service started and when he leaves the queue under the RENEGE policy */
+        private long enqueued, started, deadline;
+        /* servers assigned to the customer */
+        private int cashRegisterNumber, coffeeMachineNumber;
+        private long paymentDelay;
+        /* units of the pours still to take before the downtime of the machine */
+        private int poursToTake;
+
+        private Customer(Programmer programmer, long serviceStart) {
+            this.programmer = programmer;
+            this.serviceStart = serviceStart;
+        }
+
+        private void writeTo(DataOutput out) throws IOException {
+            programmer.writeTo(out);
+            out.writeLong(serviceStart);
+            out.writeByte(stage != null ? stage.ordinal() : -1);
+            out.writeLong(enqueued);
+            out.writeLong(started);
+            out.writeLong(deadline);
+            out.writeInt(cashRegisterNumber);
+            out.writeInt(coffeeMachineNumber);
+            out.writeLong(paymentDelay);
+            out.writeInt(poursToTake);
+        }
+
+        private static Customer readFrom(DataInput in, Clock clock, Config config) throws IOException {
+            Customer customer = new Customer(Programmer.readFrom(in, clock, config), in.readLong());
+            byte stage = in.readByte();
+            customer.stage = stage >= 0 ? Stage.values()[stage] : null;
+            customer.enqueued = in.readLong();
+            customer.started = in.readLong();
+            customer.deadline = in.readLong();
+            customer.cashRegisterNumber = in.readInt();
+            customer.coffeeMachineNumber = in.readInt();
+            customer.paymentDelay = in.readLong();
+            customer.poursToTake = in.readInt();
+            return customer;
+        }
+    }
+
+    /* miscellaneous objects */
+    private Logger logger = LoggerFactory.getLogger(DiscreteEventModeling.class);
+
+    public DiscreteEventModeling() { this(StandardDispatchPolicy.RANDOM); }
+
+    /**
+     * @param dispatchPolicy – assigns the customers to the coffee machines.
+     * */
+    public DiscreteEventModeling(DispatchPolicy dispatchPolicy) {
+        /* read configuration setting from external JSON file */
+        this(Config.load(), dispatchPolicy);
+    }
+
+    /**
+     * @param config – settings of this simulation, e.g. the levels of parallelism.
+     *               The customers should be generated with the same settings, see {@link net.ivango.components.QueueFiller}.
+     * @param dispatchPolicy – assigns the customers to the coffee machines.
+     * */
+    public DiscreteEventModeling(Config config, DispatchPolicy dispatchPolicy) {
+        this.config = config;
+        this.dispatchPolicy = dispatchPolicy;
+
+        /* initialize the components */
+        /* the events are submitted by the thread running the simulation only: a single stripe of the counters */
+        eventProcessor = new EventProcessor(config, 1);
+        eventProcessor.addScenarioProperty("Execution mode", "DISCRETE_EVENT");
+        eventProcessor.addScenarioProperty("Dispatch policy", dispatchPolicy);
+        cashRegisters = CashRegister.createCashRegisters(eventProcessor, simulation.getClock(), config);
+        coffeeMachines = CoffeeMachine.createCoffeeMachines(eventProcessor, simulation.getClock(), config);
+        coffeeTypes = CoffeeMachine.getCoffeeTypes(coffeeMachines);
+
+        /* initialize the resources */
+        coffeeSelectionPlaces = new Resource(simulation, config.get(COFFEE_SELECT_PARALLELISM));
+        cashDesks = new Resource[cashRegisters.length];
+        for (int i=0; i < cashRegisters.length; i++) { cashDesks[i] = new Resource(simulation, 1); }
+        coffeeMachineOutlets = new Resource[coffeeMachines.length];
+        coffeeMachinePours = new Resource[coffeeMachines.length];
+        for (int i=0; i < coffeeMachines.length; i++) {
+            coffeeMachineOutlets[i] = new Resource(simulation, coffeeMachines[i].getOutlets());
+            coffeeMachinePours[i] = new Resource(simulation, coffeeMachines[i].getOutlets());
+        }
+        if (config.get(PAYMENT_QUEUE_CAPACITY) > 0) {
+            paymentLines = new Resource[cashRegisters.length];
+            for (int i=0; i < cashRegisters.length; i++) { paymentLines[i] = new Resource(simulation, config.get(PAYMENT_QUEUE_CAPACITY) + 1); }
+        }
+        if (config.get(DISPENSE_QUEUE_CAPACITY) > 0) {
+            coffeeMachineLines = new Resource[coffeeMachines.length];
+            for (int i=0; i < coffeeMachines.length; i++) {
+                coffeeMachineLines[i] = new Resource(simulation, config.get(DISPENSE_QUEUE_CAPACITY) + coffeeMachines[i].getOutlets());
+            }
+        }
+    }
+
+    /**
+     * @param queuePolicy – defines what the customers do when a queue is full, BLOCK by default.
+     *                    Should be set before the launch.
+     * */
+    public void setQueuePolicy(QueuePolicy queuePolicy) { this.queuePolicy = queuePolicy; }
+
+    /**
+     * @return event aggregator of this simulation, e.g. to get the service time percentiles after the launch.
+     * */
+    @Override
+    public EventProcessor getEventProcessor() { return eventProcessor; }
+
+    /* the simulation state is read from a monitoring thread without synchronization: the values are approximate */
+    @Override
+    public long getModeledTime() { return now(); }
+
+    @Override
+    public int getPaymentQueueLength() {
+        int length = 0;
+        for (Resource cashDesk : cashDesks) { length += cashDesk.getQueueLength(); }
+        return length;
+    }
+
+    /**
+     * @return amount of the customers waiting in the queue of the given cash register.
+     * */
+    public int getPaymentQueueLength(int cashRegisterNumber) { return cashDesks[cashRegisterNumber - 1].getQueueLength(); }
+
+    @Override
+    public int getDispenseQueueLength(int coffeeMachineNumber) { return coffeeMachineOutlets[coffeeMachineNumber - 1].getQueueLength(); }
+
+    /**
+     * Records all the events of the simulation into a binary log,
+     * e.g. to rebuild the reports later with {@link net.ivango.metrics.EventLogReader}.
+     * Should be called before the launch, the log is closed once the simulation completes.
+     *
+     * @param path – file to write, replaced if exists.
+     * */
+    public void logEventsTo(Path path) throws IOException {
+        eventLog = new MappedEventLog(path, simulation.getClock(), config);
+        eventProcessor.setEventSink(eventLog);
+    }
+
+
+    /**
+     * Writes a checkpoint of the simulation each given period of the modeled time, replacing the previous one:
+     * it is taken in between the events, at the first one after the period whatever the load,
+     * so a backlog, the customers being served and the machines offline are stored as they are.
+     * Should be called before the launch.
+     *
+     * @param path – file to write, replaced atomically.
+     * @param interval – modeled time in milliseconds between the checkpoints.
+     * */
+    public void checkpointTo(Path path, long interval) {
+        if (interval <= 0) { throw new IllegalArgumentException("The checkpoint interval should be positive: " + interval); }
+        this.checkpointPath = path;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Resumes the simulation from a checkpoint written by {@link #checkpointTo(Path, long)} of a simulation
+     * with the same settings and dispatch policy. Should be called before the launch, which should get
+     * the same customers and arrival process as the checkpointed simulation (e.g. created with the same seeds):
+     * their states are restored (a stream of random customers and the arrival processes of this package restore their random streams,
+     * the customers of other sources arrived before the checkpoint are skipped) and the report is the same as the one of an uninterrupted run.
+     * The event log, if any, only records the events after the checkpoint.
+     * */
+    public void resumeFrom(Path path) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)));
+        if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) { throw new IOException("Not a checkpoint: " + path); }
+        if ( !in.readUTF().equals(config.toString()) ) { throw new IllegalArgumentException("Checkpoint of other settings: " + path); }
+        if ( !in.readUTF().equals(dispatchPolicy.toString()) ) { throw new IllegalArgumentException("Checkpoint of another dispatch policy: " + path); }
+        resumed = in;
+    }
+
+    /**
+     * Launches the simulation.
+     * Each customer (programmer) is serviced.
+     * As a result an html report with statistics is generated.
+     *
+     * @param arrivedCustomers – list of all customers to process, all of them arrive at the simulation start.
+     * */
+    public void launch(List<Programmer> arrivedCustomers) { launch(arrivedCustomers.iterator(), ArrivalProcess.simultaneous()); }
+
+    /**
+     * Launches the simulation of an open system: the customers keep arriving while the previous ones are being served.
+     * Each customer (programmer) is serviced.
+     * As a result an html report with statistics is generated.
+     *
+     * @param customers – customers to process, taken lazily one by one as they arrive.
+     * @param arrivalProcess – defines the moments the customers arrive at.
+     *                       The simulation ends once either the customers or the arrivals are exhausted.
+     * */
+    public void launch(Iterator<Programmer> customers, ArrivalProcess arrivalProcess) {
+        simulate(customers, arrivalProcess);
+
+        /* Once all the work is complete - gather the stats */
+        eventProcessor.processEvents();
+    }
+
+    /**
+     * Runs the simulation without generating a report:
+     * the results are available via {@link #getEventProcessor()}, e.g. to compare several simulations.
+     *
+     * @param customers – customers to process, taken lazily one by one as they arrive.
+     * @param arrivalProcess – defines the moments the customers arrive at.
+     * */
+    public void simulate(Iterator<Programmer> customers, ArrivalProcess arrivalProcess) {
+        eventProcessor.addScenarioProperty("Arrival process", arrivalProcess);
+        eventProcessor.addScenarioProperty("Queue policy", queuePolicy);
+        this.customers = customers;
+        this.arrivalProcess = arrivalProcess;
+        arrivals = arrivalProcess.toString();
+        if (resumed != null) {
+            resume();
+        } else {
+            scheduleNextArrival();
+        }
+        nextCheckpoint = now() + checkpointInterval;
+        while ( simulation.runNext() ) { checkpointIfDue(); }
+        logger.info("Simulation complete, modeled time: " + now() + " milliseconds");
+        eventProcessor.setModeledTime( now() );
+        if (eventLog != null) { closeEventLog( now() ); }
+    }
+
+    private void closeEventLog(long modeledTime) {
+        eventLog.setModeledTime(modeledTime);
+        try {
+            eventLog.close();
+            logger.info("Event log complete, records: " + eventLog.getRecordCount());
+        } catch (IOException e) {
+            logger.error("Failed to complete the event log: ", e);
+        }
+    }
+
+    /**
+     * Schedules the arrival of the next customer: only a single arrival is pending at a time,
+     * so the customers are created lazily and the event queue stays small.
+     * */
+    private void scheduleNextArrival() {
+        if ( !customers.hasNext() ) { return; }
+        long interArrivalTime = arrivalProcess.nextInterArrivalTime();
+        if (interArrivalTime == ArrivalProcess.NO_MORE_ARRIVALS) { return; }
+        schedule(interArrivalTime, Step.ARRIVAL, null);
+    }
+
+    /**
+     * Takes a step of a customer, see {@link Step}: the customer is null for an arrival.
+     * */
+    private void take(Step step, Customer customer) {
+        switch (step) {
+            case ARRIVAL -> arrive();
+            case SELECTION_STARTED -> {
+                customer.started = now();
+                schedule(customer.programmer.getSelectionDelay(), Step.SELECTION_COMPLETED, customer);
+            }
+            case SELECTION_COMPLETED -> {
+                customer.programmer.chooseCoffee( coffeeTypes );
+                completeStage(Stage.SELECTION, customer.enqueued, customer.started);
+                pay(customer);
+            }
+            case PLACE_TAKEN -> takePlace(customer);
+            case PLACE_TIMED_OUT -> {
+                leavePreviousStage(customer);
+                renege(customer);
+            }
+            case SERVICE_STARTED -> {
+                if (customer.stage == Stage.PAYMENT) {
+                    startPayment(customer);
+                } else {
+                    startCupFinding(customer);
+                }
+            }
+            case SERVICE_TIMED_OUT -> {
+                Resource line = getLine(customer);
+                if (line != null) { line.release(); }
+                renege(customer);
+            }
+            case PAYMENT_COMPLETED -> {
+                CashRegister cashRegister = cashRegisters[customer.cashRegisterNumber - 1];
+                cashRegister.registerPayment( customer.programmer.getPaymentType(), customer.paymentDelay );
+                cashRegister.unassign();
+                completeStage(Stage.PAYMENT, customer.enqueued, customer.started);
+                pickCoffee(customer);
+            }
+            case CUP_FOUND -> {
+                completeStage(Stage.CUP_FINDING, customer.enqueued, customer.started, customer.coffeeMachineNumber);
+                /* the pour waits while the machine is offline */
+                customer.enqueued = now();
+                coffeeMachinePours[customer.coffeeMachineNumber - 1].acquire(action(Step.POURING_STARTED, customer));
+            }
+            case POURING_STARTED -> {
+                customer.started = now();
+                CoffeeMachine coffeeMachine = coffeeMachines[customer.coffeeMachineNumber - 1];
+                schedule(coffeeMachine.getPourDelay( customer.programmer.getSelectedCoffee(), customer.programmer.getRandom() ), Step.POURING_COMPLETED, customer);
+            }
+            case POURING_COMPLETED -> {
+                coffeeMachines[customer.coffeeMachineNumber - 1].registerPour( customer.programmer.getSelectedCoffee() );
+                coffeeMachinePours[customer.coffeeMachineNumber - 1].release();
+                completeStage(Stage.POURING, customer.enqueued, customer.started, customer.coffeeMachineNumber);
+                customer.started = now();
+                schedule(customer.programmer.getLeaveDelay(), Step.LEFT, customer);
+            }
+            case LEFT -> {
+                leaveCoffeeMachine(customer);
+                coffeeMachines[customer.coffeeMachineNumber - 1].unassign( customer.programmer.getSelectedCoffee() );
+                completeStage(Stage.LEAVING, customer.started, customer.started, customer.coffeeMachineNumber);
+                /* submit an event: customer services – for a later report */
+                eventProcessor.submitEvent( PackedEvent.customerServiced(now() - customer.serviceStart) );
+            }
+            case POUR_UNIT_TAKEN -> takePours(customer);
+            case DOWNTIME_COMPLETED -> {
+                CoffeeMachine coffeeMachine = coffeeMachines[customer.coffeeMachineNumber - 1];
+                coffeeMachine.endDowntime();
+                for (int i=0; i < coffeeMachine.getOutlets(); i++) { coffeeMachinePours[customer.coffeeMachineNumber - 1].release(); }
+                coffeeMachineOutlets[customer.coffeeMachineNumber - 1].release();
+            }
+        }
+    }
+
+    private Action action(Step step, Customer customer) { return new Action(step, customer); }
+
+    private void schedule(long delay, Step step, Customer customer) { simulation.schedule(delay, action(step, customer)); }
+
+    /**
+     * 0. The next customer arrives and the arrival after him is scheduled.
+     * */
+    private void arrive() {
+        customersArrived++;
+        selectCoffee(new Customer(customers.next(), now()));
+        scheduleNextArrival();
+    }
+
+    /**
+     * 1. The programmer selects his favourite coffee and goes to the payment queue.
+     * */
+    private void selectCoffee(Customer customer) {
+        customer.enqueued = now();
+        coffeeSelectionPlaces.acquire(action(Step.SELECTION_STARTED, customer));
+    }
+
+    /**
+     * 2. The programmer joins the shortest queue of the cash registers accepting his payment type,
+     * pays for the coffee and goes to the dispense queue.
+     * */
+    private void pay(Customer customer) {
+        customer.enqueued = now();
+        CashRegister cashRegister = CashRegister.select( cashRegisters, customer.programmer.getPaymentType(), customer.programmer.getRandom() );
+        cashRegister.assign();
+        customer.cashRegisterNumber = cashRegister.getCashRegisterNumber();
+        joinQueue(customer, Stage.PAYMENT);
+    }
+
+    private void startPayment(Customer customer) {
+        customer.started = now();
+        CashRegister cashRegister = cashRegisters[customer.cashRegisterNumber - 1];
+        customer.paymentDelay = cashRegister.getPaymentDelay( customer.programmer.getPaymentType(), customer.programmer.getRandom() );
+        schedule(customer.paymentDelay, Step.PAYMENT_COMPLETED, customer);
+    }
+
+    /**
+     * 3. The programmer queues at a coffee machine chosen by the dispatch policy,
+     * finds a cup, pours the coffee and leaves.
+     * */
+    private void pickCoffee(Customer customer) {
+        customer.enqueued = now();
+        Programmer programmer = customer.programmer;
+        CoffeeMachine coffeeMachine = dispatchPolicy.selectAvailable( coffeeMachines, programmer.getSelectedCoffee(), programmer.getRandom() );
+        coffeeMachine.assign( programmer.getSelectedCoffee() );
+        customer.coffeeMachineNumber = coffeeMachine.getCoffeeMachineNumber();
+        joinQueue(customer, Stage.CUP_FINDING);
+    }
+
+    private void startCupFinding(Customer customer) {
+        customer.started = now();
+        schedule(customer.programmer.getFindCupDelay(), Step.CUP_FOUND, customer);
+    }
+
+    /**
+     * The programmer joins the queue of a stage according to the queue policy and waits for a server.
+     * Under the BLOCK and RENEGE policies he keeps the previous stage occupied till he gets a place in a full queue.
+     *
+     * @param stage – PAYMENT or CUP_FINDING, the server of the stage is assigned to the customer already.
+     * */
+    private void joinQueue(Customer customer, Stage stage) {
+        customer.stage = stage;
+        Resource line = getLine(customer), server = getServer(customer);
+        if (queuePolicy != QueuePolicy.RENEGE) {
+            if (line == null) {
+                leavePreviousStage(customer);
+                server.acquire(action(Step.SERVICE_STARTED, customer));
+            } else if (queuePolicy == QueuePolicy.BLOCK) {
+                line.acquire(action(Step.PLACE_TAKEN, customer));
+            } else if ( line.tryAcquire() ) {
+                takePlace(customer);
+            } else {
+                leavePreviousStage(customer);
+                eventProcessor.submitEvent( PackedEvent.customerLost(stage, CustomerLost.Reason.BALKED, getCoffeeMachineNumber(customer)), 0 );
+                loseCustomer(customer);
+            }
+            return;
+        }
+
+        /* the patience covers both waiting for a place in the queue and waiting in the queue */
+        customer.deadline = customer.enqueued + customer.programmer.getPatience();
+        if (line == null) {
+            leavePreviousStage(customer);
+            server.acquire(action(Step.SERVICE_STARTED, customer), customer.deadline - now(), action(Step.SERVICE_TIMED_OUT, customer));
+        } else {
+            line.acquire(action(Step.PLACE_TAKEN, customer), customer.deadline - now(), action(Step.PLACE_TIMED_OUT, customer));
+        }
+    }
+
+    /**
+     * The programmer got a place in the bounded queue of a stage: he frees the previous stage and waits for a server.
+     * */
+    private void takePlace(Customer customer) {
+        leavePreviousStage(customer);
+        Resource server = getServer(customer);
+        if (queuePolicy == QueuePolicy.RENEGE) {
+            server.acquire(action(Step.SERVICE_STARTED, customer), Math.max(0, customer.deadline - now()), action(Step.SERVICE_TIMED_OUT, customer));
+        } else {
+            server.acquire(action(Step.SERVICE_STARTED, customer));
+        }
+    }
+
+    /**
+     * The programmer runs out of patience waiting in a queue and leaves without the service.
+     * */
+    private void renege(Customer customer) {
+        eventProcessor.submitEvent( PackedEvent.customerLost(customer.stage, CustomerLost.Reason.RENEGED, getCoffeeMachineNumber(customer)), now() - customer.enqueued );
+        loseCustomer(customer);
+    }
+
+    /**
+     * Frees the server assigned to a customer leaving without the service, once the event is submitted.
+     * */
+    private void loseCustomer(Customer customer) {
+        if (customer.stage == Stage.PAYMENT) {
+            cashRegisters[customer.cashRegisterNumber - 1].unassign();
+        } else {
+            coffeeMachines[customer.coffeeMachineNumber - 1].unassign( customer.programmer.getSelectedCoffee() );
+        }
+    }
+
+    /**
+     * Frees the stage before the one whose queue the customer joins: the coffee selection place or the cash desk.
+     * */
+    private void leavePreviousStage(Customer customer) {
+        if (customer.stage == Stage.PAYMENT) {
+            coffeeSelectionPlaces.release();
+        } else {
+            int registerNumber = customer.cashRegisterNumber;
+            leave(paymentLines != null ? paymentLines[registerNumber - 1] : null, cashDesks[registerNumber - 1]);
+        }
+    }
+
+    /* places in the bounded queue plus the servers of the stage whose queue the customer joins, null if the queue is unbounded */
+    private Resource getLine(Customer customer) {
+        if (customer.stage == Stage.PAYMENT) { return paymentLines != null ? paymentLines[customer.cashRegisterNumber - 1] : null; }
+        return coffeeMachineLines != null ? coffeeMachineLines[customer.coffeeMachineNumber - 1] : null;
+    }
+
+    /* servers of the stage whose queue the customer joins */
+    private Resource getServer(Customer customer) {
+        return customer.stage == Stage.PAYMENT ? cashDesks[customer.cashRegisterNumber - 1] : coffeeMachineOutlets[customer.coffeeMachineNumber - 1];
+    }
+
+    private static int getCoffeeMachineNumber(Customer customer) {
+        return customer.stage == Stage.PAYMENT ? StageCompleted.NO_COFFEE_MACHINE : customer.coffeeMachineNumber;
+    }
+
+    /**
+     * Frees the server of a stage and the place in its queue if the queue is bounded.
+     * */
+    private void leave(Resource line, Resource server) {
+        server.release();
+        if (line != null) { line.release(); }
+    }
+
+    /**
+     * Frees the place in the queue of a coffee machine and its outlet:
+     * the outlet is kept while the machine is offline for a refill or a maintenance.
+     * The refill or the maintenance starts once the pours at the other outlets are over.
+     * */
+    private void leaveCoffeeMachine(Customer customer) {
+        CoffeeMachine coffeeMachine = coffeeMachines[customer.coffeeMachineNumber - 1];
+        Resource line = coffeeMachineLines != null ? coffeeMachineLines[customer.coffeeMachineNumber - 1] : null;
+        if ( coffeeMachine.isAvailable() ) {
+            leave(line, coffeeMachineOutlets[customer.coffeeMachineNumber - 1]);
+            return;
+        }
+        if (line != null) { line.release(); }
+        customer.poursToTake = coffeeMachine.getOutlets();
+        takePours(customer);
+    }
+
+    /**
+     * Requests the units of the pours of the machine one by one, then starts its downtime.
+     * */
+    private void takePours(Customer customer) {
+        if (customer.poursToTake > 0) {
+            customer.poursToTake--;
+            coffeeMachinePours[customer.coffeeMachineNumber - 1].acquire(action(Step.POUR_UNIT_TAKEN, customer));
+            return;
+        }
+        /* the server of another outlet may have serviced the machine meanwhile: no downtime then */
+        long downtime = coffeeMachines[customer.coffeeMachineNumber - 1].startDowntime( customer.programmer.getRandom() );
+        schedule(downtime, Step.DOWNTIME_COMPLETED, customer);
+    }
+
+    /**
+     * Writes a checkpoint if it is due: called in between the events, while there are events left.
+     * */
+    private void checkpointIfDue() {
+        if (checkpointPath == null || now() < nextCheckpoint) { return; }
+        List<ScheduledEvent> events = simulation.getPendingEvents();
+        if ( events.isEmpty() ) { return; }
+        nextCheckpoint = now() + checkpointInterval;
+        try {
+            writeCheckpoint(events);
+        } catch (IOException e) {
+            logger.error("Failed to write a checkpoint: ", e);
+        }
+    }
+
+    /* all the resources in a fixed order: their units in use and queued requests are stored in the checkpoints */
+    private List<Resource> getResources() {
+        List<Resource> resources = new ArrayList<>();
+        resources.add(coffeeSelectionPlaces);
+        resources.addAll(Arrays.asList(cashDesks));
+        resources.addAll(Arrays.asList(coffeeMachineOutlets));
+        resources.addAll(Arrays.asList(coffeeMachinePours));
+        if (paymentLines != null) { resources.addAll(Arrays.asList(paymentLines)); }
+        if (coffeeMachineLines != null) { resources.addAll(Arrays.asList(coffeeMachineLines)); }
+        return resources;
+    }
+
+    /**
+     * Writes the checkpoint next to its file and moves it in place: a run dying meanwhile keeps the previous checkpoint.
+     * Each customer being served is written once and referred to by his index from the pending events and the queued requests.
+     *
+     * @param events – pending events in the execution order.
+     * */
+    private void writeCheckpoint(List<ScheduledEvent> events) throws IOException {
+        List<Resource> resources = getResources();
+        /* every customer in the system has either a pending event or a queued request */
+        Map<Customer, Integer> customerIndexes = new LinkedHashMap<>();
+        for (ScheduledEvent event : events) { indexCustomer(customerIndexes, event.getAction()); }
+        for (Resource resource : resources) {
+            for (Resource.Request request : resource.getWaiting()) { indexCustomer(customerIndexes, request.getOnAcquired()); }
+        }
+
+        Path temporary = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeUTF(config.toString());
+            out.writeUTF(dispatchPolicy.toString());
+            out.writeUTF(queuePolicy.name());
+            out.writeUTF(arrivals);
+            out.writeLong(now());
+            out.writeLong(simulation.getSequence());
+            out.writeLong(customersArrived);
+            out.writeBoolean(customers instanceof QueueFiller.CustomerStream);
+            if (customers instanceof QueueFiller.CustomerStream stream) { stream.writeState(out); }
+            arrivalProcess.writeState(out);
+            for (CashRegister cashRegister : cashRegisters) { cashRegister.writeState(out); }
+            for (CoffeeMachine coffeeMachine : coffeeMachines) { coffeeMachine.writeState(out); }
+
+            out.writeInt(customerIndexes.size());
+            for (Customer customer : customerIndexes.keySet()) { customer.writeTo(out); }
+            out.writeInt(events.size());
+            for (ScheduledEvent event : events) {
+                out.writeLong(event.getTime());
+                out.writeLong(event.getSequence());
+                writeAction(out, event.getAction(), customerIndexes);
+            }
+            for (Resource resource : resources) {
+                List<Resource.Request> waiting = resource.getWaiting();
+                out.writeInt(resource.getBusy());
+                out.writeInt(waiting.size());
+                for (Resource.Request request : waiting) {
+                    writeAction(out, request.getOnAcquired(), customerIndexes);
+                    out.writeBoolean(request.getTimeout() != null);
+                    if (request.getTimeout() != null) {
+                        out.writeLong(request.getTimeout().getTime());
+                        out.writeLong(request.getTimeout().getSequence());
+                        writeAction(out, request.getOnTimeout(), customerIndexes);
+                    }
+                }
+            }
+            eventProcessor.writeSummary(out);
+        }
+        Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Checkpoint written at " + now() + " milliseconds, customers arrived: " + customersArrived + ", in the system: " + customerIndexes.size());
+    }
+
+    private static void indexCustomer(Map<Customer, Integer> customerIndexes, Runnable action) {
+        Customer customer = ((Action) action).customer;
+        if (customer != null) { customerIndexes.putIfAbsent(customer, customerIndexes.size()); }
+    }
+
+    private static void writeAction(DataOutput out, Runnable action, Map<Customer, Integer> customerIndexes) throws IOException {
+        Action step = (Action) action;
+        out.writeByte(step.step.ordinal());
+        out.writeInt(step.customer != null ? customerIndexes.get(step.customer) : -1);
+    }
+
+    private Action readAction(DataInput in, List<Customer> customers) throws IOException {
+        Step step = Step.values()[in.readByte()];
+        int customer = in.readInt();
+        return action(step, customer >= 0 ? customers.get(customer) : null);
+    }
+
+    /**
+     * Restores the state stored in the checkpoint: the customer stream, the arrival process,
+     * the servers, the customers being served, the pending events and the queued requests.
+     * */
+    private void resume() {
+        try {
+            DataInputStream in = resumed;
+            String queuePolicyName = in.readUTF(), checkpointArrivals = in.readUTF();
+            if ( !queuePolicyName.equals(queuePolicy.name()) ) { throw new IllegalStateException("Checkpoint of another queue policy: " + queuePolicyName); }
+            if ( !checkpointArrivals.equals(arrivals) ) { throw new IllegalStateException("Checkpoint of another arrival process: " + checkpointArrivals); }
+            long time = in.readLong(), sequence = in.readLong();
+            customersArrived = in.readLong();
+            boolean customerStream = in.readBoolean();
+            if ( customerStream != (customers instanceof QueueFiller.CustomerStream) ) { throw new IllegalStateException("Checkpoint of another customer source"); }
+            if (customers instanceof QueueFiller.CustomerStream stream) {
+                stream.readState(in);
+            } else {
+                for (long i=0; i < customersArrived; i++) {
+                    if ( !customers.hasNext() ) { throw new IllegalStateException("Fewer customers than arrived before the checkpoint: " + i); }
+                    customers.next();
+                }
+            }
+            arrivalProcess.readState(in);
+            for (CashRegister cashRegister : cashRegisters) { cashRegister.readState(in); }
+            for (CoffeeMachine coffeeMachine : coffeeMachines) { coffeeMachine.readState(in); }
+
+            simulation.resumeAt(time, sequence);
+            List<Customer> inSystem = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) { inSystem.add(Customer.readFrom(in, simulation.getClock(), config)); }
+            for (int i = in.readInt(); i > 0; i--) {
+                long eventTime = in.readLong(), eventSequence = in.readLong();
+                simulation.restore(eventTime, eventSequence, readAction(in, inSystem));
+            }
+            for (Resource resource : getResources()) {
+                resource.restore(in.readInt());
+                for (int i = in.readInt(); i > 0; i--) {
+                    Action onAcquired = readAction(in, inSystem);
+                    if ( in.readBoolean() ) {
+                        long timeoutTime = in.readLong(), timeoutSequence = in.readLong();
+                        resource.restoreRequest(onAcquired, timeoutTime, timeoutSequence, readAction(in, inSystem));
+                    } else {
+                        resource.restoreRequest(onAcquired);
+                    }
+                }
+            }
+            eventProcessor.addSummary(in);
+            logger.info("Resuming the simulation at " + time + " milliseconds, customers arrived: " + customersArrived + ", in the system: " + inSystem.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the checkpoint", e);
+        }
+    }
+
+    /**
+     * Submits the time spent at a stage, completed at the current simulation time – for a later report.
+     * */
+    private void completeStage(Stage stage, long enqueued, long started) {
+        completeStage(stage, enqueued, started, StageCompleted.NO_COFFEE_MACHINE);
+    }
+
+    private void completeStage(Stage stage, long enqueued, long started, int coffeeMachineNumber) {
+        eventProcessor.submitEvent( PackedEvent.stageCompleted(stage, now() - started, coffeeMachineNumber), started - enqueued );
+    }
+
+    private long now() { return simulation.getClock().currentTimeMillis(); }
+}
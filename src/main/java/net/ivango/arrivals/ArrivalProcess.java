@@ -0,0 +1,41 @@
+package net.ivango.arrivals;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Defines the moments the customers arrive at: an open system keeps receiving new customers
+ * while the previous ones are still being served.
+ *
+ * Implementations are not required to be thread-safe: a single thread is supposed to feed the arrivals.
+ */
+@FunctionalInterface
+public interface ArrivalProcess {
+
+    /* returned once the process is exhausted, e.g. at the end of a replayed trace */
+    long NO_MORE_ARRIVALS = -1;
+
+    /**
+     * @return modeled time in milliseconds between the previous arrival (or the simulation start)
+     * and the next one, or NO_MORE_ARRIVALS.
+     * */
+    long nextInterArrivalTime();
+
+    /**
+     * Writes the state of the process, e.g. its random stream, to checkpoint a simulation:
+     * a process restored from it gives the same arrivals as this one from now on.
+     * A stateless process (e.g. the simultaneous arrivals) writes nothing, stateful implementations should override.
+     * */
+    default void writeState(DataOutput out) throws IOException {}
+
+    /**
+     * Restores the state written by {@link #writeState(DataOutput)} of a process with the same settings.
+     * */
+    default void readState(DataInput in) throws IOException {}
+
+    /**
+     * @return a process where all the customers arrive at the simulation start at once.
+     * */
+    static ArrivalProcess simultaneous() { return () -> 0; }
+}
@@ -0,0 +1,84 @@
+package net.ivango.arrivals;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Customers arrive in periodic bursts (e.g. when a stand-up finishes the whole team goes for a coffee)
+ * on top of a Poisson background traffic.
+ */
+public class BurstyArrivals implements ArrivalProcess {
+
+    private final long burstInterval;
+    private final int burstSize;
+    /* background traffic between the bursts, absent if null */
+    private final PoissonArrivals background;
+
+    /* modeled time of the previous arrival, of the next burst and of the next background arrival */
+    private long now, nextBurst, nextBackground;
+    /* customers of the current burst still to arrive */
+    private int burstRemaining;
+
+    public BurstyArrivals(long burstInterval, int burstSize, double backgroundCustomersPerMinute) {
+        this(burstInterval, burstSize, backgroundCustomersPerMinute, new SplittableRandom());
+    }
+
+    /**
+     * @param burstInterval – modeled time in milliseconds between the bursts, the first burst happens at the simulation start.
+     * @param burstSize – amount of customers arriving at once in each burst.
+     * @param backgroundCustomersPerMinute – average arrival rate between the bursts, 0 for no background traffic.
+     * @param random – seeds the random stream of the background traffic, e.g. split from a seeded one to make the runs reproducible.
+     * */
+    public BurstyArrivals(long burstInterval, int burstSize, double backgroundCustomersPerMinute, RandomGenerator random) {
+        if (burstInterval <= 0 || burstSize <= 0) { throw new IllegalArgumentException("Burst interval and size should be positive"); }
+        this.burstInterval = burstInterval;
+        this.burstSize = burstSize;
+        this.background = backgroundCustomersPerMinute > 0 ? new PoissonArrivals(backgroundCustomersPerMinute, random) : null;
+        this.nextBackground = background != null ? background.nextInterArrivalTime() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public long nextInterArrivalTime() {
+        long previous = now;
+        if (burstRemaining == 0 && nextBurst <= nextBackground) {
+            /* a new burst starts */
+            burstRemaining = burstSize;
+            now = nextBurst;
+            nextBurst += burstInterval;
+        }
+        if (burstRemaining > 0) {
+            burstRemaining--;
+        } else {
+            now = nextBackground;
+            nextBackground += background.nextInterArrivalTime();
+        }
+        return now - previous;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(now);
+        out.writeLong(nextBurst);
+        out.writeLong(nextBackground);
+        out.writeInt(burstRemaining);
+        if (background != null) { background.writeState(out); }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        now = in.readLong();
+        nextBurst = in.readLong();
+        nextBackground = in.readLong();
+        burstRemaining = in.readInt();
+        if (background != null) { background.readState(in); }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bursty (%d customers every %d milliseconds%s)", burstSize, burstInterval,
+                background != null ? ", background: " + background : "");
+    }
+}
@@ -0,0 +1,44 @@
+package net.ivango.arrivals;
+
+import net.ivango.distributions.RandomStream;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Customers arrive independently of each other at a constant average rate:
+ * the time between the arrivals is exponentially distributed.
+ */
+public class PoissonArrivals implements ArrivalProcess {
+
+    /* average time between the arrivals in milliseconds */
+    private final double meanInterArrivalTime;
+    private final RandomStream random;
+
+    public PoissonArrivals(double customersPerMinute) { this(customersPerMinute, new SplittableRandom()); }
+
+    /**
+     * @param customersPerMinute – average arrival rate.
+     * @param random – seeds the random stream of the arrivals, e.g. split from a seeded one to make the runs reproducible.
+     * */
+    public PoissonArrivals(double customersPerMinute, RandomGenerator random) {
+        if (customersPerMinute <= 0) { throw new IllegalArgumentException("Arrival rate should be positive: " + customersPerMinute); }
+        this.meanInterArrivalTime = 60_000 / customersPerMinute;
+        this.random = RandomStream.seededFrom(random);
+    }
+
+    @Override
+    public long nextInterArrivalTime() { return Math.round(-Math.log(1 - random.nextDouble()) * meanInterArrivalTime); }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException { random.writeState(out); }
+
+    @Override
+    public void readState(DataInput in) throws IOException { random.readState(in); }
+
+    @Override
+    public String toString() { return String.format("Poisson (%.1f customers per minute)", 60_000 / meanInterArrivalTime); }
+}
@@ -0,0 +1,94 @@
+package net.ivango.arrivals;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Replays the recorded arrival moments, e.g. taken from the real office logs.
+ * The trace is read lazily, so even a huge trace does not have to fit into memory.
+ * The trace file is closed once the trace is exhausted; close the process to release it earlier.
+ */
+public class TraceArrivals implements ArrivalProcess, Closeable {
+
+    /* arrival moments in milliseconds since the trace start, in ascending order */
+    private final Iterator<Long> arrivalTimes;
+    /* releases the source of the arrival moments, e.g. the trace file */
+    private final Runnable closer;
+    private boolean closed;
+    private final String description;
+    /* the last arrival moment and the amount of the moments taken */
+    private long previous, taken;
+
+    public TraceArrivals(Iterator<Long> arrivalTimes, String description) { this(arrivalTimes, () -> {}, description); }
+
+    private TraceArrivals(Iterator<Long> arrivalTimes, Runnable closer, String description) {
+        this.arrivalTimes = arrivalTimes;
+        this.closer = closer;
+        this.description = description;
+    }
+
+    /**
+     * @param traceFile – text file with an arrival moment (milliseconds since the trace start) per line, in ascending order.
+     *                  Empty lines and lines starting with '#' are skipped.
+     * */
+    public static TraceArrivals fromFile(Path traceFile) {
+        try {
+            Stream<String> lines = Files.lines(traceFile);
+            Iterator<Long> arrivalTimes = lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(Long::parseLong)
+                    .iterator();
+            return new TraceArrivals(arrivalTimes, lines::close, "Trace replay (" + traceFile + ")");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the arrivals trace: " + traceFile, e);
+        }
+    }
+
+    @Override
+    public long nextInterArrivalTime() {
+        if ( closed || !arrivalTimes.hasNext() ) {
+            close();
+            return NO_MORE_ARRIVALS;
+        }
+        long next = arrivalTimes.next();
+        if (next < previous) { throw new IllegalStateException("Arrival moments should be in ascending order: " + next + " < " + previous); }
+        long interArrivalTime = next - previous;
+        previous = next;
+        taken++;
+        return interArrivalTime;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException { out.writeLong(taken); }
+
+    /**
+     * Skips the arrival moments taken before the checkpoint: a trace has no random stream to restore,
+     * but is read from the start again.
+     * */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        long checkpointed = in.readLong();
+        while (taken < checkpointed) {
+            if ( nextInterArrivalTime() == NO_MORE_ARRIVALS ) { throw new IOException("The trace is shorter than the checkpointed one: " + taken); }
+        }
+    }
+
+    /**
+     * Closes the trace file: no more customers arrive. Idempotent.
+     * */
+    @Override
+    public void close() {
+        closed = true;
+        closer.run();
+    }
+
+    @Override
+    public String toString() { return description; }
+}
@@ -0,0 +1,23 @@
+package net.ivango.clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of the modeled time used by the simulation components.
+ * Depending on the implementation the modeled time may run as fast as the real time ({@link RealTimeClock}),
+ * faster than the real time ({@link ScaledClock}) or be completely virtual
+ * ({@link net.ivango.simulation.SimulationClock}).
+ */
+public interface Clock extends Sleeper {
+
+    /**
+     * @return current modeled time in milliseconds.
+     * Only the difference between two values is meaningful: the origin is implementation-specific.
+     * */
+    long currentTimeMillis();
+
+    /**
+     * @return real time in nanoseconds the given modeled time takes, e.g. to wait for a place in a queue with a timeout.
+     * */
+    default long toNanos(long millis) { return TimeUnit.MILLISECONDS.toNanos(millis); }
+}
@@ -0,0 +1,19 @@
+package net.ivango.clock;
+
+/**
+ * All the delays take no time: the modeled time is the real time spent by the simulator itself.
+ * Used to measure the overhead of the simulation machinery (queues, threads, metrics) without the modeled delays.
+ */
+public class InstantClock implements Clock {
+
+    public static final InstantClock INSTANCE = new InstantClock();
+
+    @Override
+    public long currentTimeMillis() { return RealTimeClock.INSTANCE.currentTimeMillis(); }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        /* keep the interruption semantics of a real sleep */
+        if (Thread.interrupted()) { throw new InterruptedException(); }
+    }
+}
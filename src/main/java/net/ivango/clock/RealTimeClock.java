@@ -0,0 +1,18 @@
+package net.ivango.clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modeled time runs as fast as the real time.
+ * Based on the monotonic System.nanoTime(): no time zone lookups or allocations on each call.
+ */
+public class RealTimeClock implements Clock {
+
+    public static final RealTimeClock INSTANCE = new RealTimeClock();
+
+    @Override
+    public long currentTimeMillis() { return TimeUnit.NANOSECONDS.toMillis(System.nanoTime()); }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException { TimeUnit.MILLISECONDS.sleep(millis); }
+}
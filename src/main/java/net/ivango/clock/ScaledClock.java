@@ -0,0 +1,28 @@
+package net.ivango.clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modeled time runs faster (or slower) than the real time by a constant factor,
+ * e.g. with the speedup of 100 a 500 milliseconds delay takes 5 real milliseconds.
+ * The reported time is scaled back, so the reports show the modeled time.
+ */
+public class ScaledClock implements Clock {
+
+    private final double speedup;
+    private final long origin = System.nanoTime();
+
+    public ScaledClock(double speedup) {
+        if (speedup <= 0) { throw new IllegalArgumentException("Speedup should be positive: " + speedup); }
+        this.speedup = speedup;
+    }
+
+    @Override
+    public long currentTimeMillis() { return (long) ((System.nanoTime() - origin) * speedup / 1_000_000); }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException { TimeUnit.NANOSECONDS.sleep( toNanos(millis) ); }
+
+    @Override
+    public long toNanos(long millis) { return (long) (millis * 1_000_000 / speedup); }
+}
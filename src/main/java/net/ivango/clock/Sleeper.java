@@ -0,0 +1,13 @@
+package net.ivango.clock;
+
+/**
+ * Suspends the current thread for a given amount of the modeled time.
+ */
+@FunctionalInterface
+public interface Sleeper {
+
+    /**
+     * @param millis – modeled time in milliseconds to wait for.
+     * */
+    void sleep(long millis) throws InterruptedException;
+}
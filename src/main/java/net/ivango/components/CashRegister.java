@@ -1,41 +1,164 @@
 package net.ivango.components;
 
-import com.google.common.collect.ImmutableMap;
+import net.ivango.clock.Clock;
 import net.ivango.config.Config;
+import net.ivango.distributions.ServiceTimeDistribution;
 import net.ivango.entities.PaymentType;
 import net.ivango.metrics.EventProcessor;
-import net.ivango.metrics.events.CupSold;
+import net.ivango.metrics.PackedEvent;
 
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
 
 import static net.ivango.config.Properties.*;
 
 /**
  * Simulates a cash register.
+ * Each register serves a single customer at a time and has its own queue;
+ * it may accept only some of the payment types, e.g. a card-only register.
  *
  * Created by Ivan Golubev <igolubev@ea.com> on 4/3/16.
  */
 public class CashRegister {
 
     private EventProcessor eventProcessor;
-    public CashRegister(EventProcessor eventProcessor) { this.eventProcessor = eventProcessor; }
+    /* number used to identify this register in reports */
+    private int cashRegisterNumber;
+    /* modeled time source used to wait for the payment */
+    private Clock clock;
 
-    /* depending on the payment type it takes different time to process a payment */
-    private Map<PaymentType, Integer> paymentToDelayMap = ImmutableMap.of(
-            PaymentType.CASH, Config.get(CASH_PAYMENT_TIMEOUT),
-            PaymentType.CREDIT, Config.get(CREDIT_PAYMENT_TIMEOUT)
-    );
+    /* payment types this register accepts, indexed by the payment type ordinal */
+    private boolean[] acceptedPaymentTypes = new boolean[PaymentType.values().length];
+    /* load of this register used to choose a queue: customers assigned to it (waiting or being served) */
+    private AtomicInteger assignedCustomers = new AtomicInteger();
+
+    /* depending on the payment type it takes different time to process a payment, indexed by the payment type ordinal */
+    private ServiceTimeDistribution[] paymentDelays = new ServiceTimeDistribution[PaymentType.values().length];
+
+    /**
+     * @param acceptedPaymentTypes – payment types this register accepts, at least one.
+     * */
+    public CashRegister(EventProcessor eventProcessor, int cashRegisterNumber, Clock clock, Config config, PaymentType... acceptedPaymentTypes) {
+        if (acceptedPaymentTypes.length == 0) { throw new IllegalArgumentException("Cash register " + cashRegisterNumber + " accepts no payment type"); }
+        this.eventProcessor = eventProcessor;
+        this.cashRegisterNumber = cashRegisterNumber;
+        this.clock = clock;
+        for (PaymentType paymentType : acceptedPaymentTypes) { this.acceptedPaymentTypes[paymentType.ordinal()] = true; }
+        paymentDelays[PaymentType.CASH.ordinal()] = config.getDistribution(CASH_PAYMENT_TIMEOUT);
+        paymentDelays[PaymentType.CREDIT.ordinal()] = config.getDistribution(CREDIT_PAYMENT_TIMEOUT);
+    }
+
+    /**
+     * @return the cash registers of the simulation, numbered from 1:
+     * the first CASH_ONLY_REGISTERS accept cash only, the next CREDIT_ONLY_REGISTERS accept credit only,
+     * the rest accept both. Each payment type should be accepted by a register.
+     * */
+    public static CashRegister[] createCashRegisters(EventProcessor eventProcessor, Clock clock, Config config) {
+        int cashOnly = config.get(CASH_ONLY_REGISTERS), creditOnly = config.get(CREDIT_ONLY_REGISTERS);
+        CashRegister[] cashRegisters = new CashRegister[config.get(PAYMENT_PARALLELISM)];
+        if (cashOnly < 0 || creditOnly < 0 || cashOnly + creditOnly > cashRegisters.length) {
+            throw new IllegalArgumentException("Invalid cash-only (" + cashOnly + ") and credit-only (" + creditOnly
+                    + ") registers out of " + cashRegisters.length);
+        }
+        for (int i=0; i < cashRegisters.length; i++) {
+            cashRegisters[i] = new CashRegister(eventProcessor, i+1, clock, config, getAcceptedPaymentTypes(config, i+1));
+        }
+        for (PaymentType paymentType : PaymentType.values()) {
+            if ( Arrays.stream(cashRegisters).noneMatch(cashRegister -> cashRegister.accepts(paymentType)) ) {
+                throw new IllegalArgumentException("No cash register accepts " + paymentType);
+            }
+        }
+        return cashRegisters;
+    }
+
+    /**
+     * @return payment types accepted by the given cash register of a simulation with the given settings.
+     * */
+    public static PaymentType[] getAcceptedPaymentTypes(Config config, int cashRegisterNumber) {
+        int cashOnly = config.get(CASH_ONLY_REGISTERS), creditOnly = config.get(CREDIT_ONLY_REGISTERS);
+        if (cashRegisterNumber <= cashOnly) { return new PaymentType[]{ PaymentType.CASH }; }
+        if (cashRegisterNumber <= cashOnly + creditOnly) { return new PaymentType[]{ PaymentType.CREDIT }; }
+        return PaymentType.values();
+    }
+
+    /**
+     * Chooses a queue for a customer: the shortest one among the registers accepting his payment type.
+     * The ties are broken at random, so the registers with the same load share the customers.
+     *
+     * @param random – random stream of the customer.
+     * @return null if no register accepts the payment type.
+     * */
+    public static CashRegister select(CashRegister[] cashRegisters, PaymentType paymentType, RandomGenerator random) {
+        CashRegister best = null;
+        int offset = random.nextInt(cashRegisters.length);
+        for (int i=0; i < cashRegisters.length; i++) {
+            CashRegister cashRegister = cashRegisters[(offset + i) % cashRegisters.length];
+            if ( cashRegister.accepts(paymentType) && (best == null || cashRegister.getAssignedCustomers() < best.getAssignedCustomers()) ) {
+                best = cashRegister;
+            }
+        }
+        return best;
+    }
 
     /**
      * Simulates the payment procedure.
      *
      * @param paymentType – defines the time it takes to process the payment.
+     * @param random – random stream of the customer.
+     * */
+    public void pay(PaymentType paymentType, RandomGenerator random) throws InterruptedException {
+        long paymentDelay = getPaymentDelay(paymentType, random);
+        clock.sleep(paymentDelay);
+        registerPayment(paymentType, paymentDelay);
+    }
+
+    /**
+     * @return time in milliseconds it takes to process a payment of the given type:
+     * a new random value on each call if the payment timeout is random.
+     * @param random – random stream of the customer.
+     * */
+    public long getPaymentDelay(PaymentType paymentType, RandomGenerator random) { return paymentDelays[paymentType.ordinal()].sample(random); }
+
+    /**
+     * Completes the payment without waiting:
+     * used when the payment delay is already accounted for by the caller (e.g. a discrete-event simulation).
+     *
+     * @param paymentDelay – time in milliseconds the payment took.
      * */
-    public void pay(PaymentType paymentType) throws InterruptedException {
-        TimeUnit.MILLISECONDS.sleep( paymentToDelayMap.get(paymentType) );
+    public void registerPayment(PaymentType paymentType, long paymentDelay) {
         /* track the "payment" event for later reports */
-        eventProcessor.submitEvent(new CupSold(paymentType));
+        eventProcessor.submitEvent( PackedEvent.cupSold(paymentType, cashRegisterNumber, paymentDelay) );
     }
 
+    public int getCashRegisterNumber() { return cashRegisterNumber; }
+
+    public boolean accepts(PaymentType paymentType) { return acceptedPaymentTypes[paymentType.ordinal()]; }
+
+    /**
+     * Tracks a customer assigned to this register: he is either waiting in the queue of this register or being served.
+     * Thread-safe.
+     * */
+    public void assign() { assignedCustomers.incrementAndGet(); }
+
+    /**
+     * Tracks a customer leaving this register. Thread-safe.
+     * */
+    public void unassign() { assignedCustomers.decrementAndGet(); }
+
+    /* current load of this register */
+    public int getAssignedCustomers() { return assignedCustomers.get(); }
+
+    /**
+     * Writes the customers assigned to this register, e.g. to checkpoint a simulation.
+     * */
+    public void writeState(DataOutput out) throws IOException { out.writeInt(assignedCustomers.get()); }
+
+    /**
+     * Restores the state written by {@link #writeState(DataOutput)}.
+     * */
+    public void readState(DataInput in) throws IOException { assignedCustomers.set(in.readInt()); }
 }
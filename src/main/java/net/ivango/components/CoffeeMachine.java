@@ -1,20 +1,38 @@
 package net.ivango.components;
 
-import com.google.common.collect.ImmutableMap;
+import net.ivango.clock.Clock;
 import net.ivango.config.Config;
+import net.ivango.distributions.ServiceTimeDistribution;
+import net.ivango.config.Properties;
 import net.ivango.entities.CoffeeType;
+import net.ivango.entities.Consumable;
 import net.ivango.entities.Cup;
 import net.ivango.metrics.EventProcessor;
-import net.ivango.metrics.events.CupDispensed;
+import net.ivango.metrics.PackedEvent;
+import net.ivango.metrics.events.MachineDowntime;
 
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.random.RandomGenerator;
 
 import static net.ivango.config.Properties.*;
 
 /**
  * Simulates a coffee machine.
  * Customer may check which coffee is available and pour a cup of coffee.
+ * Each machine has its own menu, e.g. an espresso-only machine, and one or more outlets pouring in parallel.
+ *
+ * Each cup drains the consumables of the machine. Once the machine cannot pour a cup of any coffee type
+ * or is due a maintenance cycle, it becomes unavailable: the dispatch policies route around it,
+ * while its server (the worker or the customer holding the outlet) takes it offline for the refill/ maintenance
+ * right after the last customer leaves. The customers already queueing wait for the machine to come back.
+ * The refill/ maintenance waits for the pours in progress at the other outlets, no pour starts till it is over.
  *
  * Created by Ivan Golubev <igolubev@ea.com> on 4/3/16.
  *
@@ -25,38 +43,294 @@ public class CoffeeMachine {
     private EventProcessor eventProcessor;
     /* number used to identify this machine in reports */
     private int coffeeMachineNumber;
+    /* modeled time source used to wait for the cup to be filled */
+    private Clock clock;
+
+    /* load of this machine used for dispatching: customers assigned to it (waiting or being served)
+     * and the expected total time in milliseconds it takes to pour their cups */
+    private AtomicInteger assignedCustomers = new AtomicInteger();
+    private AtomicLong assignedWork = new AtomicLong();
+
+    /* coffee types this machine pours, indexed by the coffee type ordinal, and the menu in the ordinal order */
+    private boolean[] pouredCoffeeTypes = new boolean[CoffeeType.values().length];
+    private CoffeeType[] menu;
+    /* amount of the cups poured at once */
+    private int outlets;
+    /* the pours share the machine, the refill/ maintenance takes it whole: used by the servers running in threads */
+    private final ReadWriteLock pours = new ReentrantReadWriteLock();
 
-    /* depending on the type of coffee it takes different time to pour a cup */
-    private Map<CoffeeType, Integer> coffeeToDelayMap = ImmutableMap.<CoffeeType, Integer>builder()
-            .put(CoffeeType.ESPRESSO, Config.get(POUR_ESPRESSO_TIMEOUT))
-            .put(CoffeeType.LATTE, Config.get(POUR_LATTE_TIMEOUT))
-            .put(CoffeeType.MACCHIATO, Config.get(POUR_MACCHIATTO_TIMEOUT))
-            .put(CoffeeType.CAPPUCCINO, Config.get(POUR_CAPPUCCINO_TIMEOUT))
-            .build();
+    /* depending on the type of coffee it takes different time to pour a cup, indexed by the coffee type ordinal */
+    private ServiceTimeDistribution[] pourDelays = new ServiceTimeDistribution[CoffeeType.values().length];
+    /* time in milliseconds to put the cup under the outlet and to pick the selected coffee type */
+    private ServiceTimeDistribution putUnderTheOutletDelay, pickSelectedCoffeeDelay;
 
-    public CoffeeMachine(EventProcessor eventProcessor, int coffeeMachineNumber) {
+    /* settings defining the capacity of each consumable, indexed by the consumable ordinal */
+    private static final Properties[] CAPACITIES = { WATER_CAPACITY, BEANS_CAPACITY, MILK_CAPACITY };
+    /* consumables left and the capacities (0 for unlimited), indexed by the consumable ordinal.
+     * Changed by the pours and the refills of the machine, which never overlap */
+    private int[] levels = new int[Consumable.values().length], capacities = new int[Consumable.values().length];
+    /* consumables required to pour a cup of any coffee type of the menu at each outlet, indexed by the consumable ordinal */
+    private int[] reserves = new int[Consumable.values().length];
+    /* cups between the maintenance cycles, 0 if never, and cups poured since the last one */
+    private int maintenanceInterval, cupsSinceMaintenance;
+    /* time in milliseconds the machine is offline to be refilled and to run a maintenance cycle */
+    private ServiceTimeDistribution refillDelay, maintenanceDelay;
+    /* false from the moment the machine needs a refill or a maintenance till it is back online */
+    private volatile boolean available = true;
+
+    /**
+     * @param outlets – amount of the cups poured at once, positive.
+     * @param menu – coffee types this machine pours, at least one.
+     * */
+    public CoffeeMachine(EventProcessor eventProcessor, int coffeeMachineNumber, Clock clock, Config config, int outlets, CoffeeType... menu) {
+        if (menu.length == 0) { throw new IllegalArgumentException("Coffee machine " + coffeeMachineNumber + " pours no coffee type"); }
+        if (outlets <= 0) { throw new IllegalArgumentException("Coffee machine " + coffeeMachineNumber + " has no outlets: " + outlets); }
         this.eventProcessor = eventProcessor;
         this.coffeeMachineNumber = coffeeMachineNumber;
+        this.clock = clock;
+        this.outlets = outlets;
+        for (CoffeeType coffeeType : menu) { pouredCoffeeTypes[coffeeType.ordinal()] = true; }
+        this.menu = Arrays.stream(CoffeeType.values()).filter(this::pours).toArray(CoffeeType[]::new);
+        pourDelays[CoffeeType.ESPRESSO.ordinal()] = config.getDistribution(POUR_ESPRESSO_TIMEOUT);
+        pourDelays[CoffeeType.LATTE.ordinal()] = config.getDistribution(POUR_LATTE_TIMEOUT);
+        pourDelays[CoffeeType.MACCHIATO.ordinal()] = config.getDistribution(POUR_MACCHIATTO_TIMEOUT);
+        pourDelays[CoffeeType.CAPPUCCINO.ordinal()] = config.getDistribution(POUR_CAPPUCCINO_TIMEOUT);
+        this.putUnderTheOutletDelay = config.getDistribution(PUT_UNDER_THE_OUTLET_TIMEOUT);
+        this.pickSelectedCoffeeDelay = config.getDistribution(PICK_SELECTED_COFFEE_TIMEOUT);
+        for (Consumable consumable : Consumable.values()) {
+            int i = consumable.ordinal();
+            capacities[i] = levels[i] = config.get(CAPACITIES[i]);
+            for (CoffeeType coffeeType : this.menu) { reserves[i] = Math.max(reserves[i], outlets * coffeeType.getConsumption(consumable)); }
+            if (capacities[i] != 0 && capacities[i] < reserves[i]) {
+                throw new IllegalArgumentException(CAPACITIES[i] + " is too small to pour a cup: " + capacities[i]);
+            }
+        }
+        this.maintenanceInterval = config.get(MAINTENANCE_INTERVAL);
+        this.refillDelay = config.getDistribution(REFILL_TIMEOUT);
+        this.maintenanceDelay = config.getDistribution(MAINTENANCE_TIMEOUT);
+    }
+
+    /**
+     * @return the coffee machines of the simulation, numbered from 1:
+     * the first ESPRESSO_ONLY_MACHINES pour espresso only, the others pour every coffee type;
+     * the last TWO_OUTLET_MACHINES have two outlets, the others have one.
+     * */
+    public static CoffeeMachine[] createCoffeeMachines(EventProcessor eventProcessor, Clock clock, Config config) {
+        int espressoOnly = config.get(ESPRESSO_ONLY_MACHINES), twoOutlets = config.get(TWO_OUTLET_MACHINES);
+        CoffeeMachine[] coffeeMachines = new CoffeeMachine[config.get(PICK_COFFEE_PARALLELISM)];
+        if (espressoOnly < 0 || espressoOnly > coffeeMachines.length || twoOutlets < 0 || twoOutlets > coffeeMachines.length) {
+            throw new IllegalArgumentException("Invalid espresso-only (" + espressoOnly + ") and two-outlet (" + twoOutlets
+                    + ") machines out of " + coffeeMachines.length);
+        }
+        for (int i=0; i < coffeeMachines.length; i++) {
+            coffeeMachines[i] = new CoffeeMachine(eventProcessor, i+1, clock, config, getOutlets(config, i+1), getMenu(config, i+1));
+        }
+        return coffeeMachines;
+    }
+
+    /**
+     * @return coffee types poured by the given coffee machine of a simulation with the given settings.
+     * */
+    public static CoffeeType[] getMenu(Config config, int coffeeMachineNumber) {
+        if (coffeeMachineNumber <= config.get(ESPRESSO_ONLY_MACHINES)) { return new CoffeeType[]{ CoffeeType.ESPRESSO }; }
+        return CoffeeType.values();
+    }
+
+    /**
+     * @return amount of the outlets of the given coffee machine of a simulation with the given settings.
+     * */
+    public static int getOutlets(Config config, int coffeeMachineNumber) {
+        return coffeeMachineNumber > config.get(PICK_COFFEE_PARALLELISM) - config.get(TWO_OUTLET_MACHINES) ? 2 : 1;
     }
 
     /**
      * Simulates the "pour-the-coffee" process.
+     * Waits while the machine is offline for a refill or a maintenance.
      * */
-    public Cup pourCoffee(Cup cup, CoffeeType coffeeType) throws InterruptedException {
-        /* put the cup under the outlet */
-        TimeUnit.MILLISECONDS.sleep(Config.get(PUT_UNDER_THE_OUTLET_TIMEOUT));
-        /* pick the selected the type of coffee */
-        TimeUnit.MILLISECONDS.sleep(Config.get(PICK_SELECTED_COFFEE_TIMEOUT));
-        /* wait till the cup is filled */
-        TimeUnit.MILLISECONDS.sleep(coffeeToDelayMap.get(coffeeType));
+    public Cup pourCoffee(Cup cup, CoffeeType coffeeType, RandomGenerator random) throws InterruptedException {
+        pours.readLock().lockInterruptibly();
+        try {
+            /* put the cup under the outlet */
+            clock.sleep(putUnderTheOutletDelay.sample(random));
+            /* pick the selected the type of coffee */
+            clock.sleep(pickSelectedCoffeeDelay.sample(random));
+            /* wait till the cup is filled */
+            clock.sleep(pourDelays[coffeeType.ordinal()].sample(random));
 
-        /* track the "cup poured" event for later reports */
-        eventProcessor.submitEvent( new CupDispensed(coffeeType, coffeeMachineNumber) );
+            registerPour(coffeeType);
+        } finally {
+            pours.readLock().unlock();
+        }
         return cup;
     }
 
     /**
-     * @return types of coffee generally available in coffee machines.
+     * @return total time in milliseconds it takes to pour a cup of the given coffee type:
+     * put the cup under the outlet, pick the coffee type and wait till the cup is filled.
+     * A new random value on each call if the timeouts are random.
+     * @param random – random stream of the customer.
+     * */
+    public long getPourDelay(CoffeeType coffeeType, RandomGenerator random) {
+        return putUnderTheOutletDelay.sample(random) + pickSelectedCoffeeDelay.sample(random) + pourDelays[coffeeType.ordinal()].sample(random);
+    }
+
+    /**
+     * @return expected time in milliseconds it takes to pour a cup of the given coffee type.
+     * */
+    public long getMeanPourDelay(CoffeeType coffeeType) {
+        return Math.round(putUnderTheOutletDelay.getMean() + pickSelectedCoffeeDelay.getMean() + pourDelays[coffeeType.ordinal()].getMean());
+    }
+
+    /**
+     * Completes the pouring without waiting:
+     * used when the pour delay is already accounted for by the caller (e.g. a discrete-event simulation).
+     * The outlets may complete their pours concurrently.
+     * */
+    public synchronized void registerPour(CoffeeType coffeeType) {
+        for (Consumable consumable : Consumable.values()) {
+            if (capacities[consumable.ordinal()] > 0) { levels[consumable.ordinal()] -= coffeeType.getConsumption(consumable); }
+        }
+        cupsSinceMaintenance++;
+        if ( needsRefill() || needsMaintenance() ) { available = false; }
+
+        /* track the "cup poured" event for later reports */
+        eventProcessor.submitEvent( PackedEvent.cupDispensed(coffeeType, coffeeMachineNumber) );
+    }
+
+    /**
+     * Refills the consumables and runs the maintenance cycle if needed, keeping the machine offline meanwhile.
+     * Supposed to be called by the server of the machine once a customer leaves.
+     * Waits for the pours in progress at the other outlets.
+     *
+     * @param random – random stream of the customer who left.
+     * */
+    public void serviceIfNeeded(RandomGenerator random) throws InterruptedException {
+        if (available) { return; }
+        pours.writeLock().lockInterruptibly();
+        try {
+            /* the server of another outlet may have serviced the machine meanwhile: no downtime then */
+            long downtime = startDowntime(random);
+            if (downtime > 0) { clock.sleep(downtime); }
+            endDowntime();
+        } finally {
+            pours.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts the refill and the maintenance cycle if needed without waiting:
+     * used when the downtime is accounted for by the caller (e.g. a discrete-event simulation).
+     * The machine stays unavailable till {@link #endDowntime()}.
+     * Supposed to be called once no pour is in progress.
+     *
+     * @param random – random stream of the customer who left.
+     * @return time in milliseconds the machine is offline, 0 if no service is needed.
+     * */
+    public long startDowntime(RandomGenerator random) {
+        long downtime = 0;
+        if ( needsRefill() ) {
+            long refill = refillDelay.sample(random);
+            System.arraycopy(capacities, 0, levels, 0, levels.length);
+            eventProcessor.submitEvent( PackedEvent.machineDowntime(coffeeMachineNumber, MachineDowntime.Reason.REFILL, refill) );
+            downtime += refill;
+        }
+        if ( needsMaintenance() ) {
+            long maintenance = maintenanceDelay.sample(random);
+            cupsSinceMaintenance = 0;
+            eventProcessor.submitEvent( PackedEvent.machineDowntime(coffeeMachineNumber, MachineDowntime.Reason.MAINTENANCE, maintenance) );
+            downtime += maintenance;
+        }
+        return downtime;
+    }
+
+    /**
+     * Brings the machine back online.
+     * */
+    public void endDowntime() { available = true; }
+
+    /* true if a cup of some coffee type cannot be poured */
+    private boolean needsRefill() {
+        for (int i=0; i < levels.length; i++) {
+            if (capacities[i] > 0 && levels[i] < reserves[i]) { return true; }
+        }
+        return false;
+    }
+
+    private boolean needsMaintenance() { return maintenanceInterval > 0 && cupsSinceMaintenance >= maintenanceInterval; }
+
+    /**
+     * @return false if the machine is offline or about to go offline for a refill or a maintenance. Thread-safe.
+     * */
+    public boolean isAvailable() { return available; }
+
+    /**
+     * @return amount of the consumable left, see {@link Consumable} for the units. Approximate while the machine is in use.
+     * */
+    public int getLevel(Consumable consumable) { return levels[consumable.ordinal()]; }
+
+    public int getCoffeeMachineNumber() { return coffeeMachineNumber; }
+    public int getOutlets() { return outlets; }
+
+    public boolean pours(CoffeeType coffeeType) { return pouredCoffeeTypes[coffeeType.ordinal()]; }
+
+    /**
+     * Writes the consumables left, the cups poured since the last maintenance, whether the machine is online
+     * and the customers assigned to it, e.g. to checkpoint a simulation. Supposed to be called in between the events of a simulation.
+     * */
+    public void writeState(DataOutput out) throws IOException {
+        for (int level : levels) { out.writeInt(level); }
+        out.writeInt(cupsSinceMaintenance);
+        out.writeBoolean(available);
+        out.writeInt(assignedCustomers.get());
+        out.writeLong(assignedWork.get());
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(DataOutput)} of a machine with the same settings.
+     * */
+    public void readState(DataInput in) throws IOException {
+        for (int i=0; i < levels.length; i++) {
+            levels[i] = in.readInt();
+            if (levels[i] < 0 || levels[i] > capacities[i]) { throw new IOException("Level out of the capacity: " + levels[i]); }
+        }
+        cupsSinceMaintenance = in.readInt();
+        available = in.readBoolean();
+        assignedCustomers.set(in.readInt());
+        assignedWork.set(in.readLong());
+    }
+
+    /**
+     * Tracks a customer assigned to this machine: he is either waiting in the queue of this machine or being served.
+     * Thread-safe.
+     * */
+    public void assign(CoffeeType coffeeType) {
+        assignedCustomers.incrementAndGet();
+        assignedWork.addAndGet(getMeanPourDelay(coffeeType));
+    }
+
+    /**
+     * Tracks a customer leaving this machine. Thread-safe.
+     * */
+    public void unassign(CoffeeType coffeeType) {
+        assignedCustomers.decrementAndGet();
+        assignedWork.addAndGet(-getMeanPourDelay(coffeeType));
+    }
+
+    /* current load of this machine */
+    public int getAssignedCustomers() { return assignedCustomers.get(); }
+    public long getAssignedWork() { return assignedWork.get(); }
+
+    /**
+     * @return types of coffee this machine pours, in the ordinal order.
      *  */
-    public static CoffeeType[] getCoffeeTypes() { return CoffeeType.values(); }
+    public CoffeeType[] getCoffeeTypes() { return menu.clone(); }
+
+    /**
+     * @return types of coffee poured by at least one of the machines, in the ordinal order: the customers choose among them.
+     *  */
+    public static CoffeeType[] getCoffeeTypes(CoffeeMachine[] coffeeMachines) {
+        return Arrays.stream(CoffeeType.values())
+                .filter(coffeeType -> Arrays.stream(coffeeMachines).anyMatch(coffeeMachine -> coffeeMachine.pours(coffeeType)))
+                .toArray(CoffeeType[]::new);
+    }
 }
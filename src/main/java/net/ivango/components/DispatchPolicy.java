@@ -0,0 +1,62 @@
+package net.ivango.components;
+
+import net.ivango.entities.CoffeeType;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Chooses a coffee machine for a customer, e.g. based on the current load of the machines.
+ * See {@link StandardDispatchPolicy} for the available implementations.
+ * Implementations should be thread-safe.
+ */
+@FunctionalInterface
+public interface DispatchPolicy {
+
+    /**
+     * @param coffeeMachines – machines to choose from, not empty.
+     * @param coffeeType – type of coffee the customer is going to pour.
+     * @param random – random stream of the customer, the only source of randomness to keep the runs reproducible.
+     * @return the machine the customer should queue at.
+     * */
+    CoffeeMachine select(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, RandomGenerator random);
+
+    /**
+     * Chooses among the available machines pouring the coffee type only, routing the customers around the ones
+     * being refilled or maintained and the ones without the coffee type on the menu.
+     * If no machine pouring the coffee type is available, chooses among all of them: the customer waits for his machine to come back.
+     *
+     * @return the machine the customer should queue at.
+     * @throws IllegalArgumentException if no machine pours the coffee type.
+     * */
+    default CoffeeMachine selectAvailable(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, RandomGenerator random) {
+        int capable = 0, available = 0;
+        for (CoffeeMachine coffeeMachine : coffeeMachines) {
+            if ( coffeeMachine.pours(coffeeType) ) {
+                capable++;
+                if ( coffeeMachine.isAvailable() ) { available++; }
+            }
+        }
+        if (capable == 0) { throw new IllegalArgumentException("No coffee machine pours " + coffeeType); }
+        /* no copy in the usual case: all the machines pour the coffee type and are online */
+        if (available == coffeeMachines.length) { return select(coffeeMachines, coffeeType, random); }
+        if (available > 0) {
+            /* the availability may change meanwhile: take at most the counted machines */
+            CoffeeMachine[] candidates = candidates(coffeeMachines, coffeeType, true, available);
+            if (candidates.length > 0) { return select(candidates, coffeeType, random); }
+        }
+        return select(capable == coffeeMachines.length ? coffeeMachines : candidates(coffeeMachines, coffeeType, false, capable), coffeeType, random);
+    }
+
+    /**
+     * @return up to the given amount of the machines pouring the coffee type, the available ones only if requested.
+     * */
+    private static CoffeeMachine[] candidates(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, boolean availableOnly, int count) {
+        CoffeeMachine[] candidates = new CoffeeMachine[count];
+        int i = 0;
+        for (CoffeeMachine coffeeMachine : coffeeMachines) {
+            if ( i < count && coffeeMachine.pours(coffeeType) && (!availableOnly || coffeeMachine.isAvailable()) ) { candidates[i++] = coffeeMachine; }
+        }
+        return i < count ? Arrays.copyOf(candidates, i) : candidates;
+    }
+}
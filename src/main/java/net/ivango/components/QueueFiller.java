@@ -1,10 +1,20 @@
 package net.ivango.components;
 
+import net.ivango.clock.Clock;
+import net.ivango.clock.RealTimeClock;
+import net.ivango.config.Config;
+import net.ivango.distributions.RandomStream;
 import net.ivango.entities.PaymentType;
 import net.ivango.entities.Programmer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -15,15 +25,38 @@ import java.util.stream.Stream;
  */
 public class QueueFiller {
 
-    private Random random = new Random();
+    /* master random stream: each customer gets his own stream split from it */
+    private RandomStream random;
+    /* modeled time source of the generated customers: should be the same as the one used for the simulation */
+    private Clock clock;
+    /* settings of the simulation the generated customers take part in */
+    private Config config;
+
+    public QueueFiller() { this(RealTimeClock.INSTANCE); }
+    public QueueFiller(Clock clock) { this(clock, Config.load()); }
+    public QueueFiller(Clock clock, Config config) { this(clock, config, new SplittableRandom()); }
+
+    /**
+     * @param clock – modeled time source of the generated customers.
+     * @param config – settings of the simulation, should be the same as the ones used for the simulation.
+     * @param random – seeds the master random stream, e.g. new SplittableRandom(seed): the same seed generates the same customers.
+     * */
+    public QueueFiller(Clock clock, Config config, RandomGenerator random) {
+        this.clock = clock;
+        this.config = config;
+        this.random = RandomStream.seededFrom(random);
+    }
 
     /**
      * Generates a customer with random properties:
-     * payment type.
+     * payment type and an independent random stream.
      * */
     private Programmer randomCustomer(){
         return new Programmer(
-                PaymentType.values()[random.nextInt(PaymentType.values().length)]
+                PaymentType.values()[random.nextInt(PaymentType.values().length)],
+                clock,
+                config,
+                random.split()
         );
     }
 
@@ -34,4 +67,49 @@ public class QueueFiller {
     public List<Programmer> generateRandomCustomers(int amount) {
         return Stream.generate(this::randomCustomer).limit(amount).collect(Collectors.toList());
     }
+
+    /**
+     * Lazily generates random customers to use for simulation: a customer is created only when requested,
+     * so the customers do not have to fit into memory all at once.
+     * Not thread-safe.
+     *
+     * @param amount – amount of customers to generate.
+     * */
+    public CustomerStream streamRandomCustomers(long amount) { return new CustomerStream(amount); }
+
+    /**
+     * Random customers generated one by one, see {@link #streamRandomCustomers(long)}.
+     * The state of the stream may be stored, e.g. to checkpoint a simulation:
+     * a stream restored from it generates the same customers as this one from now on.
+     * */
+    public class CustomerStream implements Iterator<Programmer> {
+
+        /* customers still to generate */
+        private long remaining;
+
+        private CustomerStream(long amount) { this.remaining = amount; }
+
+        @Override
+        public boolean hasNext() { return remaining > 0; }
+
+        @Override
+        public Programmer next() {
+            if (remaining == 0) { throw new NoSuchElementException(); }
+            remaining--;
+            return randomCustomer();
+        }
+
+        public void writeState(DataOutput out) throws IOException {
+            out.writeLong(remaining);
+            random.writeState(out);
+        }
+
+        /**
+         * Restores the state written by {@link #writeState(DataOutput)}: the master stream of the queue filler included.
+         * */
+        public void readState(DataInput in) throws IOException {
+            remaining = in.readLong();
+            random.readState(in);
+        }
+    }
 }
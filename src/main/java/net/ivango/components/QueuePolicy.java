@@ -0,0 +1,16 @@
+package net.ivango.components;
+
+/**
+ * Defines what a customer does when the queue of the next stage is full (see the queue capacities of the config)
+ * or when he has been waiting for too long.
+ */
+public enum QueuePolicy {
+    /* the customer waits for a place in the queue: he keeps occupying the previous stage, so the backpressure
+     * propagates upstream. The default, the only policy of the unbounded queues */
+    BLOCK,
+    /* the customer leaves if the queue is full */
+    BALK,
+    /* the customer waits for a place in the queue like with BLOCK,
+     * but leaves once he has waited longer than his patience (CUSTOMER_PATIENCE_TIMEOUT) */
+    RENEGE
+}
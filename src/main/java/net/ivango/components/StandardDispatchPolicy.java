@@ -0,0 +1,85 @@
+package net.ivango.components;
+
+import net.ivango.entities.CoffeeType;
+
+import java.util.function.ToLongFunction;
+import java.util.random.RandomGenerator;
+
+/**
+ * Built-in coffee machine dispatching policies.
+ * The random numbers are taken from the stream of the customer, so the dispatching threads never contend.
+ * The load based policies compare the load per outlet: a two-outlet machine drains twice as fast as a single-outlet one.
+ * Ties are broken at random, so no machine is favoured for its place in the array.
+ */
+public enum StandardDispatchPolicy implements DispatchPolicy {
+
+    /* a machine is picked at random regardless of its load */
+    RANDOM {
+        @Override
+        public CoffeeMachine select(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, RandomGenerator random) {
+            return coffeeMachines[random.nextInt(coffeeMachines.length)];
+        }
+    },
+
+    /* the machine with the least amount of pouring work assigned (in milliseconds) per outlet */
+    LEAST_LOADED {
+        @Override
+        public CoffeeMachine select(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, RandomGenerator random) {
+            return leastLoaded(coffeeMachines, CoffeeMachine::getAssignedWork, random);
+        }
+    },
+
+    /* the machine with the least amount of customers assigned per outlet: waiting or being served */
+    JOIN_SHORTEST_QUEUE {
+        @Override
+        public CoffeeMachine select(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, RandomGenerator random) {
+            return leastLoaded(coffeeMachines, CoffeeMachine::getAssignedCustomers, random);
+        }
+    },
+
+    /* the shorter queue per outlet of two machines picked at random: close to JOIN_SHORTEST_QUEUE without scanning all the machines */
+    POWER_OF_TWO_CHOICES {
+        @Override
+        public CoffeeMachine select(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, RandomGenerator random) {
+            CoffeeMachine first = coffeeMachines[random.nextInt(coffeeMachines.length)];
+            CoffeeMachine second = coffeeMachines[random.nextInt(coffeeMachines.length)];
+            int comparison = compareLoads(first.getAssignedCustomers(), first, second.getAssignedCustomers(), second);
+            if (comparison == 0) { return random.nextBoolean() ? first : second; }
+            return comparison < 0 ? first : second;
+        }
+    },
+
+    /* each coffee type has its own machine, e.g. the slow cappuccinos do not delay the espressos */
+    COFFEE_TYPE_AFFINITY {
+        @Override
+        public CoffeeMachine select(CoffeeMachine[] coffeeMachines, CoffeeType coffeeType, RandomGenerator random) {
+            return coffeeMachines[coffeeType.ordinal() % coffeeMachines.length];
+        }
+    };
+
+    /**
+     * @param load – current load of a machine, read once per machine as the machines are in use.
+     * @return the machine of the least load per outlet, one of the equally loaded ones at random.
+     * */
+    private static CoffeeMachine leastLoaded(CoffeeMachine[] coffeeMachines, ToLongFunction<CoffeeMachine> load, RandomGenerator random) {
+        CoffeeMachine best = coffeeMachines[0];
+        long bestLoad = load.applyAsLong(best);
+        int ties = 1;
+        for (int i=1; i < coffeeMachines.length; i++) {
+            long machineLoad = load.applyAsLong(coffeeMachines[i]);
+            int comparison = compareLoads(machineLoad, coffeeMachines[i], bestLoad, best);
+            /* each of the equally loaded machines replaces the best one with the same probability */
+            if ( comparison < 0 || (comparison == 0 && random.nextInt(++ties) == 0) ) {
+                if (comparison < 0) { ties = 1; }
+                best = coffeeMachines[i];
+                bestLoad = machineLoad;
+            }
+        }
+        return best;
+    }
+
+    /* compares the loads per outlet without a division */
+    private static int compareLoads(long load, CoffeeMachine coffeeMachine, long otherLoad, CoffeeMachine other) {
+        return Long.compare(load * other.getOutlets(), otherLoad * coffeeMachine.getOutlets());
+    }
+}
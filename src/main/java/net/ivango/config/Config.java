@@ -1,42 +1,195 @@
 package net.ivango.config;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonReader;
+import net.ivango.distributions.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileReader;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.stream.StreamSupport;
+import java.util.stream.Collectors;
 
 /**
  * Stores the simulation configuration.
- * The config is read from the external json file:
+ * The default config is read from the external json file:
  * src/main/resources/configuration.json
  *
+ * Each simulation gets its own instance, so simulations with different settings may run concurrently.
+ * The instances are immutable: use {@link #with(Properties, int)} to derive a modified configuration.
+ * The values are stored in an array indexed by the property ordinal, so a lookup is a plain array access.
+ *
+ * A timeout is either a number of milliseconds or a random distribution of the durations, e.g.
+ *   "POUR_CAPPUCCINO_TIMEOUT": { "distribution": "lognormal", "mean": 750, "stddev": 250 }
+ * Supported distributions:
+ *   fixed (value), exponential (mean), normal (mean, stddev), lognormal (mean, stddev), empirical (samples: an array).
+ * For a random timeout get() returns the rounded mean.
+ *
+ * PAYMENT_PARALLELISM is the amount of the cash registers: the first CASH_ONLY_REGISTERS of them accept cash only,
+ * the next CREDIT_ONLY_REGISTERS accept credit cards only and the rest accept both.
+ * PICK_COFFEE_PARALLELISM is the amount of the coffee machines: the first ESPRESSO_ONLY_MACHINES of them pour espresso only,
+ * the last TWO_OUTLET_MACHINES pour two cups at once.
+ *
+ * The queue capacities limit the amount of customers waiting for each cash register and for each coffee machine,
+ * 0 stands for an unbounded queue. See {@link net.ivango.components.QueuePolicy} for what happens once a queue is full.
+ *
+ * WATER_CAPACITY, BEANS_CAPACITY and MILK_CAPACITY are the tanks of each coffee machine (ml, g, ml), 0 for an unlimited one:
+ * a machine goes offline for REFILL_TIMEOUT once it cannot pour a cup of any coffee type.
+ * Each MAINTENANCE_INTERVAL cups a machine runs a descaling cycle of MAINTENANCE_TIMEOUT, 0 for never.
+ *
  * Created by Ivan Golubev <igolubev@ea.com> on 4/4/16.
  */
-public class Config {
+public final class Config {
 
     private final static String CONFIG_FILE_NAME = "configuration.json";
-    private static Map<String, Integer> CONFIGURATION;
+    /* setting values indexed by the property ordinal */
+    private final int[] values;
+    /* distributions of the timeouts indexed by the property ordinal: fixed unless set otherwise */
+    private final ServiceTimeDistribution[] distributions;
 
     private static Logger logger = LoggerFactory.getLogger(Config.class);
 
-    public static void init() {
-        try {
-            ClassLoader classLoader = Config.class.getClassLoader();
-            String filePath = classLoader.getResource(CONFIG_FILE_NAME).getFile();
-            JsonReader reader = new JsonReader(new FileReader(filePath));
-            Type type = new TypeToken<Map<String, Integer>>() {}.getType();
-            CONFIGURATION = new Gson().fromJson(reader, type);
+    /* the default configuration is read once: it is immutable and may be shared */
+    private static class Defaults {
+        private static final Config INSTANCE = readDefaults();
+    }
+
+    private Config(int[] values, ServiceTimeDistribution[] distributions) {
+        this.values = values;
+        this.distributions = distributions;
+    }
+
+    /**
+     * @return the default configuration read from the external JSON file.
+     * */
+    public static Config load() { return Defaults.INSTANCE; }
+
+    /**
+     * @return configuration read from the given JSON file. All the properties should be set.
+     * */
+    public static Config load(Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return read(inputStream, path.toString());
+        }
+    }
+
+    private static Config readDefaults() {
+        /* read as a stream: the file may be packed into a jar, e.g. the benchmarks one */
+        ClassLoader classLoader = Config.class.getClassLoader();
+        try (InputStream inputStream = classLoader.getResourceAsStream(CONFIG_FILE_NAME)) {
+            if (inputStream == null) { throw new IOException("Not found on the classpath: " + CONFIG_FILE_NAME); }
+            return read(inputStream, CONFIG_FILE_NAME);
 
         } catch (IOException ie) {
             logger.error("Failed to read the main configuration file", ie);
+            throw new IllegalStateException("Failed to read the main configuration file", ie);
         }
     }
 
-    public static int get(Properties property) { return CONFIGURATION.get(property.toString()); }
+    /**
+     * Parses a JSON object mapping the property names to the values.
+     * */
+    private static Config read(InputStream inputStream, String source) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            JsonObject configuration = new JsonParser().parse(reader).getAsJsonObject();
+
+            int[] values = new int[Properties.values().length];
+            ServiceTimeDistribution[] distributions = new ServiceTimeDistribution[values.length];
+            for (Map.Entry<String, JsonElement> setting : configuration.entrySet()) {
+                Properties property;
+                try {
+                    property = Properties.valueOf(setting.getKey());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown property " + setting.getKey() + " in " + source);
+                }
+                try {
+                    if (setting.getValue().isJsonObject()) {
+                        distributions[property.ordinal()] = readDistribution(setting.getValue().getAsJsonObject());
+                        values[property.ordinal()] = (int) Math.round(distributions[property.ordinal()].getMean());
+                    } else {
+                        values[property.ordinal()] = setting.getValue().getAsInt();
+                        distributions[property.ordinal()] = new FixedDistribution(values[property.ordinal()]);
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid value of " + property + " in " + source + ": " + e.getMessage(), e);
+                }
+            }
+            for (Properties property : Properties.values()) {
+                if (distributions[property.ordinal()] == null) { throw new IOException("Property " + property + " is not set in " + source); }
+            }
+            return new Config(values, distributions);
+        }
+    }
+
+    private static ServiceTimeDistribution readDistribution(JsonObject json) {
+        String distribution = json.get("distribution").getAsString();
+        switch (distribution) {
+            case "fixed": return new FixedDistribution(json.get("value").getAsLong());
+            case "exponential": return new ExponentialDistribution(json.get("mean").getAsDouble());
+            case "normal": return new NormalDistribution(json.get("mean").getAsDouble(), json.get("stddev").getAsDouble());
+            case "lognormal": return new LogNormalDistribution(json.get("mean").getAsDouble(), json.get("stddev").getAsDouble());
+            case "empirical": return new EmpiricalDistribution(
+                    StreamSupport.stream(json.get("samples").getAsJsonArray().spliterator(), false).mapToLong(JsonElement::getAsLong).toArray());
+            default: throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+    }
+
+    /**
+     * @return a copy of this configuration with the given setting replaced.
+     * */
+    public Config with(Properties property, int value) {
+        int[] valuesCopy = values.clone();
+        ServiceTimeDistribution[] distributionsCopy = distributions.clone();
+        valuesCopy[property.ordinal()] = value;
+        distributionsCopy[property.ordinal()] = new FixedDistribution(value);
+        return new Config(valuesCopy, distributionsCopy);
+    }
+
+    /**
+     * @return a copy of this configuration with the given timeout replaced with a random one.
+     * */
+    public Config with(Properties property, ServiceTimeDistribution distribution) {
+        int[] valuesCopy = values.clone();
+        ServiceTimeDistribution[] distributionsCopy = distributions.clone();
+        valuesCopy[property.ordinal()] = (int) Math.round(distribution.getMean());
+        distributionsCopy[property.ordinal()] = distribution;
+        return new Config(valuesCopy, distributionsCopy);
+    }
+
+    /**
+     * @return a copy of this configuration with the given settings replaced.
+     * */
+    public Config with(Map<Properties, Integer> overrides) {
+        int[] valuesCopy = values.clone();
+        ServiceTimeDistribution[] distributionsCopy = distributions.clone();
+        overrides.forEach( (property, value) -> {
+            valuesCopy[property.ordinal()] = value;
+            distributionsCopy[property.ordinal()] = new FixedDistribution(value);
+        });
+        return new Config(valuesCopy, distributionsCopy);
+    }
+
+    public int get(Properties property) { return values[property.ordinal()]; }
+
+    /**
+     * @return distribution of the durations set for the timeout.
+     * */
+    public ServiceTimeDistribution getDistribution(Properties property) { return distributions[property.ordinal()]; }
+
+    @Override
+    public String toString() {
+        return Arrays.stream(Properties.values())
+                .map(property -> property + "=" + (distributions[property.ordinal()] instanceof FixedDistribution
+                        ? String.valueOf(values[property.ordinal()]) : distributions[property.ordinal()].toString()))
+                .collect(Collectors.joining(", ", "{", "}"));
+    }
 }
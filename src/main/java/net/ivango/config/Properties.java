@@ -8,6 +8,20 @@ public enum Properties {
     PAYMENT_PARALLELISM,
     PICK_COFFEE_PARALLELISM,
 
+    CASH_ONLY_REGISTERS,
+    CREDIT_ONLY_REGISTERS,
+
+    ESPRESSO_ONLY_MACHINES,
+    TWO_OUTLET_MACHINES,
+
+    PAYMENT_QUEUE_CAPACITY,
+    DISPENSE_QUEUE_CAPACITY,
+
+    WATER_CAPACITY,
+    BEANS_CAPACITY,
+    MILK_CAPACITY,
+    MAINTENANCE_INTERVAL,
+
     COFFEE_SELECTION_TIMEOUT,
 
     CASH_PAYMENT_TIMEOUT,
@@ -21,5 +35,10 @@ public enum Properties {
     POUR_ESPRESSO_TIMEOUT,
     POUR_LATTE_TIMEOUT,
     POUR_MACCHIATTO_TIMEOUT,
-    POUR_CAPPUCCINO_TIMEOUT
+    POUR_CAPPUCCINO_TIMEOUT,
+
+    REFILL_TIMEOUT,
+    MAINTENANCE_TIMEOUT,
+
+    CUSTOMER_PATIENCE_TIMEOUT
 }
@@ -0,0 +1,20 @@
+package net.ivango.distributed;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A message link between the coordinator and a worker of a distributed simulation, see {@link Transport}.
+ * The messages are delivered in order. A single thread may send and another one may receive at the same time.
+ */
+public interface Channel extends Closeable {
+
+    void send(byte[] message) throws IOException;
+
+    /**
+     * Waits for the next message.
+     *
+     * @throws java.io.EOFException if the other side has closed the channel.
+     * */
+    byte[] receive() throws IOException;
+}
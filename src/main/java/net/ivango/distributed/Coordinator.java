@@ -0,0 +1,131 @@
+package net.ivango.distributed;
+
+import net.ivango.metrics.EventProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Runs a simulation split into partitions, each simulated by its own worker (see {@link Worker}),
+ * e.g. the coffee points of a whole campus: one worker per floor.
+ * The workers may run in other processes or on other hosts, so the simulation is not limited by the cores and the heap of one JVM.
+ *
+ * The workers stream the summaries of their statistics, the coordinator merges them into a single report:
+ * the coffee machines and the cash registers are numbered across the partitions in the order of the partitions.
+ * The size of a summary does not depend on the amount of customers.
+ */
+public class Coordinator {
+
+    private final Transport transport;
+    /* latest summaries received from the workers, indexed by the partition index; null till the first one */
+    private volatile AtomicReferenceArray<EventProcessor> latestSummaries = new AtomicReferenceArray<>(0);
+
+    private Logger logger = LoggerFactory.getLogger(Coordinator.class);
+
+    /**
+     * @param transport – connects the workers: a worker per partition is expected to connect.
+     * */
+    public Coordinator(Transport transport) { this.transport = transport; }
+
+    /**
+     * Passes each partition to a worker as the workers connect and waits for all of them to complete.
+     *
+     * @return merged statistics of all the partitions: generate the report with {@link EventProcessor#processEvents()}.
+     * @throws IOException if a worker fails or disconnects.
+     * */
+    public EventProcessor run(List<Partition> partitions) throws IOException {
+        latestSummaries = new AtomicReferenceArray<>(partitions.size());
+        List<Channel> channels = new ArrayList<>();
+        ExecutorService receivers = Executors.newFixedThreadPool(partitions.size());
+        try {
+            List<Future<EventProcessor>> results = new ArrayList<>();
+            for (int i=0; i < partitions.size(); i++) {
+                Channel channel = transport.accept();
+                channels.add(channel);
+                channel.send( Messages.partition(partitions.get(i)) );
+                final int index = i;
+                results.add( receivers.submit(() -> receiveResult(channel, partitions.get(index), index)) );
+            }
+            logger.info("Simulating " + partitions.size() + " partitions");
+
+            List<EventProcessor> summaries = new ArrayList<>();
+            for (Future<EventProcessor> result : results) { summaries.add( getResult(result) ); }
+            return merge(partitions, summaries);
+        } finally {
+            receivers.shutdownNow();
+            for (Channel channel : channels) { channel.close(); }
+        }
+    }
+
+    /**
+     * @return merged latest summaries of the running partitions, e.g. to watch the progress of a long simulation.
+     * The partitions which have not reported yet are skipped.
+     * */
+    public EventProcessor getProgress() {
+        AtomicReferenceArray<EventProcessor> summaries = latestSummaries;
+        List<EventProcessor> received = new ArrayList<>();
+        for (int i=0; i < summaries.length(); i++) {
+            if (summaries.get(i) != null) { received.add(summaries.get(i)); }
+        }
+        return EventProcessor.merge(received);
+    }
+
+    private EventProcessor receiveResult(Channel channel, Partition partition, int index) throws IOException {
+        while (true) {
+            byte[] message = channel.receive();
+            switch ( Messages.typeOf(message) ) {
+                case Messages.SUMMARY:
+                    latestSummaries.set(index, Messages.readSummary(message));
+                    break;
+                case Messages.RESULT:
+                    EventProcessor result = Messages.readSummary(message);
+                    latestSummaries.set(index, result);
+                    logger.info("Partition " + partition.getName() + " completed");
+                    return result;
+                case Messages.FAILED:
+                    throw new IOException("Partition " + partition.getName() + " failed: " + Messages.readFailure(message));
+                default:
+                    throw new IOException("Unexpected message type " + message[0] + " from partition " + partition.getName());
+            }
+        }
+    }
+
+    private EventProcessor getResult(Future<EventProcessor> result) throws IOException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) { throw (IOException) e.getCause(); }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the workers", e);
+        }
+    }
+
+    private EventProcessor merge(List<Partition> partitions, List<EventProcessor> summaries) {
+        EventProcessor merged = EventProcessor.merge(summaries);
+        merged.addScenarioProperty("Execution mode", "DISTRIBUTED");
+        merged.addScenarioProperty("Transport", transport);
+        /* the numbers of the machines and the registers of each partition in the merged report */
+        int machine = 1, register = 1;
+        for (int i=0; i < partitions.size(); i++) {
+            EventProcessor summary = summaries.get(i);
+            merged.addScenarioProperty("Partition " + partitions.get(i).getName(), partitions.get(i).getSettings()
+                    + ", coffee machines " + range(machine, summary.getCoffeeMachinesCount())
+                    + ", cash registers " + range(register, summary.getCashRegistersCount()));
+            machine += summary.getCoffeeMachinesCount();
+            register += summary.getCashRegistersCount();
+        }
+        return merged;
+    }
+
+    private static String range(int first, int count) { return count == 1 ? String.valueOf(first) : first + "-" + (first + count - 1); }
+}
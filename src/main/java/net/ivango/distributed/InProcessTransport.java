@@ -0,0 +1,89 @@
+package net.ivango.distributed;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Connects the workers running in the same JVM: the messages are passed through the queues without being copied.
+ * Thread-safe.
+ */
+public class InProcessTransport implements Transport {
+
+    /* sent once a channel is closed: an empty message is never sent otherwise */
+    private static final byte[] CLOSED = new byte[0];
+
+    /* coordinator ends of the channels connected but not accepted yet */
+    private final BlockingQueue<Channel> pending = new LinkedBlockingQueue<>();
+
+    /**
+     * Connects a worker to the coordinator.
+     *
+     * @return the worker end of the channel.
+     * */
+    public Channel connect() {
+        BlockingQueue<byte[]> toWorker = new LinkedBlockingQueue<>(), toCoordinator = new LinkedBlockingQueue<>();
+        pending.add( new QueueChannel(toWorker, toCoordinator) );
+        return new QueueChannel(toCoordinator, toWorker);
+    }
+
+    @Override
+    public Channel accept() throws IOException {
+        try {
+            return pending.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a worker");
+        }
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public String toString() { return "in-process"; }
+
+    private static class QueueChannel implements Channel {
+
+        private final BlockingQueue<byte[]> outbox, inbox;
+        private volatile boolean closed;
+
+        QueueChannel(BlockingQueue<byte[]> outbox, BlockingQueue<byte[]> inbox) {
+            this.outbox = outbox;
+            this.inbox = inbox;
+        }
+
+        @Override
+        public void send(byte[] message) throws IOException {
+            if (closed) { throw new IOException("Channel is closed"); }
+            if (message.length == 0) { throw new IllegalArgumentException("Empty message"); }
+            outbox.add(message);
+        }
+
+        @Override
+        public byte[] receive() throws IOException {
+            try {
+                byte[] message = inbox.take();
+                if (message == CLOSED) {
+                    /* keep the other side closed for the next calls */
+                    inbox.add(CLOSED);
+                    throw new EOFException("Channel is closed by the other side");
+                }
+                return message;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a message");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                outbox.add(CLOSED);
+            }
+        }
+    }
+}
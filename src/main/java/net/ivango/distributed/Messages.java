@@ -0,0 +1,78 @@
+package net.ivango.distributed;
+
+import net.ivango.metrics.EventProcessor;
+
+import java.io.*;
+
+/**
+ * Messages passed between the coordinator and the workers, each starts with the message type:
+ *   PARTITION (coordinator to worker): protocol version (int), the partition to simulate.
+ *   SUMMARY, RESULT (worker to coordinator): modeled time in milliseconds (long), the statistics of the partition
+ *           (see {@link EventProcessor#writeSummary(DataOutput)}): interim ones while running and the final one.
+ *   FAILED (worker to coordinator): description of the error (UTF).
+ */
+final class Messages {
+
+    static final int PROTOCOL_VERSION = 1;
+
+    /* message types */
+    static final byte PARTITION = 1, SUMMARY = 2, RESULT = 3, FAILED = 4;
+
+    private Messages() {}
+
+    static byte[] partition(Partition partition) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(PARTITION);
+        out.writeInt(PROTOCOL_VERSION);
+        partition.writeTo(out);
+        return bytes.toByteArray();
+    }
+
+    static byte[] summary(byte type, long modeledTime, EventProcessor eventProcessor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeLong(modeledTime);
+        eventProcessor.writeSummary(out);
+        return bytes.toByteArray();
+    }
+
+    static byte[] failure(String description) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FAILED);
+        out.writeUTF(description);
+        return bytes.toByteArray();
+    }
+
+    static byte typeOf(byte[] message) throws IOException {
+        if (message.length == 0) { throw new IOException("Empty message"); }
+        return message[0];
+    }
+
+    static Partition readPartition(byte[] message) throws IOException {
+        DataInputStream in = payloadOf(message, PARTITION);
+        int version = in.readInt();
+        if (version != PROTOCOL_VERSION) { throw new IOException("Unsupported protocol version " + version); }
+        return Partition.readFrom(in);
+    }
+
+    /**
+     * @return statistics of a SUMMARY or a RESULT message, with the modeled time set.
+     * */
+    static EventProcessor readSummary(byte[] message) throws IOException {
+        DataInputStream in = payloadOf(message, typeOf(message));
+        long modeledTime = in.readLong();
+        EventProcessor eventProcessor = EventProcessor.readSummary(in);
+        eventProcessor.setModeledTime(modeledTime);
+        return eventProcessor;
+    }
+
+    static String readFailure(byte[] message) throws IOException { return payloadOf(message, FAILED).readUTF(); }
+
+    private static DataInputStream payloadOf(byte[] message, byte type) throws IOException {
+        if (typeOf(message) != type) { throw new IOException("Unexpected message type " + message[0] + ", expected " + type); }
+        return new DataInputStream( new ByteArrayInputStream(message, 1, message.length - 1) );
+    }
+}
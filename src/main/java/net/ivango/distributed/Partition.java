@@ -0,0 +1,98 @@
+package net.ivango.distributed;
+
+import net.ivango.components.QueuePolicy;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Properties;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A part of a distributed simulation run by a single worker, e.g. the coffee point of a floor:
+ * its own coffee machines, cash registers and customers arriving at the given rate.
+ * The settings override the configuration of the worker, see {@link net.ivango.config.Config#with(Map)}.
+ */
+public class Partition {
+
+    private final String name;
+    private final Map<Properties, Integer> settings;
+    private final long customers;
+    private final double customersPerMinute;
+    private long seed = 42;
+    private StandardDispatchPolicy dispatchPolicy = StandardDispatchPolicy.JOIN_SHORTEST_QUEUE;
+    private QueuePolicy queuePolicy = QueuePolicy.BLOCK;
+
+    /**
+     * @param name – name of the partition in the reports.
+     * @param settings – overrides of the worker configuration, e.g. the amount of coffee machines.
+     * @param customers – amount of random customers to serve.
+     * @param customersPerMinute – average rate of the Poisson arrivals.
+     * */
+    public Partition(String name, Map<Properties, Integer> settings, long customers, double customersPerMinute) {
+        this.name = name;
+        this.settings = Collections.unmodifiableMap(new LinkedHashMap<>(settings));
+        this.customers = customers;
+        this.customersPerMinute = customersPerMinute;
+    }
+
+    /**
+     * @param seed – seed of the random streams of the partition, the partitions should have different seeds.
+     * */
+    public Partition withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public Partition withDispatchPolicy(StandardDispatchPolicy dispatchPolicy) {
+        this.dispatchPolicy = dispatchPolicy;
+        return this;
+    }
+
+    public Partition withQueuePolicy(QueuePolicy queuePolicy) {
+        this.queuePolicy = queuePolicy;
+        return this;
+    }
+
+    public String getName() { return name; }
+    public Map<Properties, Integer> getSettings() { return settings; }
+    public long getCustomers() { return customers; }
+    public double getCustomersPerMinute() { return customersPerMinute; }
+    public long getSeed() { return seed; }
+    public StandardDispatchPolicy getDispatchPolicy() { return dispatchPolicy; }
+    public QueuePolicy getQueuePolicy() { return queuePolicy; }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeInt(settings.size());
+        for (Map.Entry<Properties, Integer> setting : settings.entrySet()) {
+            out.writeUTF(setting.getKey().name());
+            out.writeInt(setting.getValue());
+        }
+        out.writeLong(customers);
+        out.writeDouble(customersPerMinute);
+        out.writeLong(seed);
+        out.writeUTF(dispatchPolicy.name());
+        out.writeUTF(queuePolicy.name());
+    }
+
+    static Partition readFrom(DataInput in) throws IOException {
+        String name = in.readUTF();
+        int size = in.readInt();
+        Map<Properties, Integer> settings = new LinkedHashMap<>();
+        try {
+            for (int i=0; i < size; i++) { settings.put(Properties.valueOf(in.readUTF()), in.readInt()); }
+            Partition partition = new Partition(name, settings, in.readLong(), in.readDouble()).withSeed(in.readLong());
+            return partition.withDispatchPolicy(StandardDispatchPolicy.valueOf(in.readUTF()))
+                    .withQueuePolicy(QueuePolicy.valueOf(in.readUTF()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown setting of partition " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() { return name + " " + settings; }
+}
@@ -0,0 +1,95 @@
+package net.ivango.distributed;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Connects the worker processes over TCP, e.g. the workers on the other hosts or on the same host
+ * to use more heap than a single JVM has. Each message is sent as a length-prefixed frame.
+ *
+ * The connections are neither authenticated nor encrypted: the coordinator listens at the loopback interface
+ * unless given another address, which should be reachable from a trusted network only.
+ */
+public class SocketTransport implements Transport {
+
+    /* larger messages are rejected as corrupted: a summary takes hundreds of kilobytes at most */
+    private static final int MAX_MESSAGE_SIZE = 1 << 28;
+
+    private final ServerSocket serverSocket;
+
+    /**
+     * Starts listening for the workers on the same host.
+     *
+     * @param port – port to listen at, 0 for any free port: see {@link #getPort()}.
+     * */
+    public SocketTransport(int port) throws IOException { this(InetAddress.getLoopbackAddress(), port); }
+
+    /**
+     * Starts listening for the workers at the given address, e.g. the interface of a trusted network
+     * for the workers on the other hosts: anybody reaching it may join the simulation.
+     *
+     * @param bindAddress – local address to listen at, the wildcard address for all the interfaces.
+     * @param port – port to listen at, 0 for any free port: see {@link #getPort()}.
+     * */
+    public SocketTransport(InetAddress bindAddress, int port) throws IOException {
+        /* 0 for the default backlog */
+        serverSocket = new ServerSocket(port, 0, bindAddress);
+    }
+
+    public int getPort() { return serverSocket.getLocalPort(); }
+
+    /**
+     * Connects a worker to the coordinator listening at the given address.
+     *
+     * @return the worker end of the channel.
+     * */
+    public static Channel connect(String host, int port) throws IOException { return new SocketChannel(new Socket(host, port)); }
+
+    @Override
+    public Channel accept() throws IOException { return new SocketChannel(serverSocket.accept()); }
+
+    @Override
+    public void close() throws IOException { serverSocket.close(); }
+
+    @Override
+    public String toString() {
+        InetAddress address = serverSocket.getInetAddress();
+        return "TCP " + address.getHostAddress() + ":" + getPort();
+    }
+
+    private static class SocketChannel implements Channel {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        SocketChannel(Socket socket) throws IOException {
+            this.socket = socket;
+            /* the summaries are sent at once: no need to wait for more data */
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream( new BufferedInputStream(socket.getInputStream()) );
+            out = new DataOutputStream( new BufferedOutputStream(socket.getOutputStream()) );
+        }
+
+        @Override
+        public synchronized void send(byte[] message) throws IOException {
+            out.writeInt(message.length);
+            out.write(message);
+            out.flush();
+        }
+
+        @Override
+        public byte[] receive() throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_MESSAGE_SIZE) { throw new IOException("Invalid message size: " + length); }
+            byte[] message = new byte[length];
+            in.readFully(message);
+            return message;
+        }
+
+        @Override
+        public void close() throws IOException { socket.close(); }
+    }
+}
@@ -0,0 +1,19 @@
+package net.ivango.distributed;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Connects the workers of a distributed simulation to the coordinator.
+ * Available implementations: {@link SocketTransport} for the worker processes and {@link InProcessTransport}
+ * for the workers running in the same JVM, e.g. in tests.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Waits for the next worker to connect.
+     *
+     * @return channel to the connected worker.
+     * */
+    Channel accept() throws IOException;
+}
@@ -0,0 +1,112 @@
+package net.ivango.distributed;
+
+import net.ivango.DiscreteEventModeling;
+import net.ivango.arrivals.PoissonArrivals;
+import net.ivango.clock.RealTimeClock;
+import net.ivango.components.QueueFiller;
+import net.ivango.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates a partition of a distributed simulation received from the coordinator, see {@link Coordinator}.
+ * The partition is run as a discrete-event simulation with the configuration of the worker overridden by the partition settings.
+ * The statistics are streamed to the coordinator while the simulation runs, the final ones once it completes.
+ *
+ * Run a worker process with: java -cp coffee.modeling.jar net.ivango.distributed.Worker host port
+ */
+public class Worker {
+
+    /* wall-clock interval between the interim summaries */
+    private static final long SUMMARY_INTERVAL = 1000;
+
+    private final Channel channel;
+    private final Config config;
+
+    private Logger logger = LoggerFactory.getLogger(Worker.class);
+
+    public Worker(Channel channel) { this(channel, Config.load()); }
+
+    /**
+     * @param config – configuration of the worker, overridden by the settings of the received partition.
+     * */
+    public Worker(Channel channel, Config config) {
+        this.channel = channel;
+        this.config = config;
+    }
+
+    /**
+     * Simulates a single partition and closes the channel. An error is reported to the coordinator as well.
+     * */
+    public void run() throws IOException {
+        try {
+            Partition partition = Messages.readPartition( channel.receive() );
+            logger.info("Simulating partition " + partition);
+            DiscreteEventModeling dem = simulate(partition);
+            channel.send( Messages.summary(Messages.RESULT, dem.getModeledTime(), dem.getEventProcessor()) );
+        } catch (IOException | RuntimeException e) {
+            logger.error("Partition failed: ", e);
+            try {
+                channel.send( Messages.failure(String.valueOf(e)) );
+            } catch (IOException sendFailure) {
+                e.addSuppressed(sendFailure);
+            }
+            throw e;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private DiscreteEventModeling simulate(Partition partition) {
+        Config partitionConfig = config.with( partition.getSettings() );
+        /* the streams are split in the same order as by a ParameterSweep: a partition is reproducible on its own */
+        SplittableRandom random = new SplittableRandom( partition.getSeed() );
+        QueueFiller queueFiller = new QueueFiller(RealTimeClock.INSTANCE, partitionConfig, random.split());
+        PoissonArrivals arrivals = new PoissonArrivals(partition.getCustomersPerMinute(), random.split());
+
+        DiscreteEventModeling dem = new DiscreteEventModeling(partitionConfig, partition.getDispatchPolicy());
+        dem.setQueuePolicy( partition.getQueuePolicy() );
+        dem.getEventProcessor().addScenarioProperty("Partition", partition.getName());
+
+        /* the counters may be read while the simulation runs: the interim summaries are approximate */
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                channel.send( Messages.summary(Messages.SUMMARY, dem.getModeledTime(), dem.getEventProcessor()) );
+            } catch (IOException e) {
+                logger.warn("Failed to send an interim summary: " + e);
+            }
+        }, SUMMARY_INTERVAL, SUMMARY_INTERVAL, TimeUnit.MILLISECONDS);
+        try {
+            dem.simulate(queueFiller.streamRandomCustomers( partition.getCustomers() ), arrivals);
+        } finally {
+            reporter.shutdownNow();
+            try {
+                /* the final summary follows the interim ones */
+                reporter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return dem;
+    }
+
+    /**
+     * Connects to the coordinator and simulates a partition.
+     *
+     * @param args – host and port of the coordinator.
+     * */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: Worker host port");
+            System.exit(1);
+        }
+        new Worker( SocketTransport.connect(args[0], Integer.parseInt(args[1])) ).run();
+    }
+}
@@ -0,0 +1,49 @@
+package net.ivango.distributions;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Durations resampled from the observed ones, e.g. measured at the real coffee machine.
+ * A sample is taken from the piecewise-linear distribution function of the observations,
+ * so the values between two neighbouring observations are possible too.
+ */
+public class EmpiricalDistribution implements ServiceTimeDistribution {
+
+    /* observed durations in milliseconds, sorted */
+    private final long[] observations;
+    private final double mean;
+
+    /**
+     * @param observations – observed durations in milliseconds, in any order.
+     * */
+    public EmpiricalDistribution(long... observations) {
+        if (observations.length == 0) { throw new IllegalArgumentException("No observations"); }
+        this.observations = observations.clone();
+        Arrays.sort(this.observations);
+        if (this.observations[0] < 0) { throw new IllegalArgumentException("Durations should not be negative: " + this.observations[0]); }
+        /* the mean of the piecewise-linear distribution: the inner observations count twice as much as the outer ones */
+        double mean = this.observations[0];
+        if (this.observations.length > 1) {
+            double sum = 0;
+            for (int i=1; i < this.observations.length; i++) { sum += this.observations[i - 1] + this.observations[i]; }
+            mean = sum / (2.0 * (this.observations.length - 1));
+        }
+        this.mean = mean;
+    }
+
+    @Override
+    public long sample(RandomGenerator random) {
+        if (observations.length == 1) { return observations[0]; }
+        double position = random.nextDouble() * (observations.length - 1);
+        int index = (int) position;
+        double fraction = position - index;
+        return Math.round(observations[index] + fraction * (observations[index + 1] - observations[index]));
+    }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return String.format("empirical (%d observations, mean %.0f ms)", observations.length, mean); }
+}
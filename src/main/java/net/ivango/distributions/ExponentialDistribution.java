@@ -0,0 +1,28 @@
+package net.ivango.distributions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Memoryless durations: most operations are short, a few take several times the mean.
+ */
+public class ExponentialDistribution implements ServiceTimeDistribution {
+
+    private final double mean;
+
+    /**
+     * @param mean – average duration in milliseconds.
+     * */
+    public ExponentialDistribution(double mean) {
+        if (mean <= 0) { throw new IllegalArgumentException("Mean should be positive: " + mean); }
+        this.mean = mean;
+    }
+
+    @Override
+    public long sample(RandomGenerator random) { return Math.round(random.nextExponential() * mean); }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return String.format("exponential (mean %.0f ms)", mean); }
+}
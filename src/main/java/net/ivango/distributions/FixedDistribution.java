@@ -0,0 +1,28 @@
+package net.ivango.distributions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Every operation takes exactly the same time.
+ */
+public class FixedDistribution implements ServiceTimeDistribution {
+
+    private final long duration;
+
+    /**
+     * @param duration – duration of each operation in milliseconds.
+     * */
+    public FixedDistribution(long duration) {
+        if (duration < 0) { throw new IllegalArgumentException("Duration should not be negative: " + duration); }
+        this.duration = duration;
+    }
+
+    @Override
+    public long sample(RandomGenerator random) { return duration; }
+
+    @Override
+    public double getMean() { return duration; }
+
+    @Override
+    public String toString() { return "fixed (" + duration + " ms)"; }
+}
@@ -0,0 +1,37 @@
+package net.ivango.distributions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Positive durations with a long right tail: the usual shape of human service times.
+ * Parameterized by the mean and the standard deviation of the durations themselves, not of their logarithm.
+ */
+public class LogNormalDistribution implements ServiceTimeDistribution {
+
+    private final double mean, standardDeviation;
+    /* parameters of the underlying normal distribution */
+    private final double mu, sigma;
+
+    /**
+     * @param mean – average duration in milliseconds.
+     * @param standardDeviation – in milliseconds.
+     * */
+    public LogNormalDistribution(double mean, double standardDeviation) {
+        if (mean <= 0) { throw new IllegalArgumentException("Mean should be positive: " + mean); }
+        if (standardDeviation < 0) { throw new IllegalArgumentException("Standard deviation should not be negative: " + standardDeviation); }
+        this.mean = mean;
+        this.standardDeviation = standardDeviation;
+        double variance = Math.log(1 + (standardDeviation * standardDeviation) / (mean * mean));
+        this.sigma = Math.sqrt(variance);
+        this.mu = Math.log(mean) - variance / 2;
+    }
+
+    @Override
+    public long sample(RandomGenerator random) { return Math.round(Math.exp(mu + sigma * random.nextGaussian())); }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return String.format("lognormal (mean %.0f ms, standard deviation %.0f ms)", mean, standardDeviation); }
+}
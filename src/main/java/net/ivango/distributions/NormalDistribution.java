@@ -0,0 +1,32 @@
+package net.ivango.distributions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Durations scattered symmetrically around the mean.
+ * Negative samples are truncated to zero: keep the standard deviation well below the mean.
+ */
+public class NormalDistribution implements ServiceTimeDistribution {
+
+    private final double mean, standardDeviation;
+
+    /**
+     * @param mean – average duration in milliseconds.
+     * @param standardDeviation – in milliseconds.
+     * */
+    public NormalDistribution(double mean, double standardDeviation) {
+        if (mean < 0) { throw new IllegalArgumentException("Mean should not be negative: " + mean); }
+        if (standardDeviation < 0) { throw new IllegalArgumentException("Standard deviation should not be negative: " + standardDeviation); }
+        this.mean = mean;
+        this.standardDeviation = standardDeviation;
+    }
+
+    @Override
+    public long sample(RandomGenerator random) { return Math.max(0, Math.round(random.nextGaussian(mean, standardDeviation))); }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return String.format("normal (mean %.0f ms, standard deviation %.0f ms)", mean, standardDeviation); }
+}
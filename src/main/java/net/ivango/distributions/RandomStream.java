@@ -0,0 +1,93 @@
+package net.ivango.distributions;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * A splittable random stream of the same algorithm as {@link SplittableRandom} (SplitMix64),
+ * the same seed gives the same values, but with a state that may be stored and restored:
+ * e.g. to checkpoint a simulation with the random streams of the customers being served and of the arrivals.
+ *
+ * Not thread-safe: a stream should be used by a single thread at a time, like a SplittableRandom.
+ */
+public final class RandomStream implements RandomGenerator {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /* the values are the mixed states of the stream, which advances by its odd gamma on each value */
+    private long seed, gamma;
+
+    /**
+     * Creates a stream of a random seed, see {@link SplittableRandom#SplittableRandom()}.
+     * */
+    public RandomStream() { this(new SplittableRandom().nextLong()); }
+
+    /**
+     * @param seed – the same seed gives the same values.
+     * */
+    public RandomStream(long seed) { this(seed, GOLDEN_GAMMA); }
+
+    private RandomStream(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return a stream seeded from the given one, e.g. a seeded SplittableRandom: it takes a single value of it.
+     * */
+    public static RandomStream seededFrom(RandomGenerator random) { return new RandomStream(random.nextLong()); }
+
+    /**
+     * @return a new stream independent of this one, see {@link SplittableRandom#split()}.
+     * */
+    public RandomStream split() { return new RandomStream(nextLong(), mixGamma(nextSeed())); }
+
+    @Override
+    public long nextLong() { return mix64(nextSeed()); }
+
+    @Override
+    public int nextInt() { return mix32(nextSeed()); }
+
+    /**
+     * Writes the state of the stream: a stream restored from it gives the same values as this one from now on.
+     * */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(seed);
+        out.writeLong(gamma);
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(DataOutput)}.
+     * */
+    public void readState(DataInput in) throws IOException {
+        long seed = in.readLong(), gamma = in.readLong();
+        if ((gamma & 1) == 0) { throw new IOException("Not a random stream state: even gamma " + gamma); }
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    private long nextSeed() { return seed += gamma; }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    /* an odd gamma with enough bit transitions: the streams split from each other do not repeat the same pattern */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int transitions = Long.bitCount(z ^ (z >>> 1));
+        return transitions < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,23 @@
+package net.ivango.distributions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Distribution of the time it takes to perform an operation, e.g. to pour a cup of coffee.
+ * Random durations make the model show the queueing variance a constant delay hides.
+ *
+ * Implementations are immutable and thread-safe: the state of the sampling lives in the given random generator,
+ * e.g. a {@link java.util.concurrent.ThreadLocalRandom} or a {@link java.util.SplittableRandom}.
+ */
+public interface ServiceTimeDistribution {
+
+    /**
+     * @return a random duration in milliseconds, never negative.
+     * */
+    long sample(RandomGenerator random);
+
+    /**
+     * @return expected duration in milliseconds.
+     * */
+    double getMean();
+}
@@ -4,8 +4,19 @@ package net.ivango.entities;
  * Created by Ivan Golubev <igolubev@ea.com> on 4/3/16.
  */
 public enum CoffeeType {
-    CAPPUCCINO,
-    ESPRESSO,
-    LATTE,
-    MACCHIATO
+    /* consumables used to pour a cup: water (ml), beans (g), milk (ml) */
+    CAPPUCCINO(40, 8, 120),
+    ESPRESSO(40, 8, 0),
+    LATTE(40, 8, 180),
+    MACCHIATO(40, 8, 20);
+
+    /* indexed by the consumable ordinal */
+    private final int[] consumption;
+
+    CoffeeType(int water, int beans, int milk) { consumption = new int[]{ water, beans, milk }; }
+
+    /**
+     * @return amount of the consumable used to pour a cup of this coffee, see {@link Consumable} for the units.
+     * */
+    public int getConsumption(Consumable consumable) { return consumption[consumable.ordinal()]; }
 }
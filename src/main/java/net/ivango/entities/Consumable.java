@@ -0,0 +1,10 @@
+package net.ivango.entities;
+
+/**
+ * Supplies a coffee machine runs out of: water and milk in milliliters, beans in grams.
+ */
+public enum Consumable {
+    WATER,
+    BEANS,
+    MILK
+}
@@ -1,10 +1,17 @@
 package net.ivango.entities;
 
+import net.ivango.clock.Clock;
+import net.ivango.clock.RealTimeClock;
 import net.ivango.config.Config;
+import net.ivango.distributions.RandomStream;
+import net.ivango.metrics.EventProcessor;
+import net.ivango.metrics.PackedEvent;
+import net.ivango.metrics.events.CustomerLost;
+import net.ivango.metrics.events.StageCompleted;
 
-import java.time.LocalDateTime;
-import java.util.Random;
-import java.util.concurrent.TimeUnit;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import static net.ivango.config.Properties.*;
 
@@ -16,37 +23,152 @@ import static net.ivango.config.Properties.*;
 public class Programmer {
 
     private PaymentType paymentType;
-    private LocalDateTime serviceStart;
+    /* modeled time in milliseconds when the service started */
+    private long serviceStart;
+    /* modeled time in milliseconds when the customer joined the queue of the current stage and when its service started */
+    private long stageEnqueued, stageStarted;
+    /* modeled time in milliseconds the customer leaves the queue of the current stage at, see QueuePolicy.RENEGE */
+    private long patienceDeadline = Long.MAX_VALUE;
     private CoffeeType selectedCoffee;
+    /* modeled time source used to wait and to track the service start */
+    private Clock clock;
+    /* settings of the simulation the customer takes part in: define the time each step takes */
+    private Config config;
+    /* random stream of this customer: all the random choices and durations of his service are taken from it,
+     * so the service does not depend on the threads serving him and the other customers */
+    private RandomStream random;
 
-    private static Random RANDOM = new Random();
+    public Programmer(PaymentType paymentType) { this(paymentType, RealTimeClock.INSTANCE, Config.load(), new RandomStream()); }
 
-    public Programmer(PaymentType paymentType) { this.paymentType = paymentType; }
+    /**
+     * @param random – random stream of this customer, e.g. split from a seeded one to make the runs reproducible.
+     *               Is not thread-safe: only a thread currently serving the customer should use it.
+     * */
+    public Programmer(PaymentType paymentType, Clock clock, Config config, RandomStream random) {
+        this.paymentType = paymentType;
+        this.clock = clock;
+        this.config = config;
+        this.random = random;
+    }
 
     public PaymentType getPaymentType() { return paymentType; }
-    public LocalDateTime getServiceStart() { return serviceStart; }
+    public long getServiceStart() { return serviceStart; }
     public CoffeeType getSelectedCoffee() { return selectedCoffee; }
+    public RandomStream getRandom() { return random; }
+
+    /**
+     * Writes the state of the customer, his random stream included, e.g. to checkpoint a simulation he is taking part in.
+     * */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(paymentType.ordinal());
+        out.writeByte(selectedCoffee != null ? selectedCoffee.ordinal() : -1);
+        out.writeLong(serviceStart);
+        out.writeLong(stageEnqueued);
+        out.writeLong(stageStarted);
+        out.writeLong(patienceDeadline);
+        random.writeState(out);
+    }
+
+    /**
+     * Restores a customer written by {@link #writeTo(DataOutput)}.
+     *
+     * @param clock – modeled time source of the simulation the customer is taking part in.
+     * @param config – settings of the simulation, should be the same as the ones of the checkpointed one.
+     * */
+    public static Programmer readFrom(DataInput in, Clock clock, Config config) throws IOException {
+        Programmer programmer = new Programmer(PaymentType.values()[in.readByte()], clock, config, new RandomStream());
+        byte selectedCoffee = in.readByte();
+        programmer.selectedCoffee = selectedCoffee >= 0 ? CoffeeType.values()[selectedCoffee] : null;
+        programmer.serviceStart = in.readLong();
+        programmer.stageEnqueued = in.readLong();
+        programmer.stageStarted = in.readLong();
+        programmer.patienceDeadline = in.readLong();
+        programmer.random.readState(in);
+        return programmer;
+    }
 
     /**
      * Simulates the coffee selection process.
+     *
+     * @param availableCoffeeTypes – coffee types the customer may get: the ones poured by at least one coffee machine.
      * */
     public void selectFavouriteCoffee(CoffeeType[] availableCoffeeTypes) throws InterruptedException {
-        TimeUnit.MILLISECONDS.sleep(Config.get(COFFEE_SELECTION_TIMEOUT));
+        clock.sleep(getSelectionDelay());
+        chooseCoffee(availableCoffeeTypes);
+    }
+
+    /**
+     * Picks the coffee type without waiting:
+     * used when the selection delay is already accounted for by the caller (e.g. a discrete-event simulation).
+     * */
+    public void chooseCoffee(CoffeeType[] availableCoffeeTypes) {
         this.selectedCoffee = availableCoffeeTypes [
-                Programmer.RANDOM.nextInt(availableCoffeeTypes.length)
+                random.nextInt(availableCoffeeTypes.length)
         ];
     }
 
     /**
      * Tracks the service start. Used for reporting.
      * */
-    public void markServiceStart() { this.serviceStart = LocalDateTime.now();}
+    public void markServiceStart() { this.serviceStart = clock.currentTimeMillis(); }
+
+    /**
+     * Tracks the moment the customer joins the queue of the next stage. Used for reporting.
+     * */
+    public void markStageEnqueued() { this.stageEnqueued = clock.currentTimeMillis(); }
+
+    /**
+     * Tracks the moment the customer leaves the queue and the service of the stage starts. Used for reporting.
+     * */
+    public void markStageStarted() { this.stageStarted = clock.currentTimeMillis(); }
+
+    /**
+     * Tracks the completion of the stage and submits the time spent at it, without allocating an event.
+     * The next stage is supposed to start immediately, unless the customer is enqueued again.
+     * */
+    public void completeStage(Stage stage, EventProcessor eventProcessor) { completeStage(stage, StageCompleted.NO_COFFEE_MACHINE, eventProcessor); }
+
+    /**
+     * Tracks the completion of the stage served at a coffee machine and submits the time spent at it.
+     * */
+    public void completeStage(Stage stage, int coffeeMachineNumber, EventProcessor eventProcessor) {
+        long now = clock.currentTimeMillis();
+        eventProcessor.submitEvent( PackedEvent.stageCompleted(stage, now - stageStarted, coffeeMachineNumber), stageStarted - stageEnqueued );
+        this.stageEnqueued = now;
+        this.stageStarted = now;
+    }
+
+    /**
+     * Tracks the customer leaving the queue of the stage without being serviced and submits the time he waited.
+     * */
+    public void abandonStage(Stage stage, CustomerLost.Reason reason, int coffeeMachineNumber, EventProcessor eventProcessor) {
+        long left = clock.currentTimeMillis();
+        /* a customer found gone by a server has left once his patience ran out */
+        if (reason == CustomerLost.Reason.RENEGED) { left = Math.min(left, patienceDeadline); }
+        eventProcessor.submitEvent( PackedEvent.customerLost(stage, reason, coffeeMachineNumber), left - stageEnqueued );
+    }
+
+    /**
+     * Draws the patience of the customer joining the queue of the current stage:
+     * he leaves it once he has waited for longer, both for a place in the queue and in the queue.
+     * */
+    public void drawPatience() { this.patienceDeadline = stageEnqueued + getPatience(); }
+
+    /**
+     * @return true if the customer has been waiting in the queue of the current stage for longer than his patience.
+     * */
+    public boolean isOutOfPatience() { return clock.currentTimeMillis() > patienceDeadline; }
+
+    /**
+     * @return modeled time in milliseconds the customer still agrees to wait in the queue of the current stage, 0 if none.
+     * */
+    public long getRemainingPatience() { return Math.max(0, patienceDeadline - clock.currentTimeMillis()); }
 
     /**
      * Simulates the coffee searching process.
      * */
     public Cup findCup() throws InterruptedException {
-        TimeUnit.MILLISECONDS.sleep(Config.get(FIND_CUP_TIMEOUT));
+        clock.sleep(getFindCupDelay());
         return new Cup();
     }
 
@@ -54,6 +176,13 @@ public class Programmer {
      * Simulates the leaving process.
      * */
     public void takeTheCupAndLeave(Cup cup) throws InterruptedException {
-        TimeUnit.MILLISECONDS.sleep(Config.get(TAKE_CUP_AND_LEAVE_TIMEOUT));
+        clock.sleep(getLeaveDelay());
     }
+
+    /* time in milliseconds each of the customer's own steps takes: a new random value on each call if the timeout is random */
+    public long getSelectionDelay() { return config.getDistribution(COFFEE_SELECTION_TIMEOUT).sample(random); }
+    public long getFindCupDelay() { return config.getDistribution(FIND_CUP_TIMEOUT).sample(random); }
+    public long getLeaveDelay() { return config.getDistribution(TAKE_CUP_AND_LEAVE_TIMEOUT).sample(random); }
+    /* time in milliseconds the customer agrees to wait in a queue, see net.ivango.components.QueuePolicy.RENEGE */
+    public long getPatience() { return config.getDistribution(CUSTOMER_PATIENCE_TIMEOUT).sample(random); }
 }
@@ -0,0 +1,12 @@
+package net.ivango.entities;
+
+/**
+ * Steps a customer goes through, in the order of execution.
+ */
+public enum Stage {
+    SELECTION,
+    PAYMENT,
+    CUP_FINDING,
+    POURING,
+    LEAVING
+}
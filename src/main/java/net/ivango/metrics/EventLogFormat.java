@@ -0,0 +1,47 @@
+package net.ivango.metrics;
+
+/**
+ * Layout of the binary event log written by {@link MappedEventLog} and read by {@link EventLogReader}.
+ *
+ * The file starts with a header followed by the fixed-width little-endian records:
+ *   header: magic (int), version (int), record size (int), coffee machines (int),
+ *           modeled time in milliseconds (long), record count (long),
+ *           cash registers (int), cash-only registers (int), credit-only registers (int),
+ *           espresso-only machines (int), two-outlet machines (int), padded to 64 bytes.
+ *   record: type (byte), stage (byte), coffee type (byte), payment type (byte), coffee machine number (int),
+ *           timestamp (long), duration (long), wait time (long): 32 bytes.
+ * The enum fields hold the ordinals, NONE if not applicable.
+ * The timestamp is the modeled time in milliseconds since the log was created.
+ * A machine downtime record holds the coffee machine number and the time it is offline.
+ * A cup sold record holds the cash register number in the coffee machine number field and the payment time.
+ * A lost customer record holds the stage and the coffee machine he was queueing for and the time he waited.
+ */
+final class EventLogFormat {
+
+    /* "CFEL" */
+    static final int MAGIC = 0x4346454C;
+    static final int VERSION = 4;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+    /* files are mapped by chunks: a multiple of the record size, so a record never crosses the chunk border */
+    static final int CHUNK_SIZE = 1 << 26;
+
+    /* header fields offsets */
+    static final int MAGIC_OFFSET = 0, VERSION_OFFSET = 4, RECORD_SIZE_OFFSET = 8, COFFEE_MACHINES_OFFSET = 12,
+            MODELED_TIME_OFFSET = 16, RECORD_COUNT_OFFSET = 24, CASH_REGISTERS_OFFSET = 32, CASH_ONLY_REGISTERS_OFFSET = 36,
+            CREDIT_ONLY_REGISTERS_OFFSET = 40, ESPRESSO_ONLY_MACHINES_OFFSET = 44, TWO_OUTLET_MACHINES_OFFSET = 48;
+
+    /* record fields offsets */
+    static final int TYPE_OFFSET = 0, STAGE_OFFSET = 1, COFFEE_TYPE_OFFSET = 2, PAYMENT_TYPE_OFFSET = 3,
+            COFFEE_MACHINE_OFFSET = 4, TIMESTAMP_OFFSET = 8, DURATION_OFFSET = 16, WAIT_TIME_OFFSET = 24;
+
+    /* record types */
+    static final byte CUP_SOLD = 1, CUP_DISPENSED = 2, CUSTOMER_SERVICED = 3, STAGE_COMPLETED = 4,
+            CUSTOMER_BALKED = 5, CUSTOMER_RENEGED = 6, MACHINE_REFILLED = 7, MACHINE_MAINTAINED = 8;
+
+    /* value of the enum fields not applicable to the record type */
+    static final byte NONE = -1;
+
+    private EventLogFormat() {}
+}
@@ -0,0 +1,148 @@
+package net.ivango.metrics;
+
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Stage;
+import net.ivango.metrics.events.*;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static net.ivango.config.Properties.*;
+import static net.ivango.metrics.EventLogFormat.*;
+
+/**
+ * Reads a binary event log written by {@link MappedEventLog}, e.g. to rebuild the reports of a finished run.
+ * The file is memory-mapped chunk by chunk, so logs of any size may be read with a flat heap.
+ */
+public class EventLogReader {
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final CoffeeType[] COFFEE_TYPES = CoffeeType.values();
+    private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+
+    private final Path path;
+    private final int coffeeMachines, cashRegisters, cashOnlyRegisters, creditOnlyRegisters, espressoOnlyMachines, twoOutletMachines;
+    private final long modeledTime, recordCount;
+
+    /**
+     * Receives the events read from the log.
+     * */
+    @FunctionalInterface
+    public interface EventConsumer {
+        /**
+         * @param timestamp – modeled time in milliseconds since the log creation.
+         * */
+        void accept(Event event, long timestamp);
+    }
+
+    /**
+     * Receives the events read from the log encoded by {@link PackedEvent}.
+     * */
+    @FunctionalInterface
+    public interface PackedEventConsumer {
+        /**
+         * @param waitTime – time in milliseconds spent in the queue, 0 if not applicable.
+         * @param timestamp – modeled time in milliseconds since the log creation.
+         * */
+        void accept(long event, long waitTime, long timestamp);
+    }
+
+    /**
+     * Reads the header of the log.
+     * */
+    public EventLogReader(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) { throw new IOException("Not an event log: " + path); }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC) { throw new IOException("Not an event log: " + path); }
+            if (header.getInt(VERSION_OFFSET) != VERSION || header.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+                throw new IOException("Unsupported event log version " + header.getInt(VERSION_OFFSET) + ": " + path);
+            }
+            this.coffeeMachines = header.getInt(COFFEE_MACHINES_OFFSET);
+            this.modeledTime = header.getLong(MODELED_TIME_OFFSET);
+            this.recordCount = header.getLong(RECORD_COUNT_OFFSET);
+            this.cashRegisters = header.getInt(CASH_REGISTERS_OFFSET);
+            this.cashOnlyRegisters = header.getInt(CASH_ONLY_REGISTERS_OFFSET);
+            this.creditOnlyRegisters = header.getInt(CREDIT_ONLY_REGISTERS_OFFSET);
+            this.espressoOnlyMachines = header.getInt(ESPRESSO_ONLY_MACHINES_OFFSET);
+            this.twoOutletMachines = header.getInt(TWO_OUTLET_MACHINES_OFFSET);
+            if (channel.size() < HEADER_SIZE + recordCount * RECORD_SIZE) { throw new IOException("Truncated event log: " + path); }
+        }
+    }
+
+    public int getCoffeeMachines() { return coffeeMachines; }
+    public int getCashRegisters() { return cashRegisters; }
+    public long getModeledTime() { return modeledTime; }
+    public long getRecordCount() { return recordCount; }
+
+    /**
+     * Passes each event of the log to the consumer in the order they were written.
+     * */
+    public void forEach(EventConsumer consumer) throws IOException {
+        forEachPacked( (event, waitTime, timestamp) -> consumer.accept(PackedEvent.toEvent(event, waitTime, timestamp), timestamp) );
+    }
+
+    /**
+     * Passes each event of the log to the consumer in the order they were written, without allocating the event objects.
+     * */
+    public void forEachPacked(PackedEventConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long end = HEADER_SIZE + recordCount * RECORD_SIZE;
+            for (long chunkStart = 0; chunkStart < end; chunkStart += CHUNK_SIZE) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, Math.min(CHUNK_SIZE, end - chunkStart));
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+                int position = chunkStart == 0 ? HEADER_SIZE : 0;
+                for (; position < chunk.limit(); position += RECORD_SIZE) {
+                    consumer.accept(readEvent(chunk, position), chunk.getLong(position + WAIT_TIME_OFFSET), chunk.getLong(position + TIMESTAMP_OFFSET));
+                }
+            }
+        }
+    }
+
+    private long readEvent(MappedByteBuffer chunk, int position) throws IOException {
+        byte type = chunk.get(position + TYPE_OFFSET);
+        int coffeeMachine = chunk.getInt(position + COFFEE_MACHINE_OFFSET);
+        long duration = chunk.getLong(position + DURATION_OFFSET);
+        switch (type) {
+            case CUP_SOLD: return PackedEvent.cupSold( PAYMENT_TYPES[chunk.get(position + PAYMENT_TYPE_OFFSET)], coffeeMachine, duration );
+            case CUP_DISPENSED: return PackedEvent.cupDispensed( COFFEE_TYPES[chunk.get(position + COFFEE_TYPE_OFFSET)], coffeeMachine );
+            case CUSTOMER_SERVICED: return PackedEvent.customerServiced(duration);
+            case CUSTOMER_BALKED:
+            case CUSTOMER_RENEGED:
+                return PackedEvent.customerLost( STAGES[chunk.get(position + STAGE_OFFSET)],
+                        type == CUSTOMER_BALKED ? CustomerLost.Reason.BALKED : CustomerLost.Reason.RENEGED, coffeeMachine );
+            case MACHINE_REFILLED: return PackedEvent.machineDowntime(coffeeMachine, MachineDowntime.Reason.REFILL, duration);
+            case MACHINE_MAINTAINED: return PackedEvent.machineDowntime(coffeeMachine, MachineDowntime.Reason.MAINTENANCE, duration);
+            case STAGE_COMPLETED: return PackedEvent.stageCompleted( STAGES[chunk.get(position + STAGE_OFFSET)], duration, coffeeMachine );
+            default: throw new IOException("Unknown record type " + type + " in " + path);
+        }
+    }
+
+    /**
+     * Replays the log into a new event processor: all the reports of the run may be generated from it.
+     * The log is replayed by the calling thread, so the processor has a single stripe of the counters.
+     *
+     * @param config – settings of the logged run, only the coffee machines and the cash registers (amounts and capabilities) are taken from the log.
+     * */
+    public EventProcessor rebuild(Config config) throws IOException {
+        EventProcessor eventProcessor = new EventProcessor( config
+                .with(PICK_COFFEE_PARALLELISM, coffeeMachines)
+                .with(PAYMENT_PARALLELISM, cashRegisters)
+                .with(CASH_ONLY_REGISTERS, cashOnlyRegisters)
+                .with(CREDIT_ONLY_REGISTERS, creditOnlyRegisters)
+                .with(ESPRESSO_ONLY_MACHINES, espressoOnlyMachines)
+                .with(TWO_OUTLET_MACHINES, twoOutletMachines), 1 );
+        eventProcessor.addScenarioProperty("Event log", path);
+        eventProcessor.setModeledTime(modeledTime);
+        forEachPacked( (event, waitTime, timestamp) -> eventProcessor.submitEvent(event, waitTime) );
+        return eventProcessor;
+    }
+}
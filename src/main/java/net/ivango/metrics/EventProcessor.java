@@ -1,146 +1,709 @@
 package net.ivango.metrics;
 
-import com.github.rjeschke.txtmark.Processor;
+import net.ivango.components.CashRegister;
+import net.ivango.components.CoffeeMachine;
 import net.ivango.config.Config;
+import net.ivango.config.Properties;
+import net.ivango.distributions.FixedDistribution;
 import net.ivango.entities.CoffeeType;
 import net.ivango.entities.PaymentType;
-import net.ivango.metrics.events.CupDispensed;
-import net.ivango.metrics.events.CupSold;
-import net.ivango.metrics.events.CustomerServiced;
+import net.ivango.entities.Stage;
+import net.ivango.metrics.events.CustomerLost;
 import net.ivango.metrics.events.Event;
+import net.ivango.metrics.events.MachineDowntime;
+import net.ivango.metrics.events.StageCompleted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static net.ivango.config.Properties.PAYMENT_PARALLELISM;
 import static net.ivango.config.Properties.PICK_COFFEE_PARALLELISM;
+import static net.ivango.metrics.EventLogFormat.*;
 
 /**
  * Separate entity used to aggregate events during a simulation
  * and then to generate a report after the simulation is complete.
  *
+ * The events are not stored: each event updates the counters indexed by the enum ordinals as soon as it is submitted,
+ * so the memory footprint does not depend on the amount of customers
+ * and a report takes O(machines × coffee types) to generate.
+ *
  * Created by Ivan Golubev <igolubev@ea.com> on 4/3/16.
  */
 public class EventProcessor {
 
-    /* events are submitted from multiple threads: collections should be thread-safe */
-    private Collection<CupSold> cupSoldEvents = new LinkedBlockingQueue<>();
-    private Collection<CupDispensed> cupDispensedEvents = new LinkedBlockingQueue<>();
-    private Collection<CustomerServiced> customerServicedEvents = new LinkedBlockingQueue<>();
+    private static final int PAYMENT_TYPES = PaymentType.values().length;
+    private static final int COFFEE_TYPES = CoffeeType.values().length;
+
+    /* amount of coffee machines and cash registers to report on */
+    private final int coffeeMachinesCount, cashRegistersCount;
+    /* payment types accepted by each cash register, indexed by the register number - 1 */
+    private final String[] acceptedPaymentTypes;
+    /* coffee types poured by each coffee machine and the amount of its outlets, indexed by the machine number - 1 */
+    private final String[] coffeeMachineMenus;
+    private final int[] coffeeMachineOutlets;
+
+    /* events are submitted from multiple threads: the counters are striped and lock-free.
+     * A single-threaded simulation uses a single stripe: the striping only costs memory then */
+    /* cups sold, indexed by (cash register number - 1) * PAYMENT_TYPES + payment type ordinal */
+    private final StripedCounters cupsSold;
+    /* time in milliseconds each cash register was serving the customers, indexed by the register number - 1 */
+    private final StripedCounters cashRegisterBusyTime;
+    /* cups dispensed, indexed by (coffee machine number - 1) * COFFEE_TYPES + coffee type ordinal */
+    private final StripedCounters cupsDispensed;
+    /* customers left without being serviced, indexed by the stage ordinal * LOSS_REASONS + the reason ordinal */
+    private static final int LOSS_REASONS = CustomerLost.Reason.values().length;
+    private final StripedCounters customersLost;
+    /* customers service time distribution */
+    private final LatencyHistogram serviceTime;
+    /* time spent in the queue and being serviced at each stage, indexed by the stage ordinal */
+    private final LatencyHistogram[] stageWaitTime = new LatencyHistogram[Stage.values().length];
+    private final LatencyHistogram[] stageServiceTime = new LatencyHistogram[Stage.values().length];
+
+    /* time the customers waited for each coffee machine, indexed by the machine number - 1.
+     * A customer waits for a machine before the first stage served at it: the cup finding */
+    private static final Stage COFFEE_MACHINE_QUEUE_STAGE = Stage.CUP_FINDING;
+    private final LatencyHistogram[] coffeeMachineWaitTime;
+    /* time in milliseconds each coffee machine was serving the customers, indexed by the machine number - 1 */
+    private final StripedCounters coffeeMachineBusyTime;
+    /* times each coffee machine went offline and the time in milliseconds it was offline,
+     * indexed by (coffee machine number - 1) * DOWNTIME_REASONS + the reason ordinal */
+    private static final int DOWNTIME_REASONS = MachineDowntime.Reason.values().length;
+    private final StripedCounters coffeeMachineDowntimes, coffeeMachineDowntime;
+
+    /* settings of the simulated scenario to show in the reports, e.g. the dispatch policy */
+    private final Map<String, String> scenarioProperties = new LinkedHashMap<>();
+    /* timeouts set to random distributions, shown in the reports as a part of the scenario */
+    private final Map<String, String> randomTimeouts = new LinkedHashMap<>();
+    /* modeled duration of the simulation in milliseconds, 0 if unknown */
+    private long modeledTime;
+    /* receives every submitted event, e.g. a binary log; absent if null */
+    private EventSink eventSink;
+
+    /* percentiles of the latencies to show in the reports */
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
 
-    /* file path to store the simulation reports */
-    private final static String reportPath = "target/report-%s-programmers.html";
+    /* file name of the simulation reports, without the extension */
+    private final static String reportName = "report-%s-programmers";
+    /* directory to store the simulation reports in and the formats to store them in */
+    private Path reportDirectory = Paths.get("target");
+    private Set<ReportFormat> reportFormats = EnumSet.of(ReportFormat.HTML);
 
     private Logger logger = LoggerFactory.getLogger(EventProcessor.class);
 
+    /**
+     * @param config – settings of the simulation, define the amount of coffee machines and cash registers to report on.
+     * */
+    public EventProcessor(Config config) { this(config, StripedCounters.DEFAULT_STRIPES); }
+
+    /**
+     * @param config – settings of the simulation, define the amount of coffee machines and cash registers to report on.
+     * @param stripes – amount of the copies of the counters, a power of two: 1 if the events are submitted by a single thread,
+     *                e.g. in a discrete-event simulation.
+     * */
+    public EventProcessor(Config config, int stripes) {
+        this(getCoffeeMachineMenus(config), getCoffeeMachineOutlets(config), getAcceptedPaymentTypes(config), stripes);
+        for (Properties property : Properties.values()) {
+            if ( !(config.getDistribution(property) instanceof FixedDistribution) ) {
+                randomTimeouts.put(property.toString(), config.getDistribution(property).toString());
+            }
+        }
+    }
+
+    /**
+     * @param coffeeMachineMenus – coffee types poured by each coffee machine as shown in the report, indexed by the machine number - 1.
+     * @param coffeeMachineOutlets – amount of the outlets of each coffee machine, indexed by the machine number - 1.
+     * @param acceptedPaymentTypes – payment types accepted by each cash register as shown in the report,
+     *                             indexed by the register number - 1.
+     * @param stripes – amount of the copies of the counters, a power of two.
+     * */
+    private EventProcessor(String[] coffeeMachineMenus, int[] coffeeMachineOutlets, String[] acceptedPaymentTypes, int stripes) {
+        this.coffeeMachinesCount = coffeeMachineMenus.length;
+        this.cashRegistersCount = acceptedPaymentTypes.length;
+        this.acceptedPaymentTypes = acceptedPaymentTypes;
+        this.coffeeMachineMenus = coffeeMachineMenus;
+        this.coffeeMachineOutlets = coffeeMachineOutlets;
+        cupsSold = new StripedCounters(cashRegistersCount * PAYMENT_TYPES, 0, stripes);
+        cashRegisterBusyTime = new StripedCounters(cashRegistersCount, 0, stripes);
+        cupsDispensed = new StripedCounters(coffeeMachinesCount * COFFEE_TYPES, 0, stripes);
+        customersLost = new StripedCounters(Stage.values().length * LOSS_REASONS, 0, stripes);
+        serviceTime = new LatencyHistogram(stripes);
+        coffeeMachineWaitTime = new LatencyHistogram[coffeeMachinesCount];
+        coffeeMachineBusyTime = new StripedCounters(coffeeMachinesCount, 0, stripes);
+        coffeeMachineDowntimes = new StripedCounters(coffeeMachinesCount * DOWNTIME_REASONS, 0, stripes);
+        coffeeMachineDowntime = new StripedCounters(coffeeMachinesCount * DOWNTIME_REASONS, 0, stripes);
+        for (int i=0; i < Stage.values().length; i++) {
+            stageWaitTime[i] = new LatencyHistogram(stripes);
+            stageServiceTime[i] = new LatencyHistogram(stripes);
+        }
+        for (int i=0; i < coffeeMachinesCount; i++) { coffeeMachineWaitTime[i] = new LatencyHistogram(stripes); }
+    }
+
+    private static String[] getAcceptedPaymentTypes(Config config) {
+        String[] acceptedPaymentTypes = new String[config.get(PAYMENT_PARALLELISM)];
+        for (int i=0; i < acceptedPaymentTypes.length; i++) {
+            acceptedPaymentTypes[i] = Arrays.stream(CashRegister.getAcceptedPaymentTypes(config, i+1))
+                    .map(Object::toString).collect(Collectors.joining(", "));
+        }
+        return acceptedPaymentTypes;
+    }
+
+    private static String[] getCoffeeMachineMenus(Config config) {
+        String[] menus = new String[config.get(PICK_COFFEE_PARALLELISM)];
+        for (int i=0; i < menus.length; i++) {
+            menus[i] = Arrays.stream(CoffeeMachine.getMenu(config, i+1)).map(Object::toString).collect(Collectors.joining(", "));
+        }
+        return menus;
+    }
+
+    private static int[] getCoffeeMachineOutlets(Config config) {
+        int[] outlets = new int[config.get(PICK_COFFEE_PARALLELISM)];
+        for (int i=0; i < outlets.length; i++) { outlets[i] = CoffeeMachine.getOutlets(config, i+1); }
+        return outlets;
+    }
+
+    /**
+     * Writes the aggregated statistics, e.g. to pass the results of a partition of a distributed simulation
+     * to the coordinator. The size does not depend on the amount of events, the scenario and the modeled time are not written.
+     * Approximate while the simulation is running.
+     * */
+    public void writeSummary(DataOutput out) throws IOException {
+        out.writeInt(coffeeMachinesCount);
+        out.writeInt(cashRegistersCount);
+        for (String accepted : acceptedPaymentTypes) { out.writeUTF(accepted); }
+        for (int i=0; i < coffeeMachinesCount; i++) {
+            out.writeUTF(coffeeMachineMenus[i]);
+            out.writeInt(coffeeMachineOutlets[i]);
+        }
+        for (StripedCounters counters : getCounters()) { counters.writeTo(out); }
+        for (LatencyHistogram histogram : getHistograms()) { histogram.writeTo(out); }
+    }
+
+    /**
+     * @return a processor holding the statistics written by {@link #writeSummary(DataOutput)}.
+     * */
+    public static EventProcessor readSummary(DataInput in) throws IOException {
+        int coffeeMachines = in.readInt(), cashRegisters = in.readInt();
+        if (coffeeMachines < 0 || cashRegisters < 0) { throw new IOException("Corrupted summary"); }
+        String[] acceptedPaymentTypes = new String[cashRegisters];
+        for (int i=0; i < cashRegisters; i++) { acceptedPaymentTypes[i] = in.readUTF(); }
+        String[] coffeeMachineMenus = new String[coffeeMachines];
+        int[] coffeeMachineOutlets = new int[coffeeMachines];
+        for (int i=0; i < coffeeMachines; i++) {
+            coffeeMachineMenus[i] = in.readUTF();
+            coffeeMachineOutlets[i] = in.readInt();
+        }
+        /* a summary is read by a single thread */
+        EventProcessor eventProcessor = new EventProcessor(coffeeMachineMenus, coffeeMachineOutlets, acceptedPaymentTypes, 1);
+        eventProcessor.addStatistics(in);
+        return eventProcessor;
+    }
+
+    /**
+     * Adds the statistics written by {@link #writeSummary(DataOutput)} to the ones of this processor,
+     * e.g. to resume a simulation from a checkpoint. The summary should be written by a processor of the same settings.
+     * Not thread-safe: supposed to be called before the simulation starts.
+     * */
+    public void addSummary(DataInput in) throws IOException {
+        if (in.readInt() != coffeeMachinesCount || in.readInt() != cashRegistersCount) {
+            throw new IOException("Summary of another amount of coffee machines or cash registers");
+        }
+        for (String accepted : acceptedPaymentTypes) {
+            if ( !accepted.equals(in.readUTF()) ) { throw new IOException("Summary of other cash register capabilities"); }
+        }
+        for (int i=0; i < coffeeMachinesCount; i++) {
+            if ( !coffeeMachineMenus[i].equals(in.readUTF()) || coffeeMachineOutlets[i] != in.readInt() ) {
+                throw new IOException("Summary of other coffee machine menus or outlets");
+            }
+        }
+        addStatistics(in);
+    }
+
+    private void addStatistics(DataInput in) throws IOException {
+        for (StripedCounters counters : getCounters()) { counters.addFrom(in); }
+        for (LatencyHistogram histogram : getHistograms()) { histogram.addFrom(in); }
+    }
+
+    /**
+     * Combines the statistics of the simulations running side by side, e.g. the partitions of a distributed simulation.
+     * The coffee machines and the cash registers are renumbered in the order of the partitions:
+     * the machines of the second partition follow the machines of the first one and so on.
+     * The partitions model the same period: the modeled time is the longest one.
+     * */
+    public static EventProcessor merge(List<EventProcessor> partitions) {
+        String[] acceptedPaymentTypes = partitions.stream().flatMap(partition -> Arrays.stream(partition.acceptedPaymentTypes)).toArray(String[]::new);
+        String[] coffeeMachineMenus = partitions.stream().flatMap(partition -> Arrays.stream(partition.coffeeMachineMenus)).toArray(String[]::new);
+        int[] coffeeMachineOutlets = partitions.stream().flatMapToInt(partition -> Arrays.stream(partition.coffeeMachineOutlets)).toArray();
+        EventProcessor merged = new EventProcessor(coffeeMachineMenus, coffeeMachineOutlets, acceptedPaymentTypes, 1);
+
+        int machineOffset = 0, registerOffset = 0;
+        for (EventProcessor partition : partitions) {
+            merged.cupsSold.addAll(partition.cupsSold, registerOffset * PAYMENT_TYPES);
+            merged.cashRegisterBusyTime.addAll(partition.cashRegisterBusyTime, registerOffset);
+            merged.cupsDispensed.addAll(partition.cupsDispensed, machineOffset * COFFEE_TYPES);
+            merged.customersLost.addAll(partition.customersLost, 0);
+            merged.coffeeMachineBusyTime.addAll(partition.coffeeMachineBusyTime, machineOffset);
+            merged.coffeeMachineDowntimes.addAll(partition.coffeeMachineDowntimes, machineOffset * DOWNTIME_REASONS);
+            merged.coffeeMachineDowntime.addAll(partition.coffeeMachineDowntime, machineOffset * DOWNTIME_REASONS);
+            merged.serviceTime.add(partition.serviceTime);
+            for (int i=0; i < Stage.values().length; i++) {
+                merged.stageWaitTime[i].add(partition.stageWaitTime[i]);
+                merged.stageServiceTime[i].add(partition.stageServiceTime[i]);
+            }
+            for (int i=0; i < partition.coffeeMachinesCount; i++) { merged.coffeeMachineWaitTime[machineOffset + i].add(partition.coffeeMachineWaitTime[i]); }
+            merged.modeledTime = Math.max(merged.modeledTime, partition.modeledTime);
+            machineOffset += partition.coffeeMachinesCount;
+            registerOffset += partition.cashRegistersCount;
+        }
+        return merged;
+    }
+
+    /* the counters and the histograms in the order of the summary */
+    private StripedCounters[] getCounters() {
+        return new StripedCounters[]{ cupsSold, cashRegisterBusyTime, cupsDispensed, customersLost,
+                coffeeMachineBusyTime, coffeeMachineDowntimes, coffeeMachineDowntime };
+    }
+
+    private LatencyHistogram[] getHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[1 + 2 * stageWaitTime.length + coffeeMachinesCount];
+        histograms[0] = serviceTime;
+        System.arraycopy(stageWaitTime, 0, histograms, 1, stageWaitTime.length);
+        System.arraycopy(stageServiceTime, 0, histograms, 1 + stageWaitTime.length, stageServiceTime.length);
+        System.arraycopy(coffeeMachineWaitTime, 0, histograms, 1 + 2 * stageWaitTime.length, coffeeMachinesCount);
+        return histograms;
+    }
+
+    /**
+     * Adds a setting of the simulated scenario to the report.
+     * Not thread-safe: supposed to be called before the simulation starts.
+     * */
+    public void addScenarioProperty(String name, Object value) { scenarioProperties.put(name, String.valueOf(value)); }
+
+    /**
+     * Passes every submitted event to the given sink as well, e.g. to a {@link MappedEventLog}.
+     * Not thread-safe: supposed to be called before the simulation starts.
+     * */
+    public void setEventSink(EventSink eventSink) { this.eventSink = eventSink; }
+
+    /**
+     * Sets the modeled duration of the whole simulation, used to report the throughput.
+     * */
+    public void setModeledTime(long modeledTime) { this.modeledTime = modeledTime; }
+
+    /**
+     * Sets the directory to store the reports in, "target" by default.
+     * */
+    public void setReportDirectory(Path reportDirectory) { this.reportDirectory = reportDirectory; }
+
+    /**
+     * Sets the formats to store the reports in, a file per format; html by default.
+     * */
+    public void setReportFormats(ReportFormat... reportFormats) {
+        if (reportFormats.length == 0) { throw new IllegalArgumentException("At least one report format expected"); }
+        this.reportFormats = EnumSet.copyOf(Arrays.asList(reportFormats));
+    }
+
+    /**
+     * @return amount of the customers serviced per modeled minute, 0 if the modeled time is unknown.
+     * */
+    public double getThroughput() { return modeledTime > 0 ? serviceTime.getCount() * 60_000.0 / modeledTime : 0; }
+
     /**
      * Sumbits the event for a later report generation.
-     * Thread-safe.
+     * Thread-safe, lock-free.
+     * */
+    public void submitEvent(Event event) { submitEvent(PackedEvent.pack(event), PackedEvent.getWaitTime(event)); }
+
+    /**
+     * Submits an event encoded by {@link PackedEvent} without a wait time.
+     * */
+    public void submitEvent(long event) { submitEvent(event, 0); }
+
+    /**
+     * Submits an event encoded by {@link PackedEvent}: neither the event nor its aggregation allocates.
+     * Thread-safe, lock-free.
+     *
+     * @param waitTime – time in milliseconds spent in the queue by a customer who completed a stage or left, 0 otherwise.
+     * */
+    public void submitEvent(long event, long waitTime) {
+        int number = PackedEvent.getNumber(event);
+        long duration = PackedEvent.getDuration(event);
+        byte type = PackedEvent.getType(event);
+        switch (type) {
+            case CUP_SOLD:
+                cupsSold.add( soldIndex(number, PackedEvent.getPaymentType(event)), 1 );
+                cashRegisterBusyTime.add( number - 1, duration );
+                break;
+            case CUP_DISPENSED:
+                cupsDispensed.add( dispensedIndex(number, PackedEvent.getCoffeeType(event)), 1 );
+                break;
+            case CUSTOMER_SERVICED:
+                serviceTime.record(duration);
+                break;
+            case CUSTOMER_BALKED:
+            case CUSTOMER_RENEGED:
+                customersLost.add( lostIndex(PackedEvent.getStage(event),
+                        type == CUSTOMER_BALKED ? CustomerLost.Reason.BALKED : CustomerLost.Reason.RENEGED), 1 );
+                break;
+            case MACHINE_REFILLED:
+            case MACHINE_MAINTAINED:
+                int index = downtimeIndex(number, type == MACHINE_REFILLED ? MachineDowntime.Reason.REFILL : MachineDowntime.Reason.MAINTENANCE);
+                coffeeMachineDowntimes.add(index, 1);
+                coffeeMachineDowntime.add(index, duration);
+                break;
+            case STAGE_COMPLETED:
+                Stage stage = PackedEvent.getStage(event);
+                stageWaitTime[stage.ordinal()].record(waitTime);
+                stageServiceTime[stage.ordinal()].record(duration);
+                if (number != StageCompleted.NO_COFFEE_MACHINE) {
+                    coffeeMachineBusyTime.add(number - 1, duration);
+                    if (stage == COFFEE_MACHINE_QUEUE_STAGE) { coffeeMachineWaitTime[number - 1].record(waitTime); }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + type);
+        }
+        if (eventSink != null) { eventSink.accept(event, waitTime); }
+    }
+
+    public int getCoffeeMachinesCount() { return coffeeMachinesCount; }
+    public int getCoffeeMachineOutlets(int coffeeMachineNumber) { return coffeeMachineOutlets[coffeeMachineNumber - 1]; }
+    public int getCashRegistersCount() { return cashRegistersCount; }
+
+    /**
+     * @return amount of the cups sold by the given cash register. Approximate while the simulation is running.
+     * */
+    public long getCupsSold(int cashRegisterNumber) {
+        long total = 0;
+        for (PaymentType paymentType : PaymentType.values()) { total += cupsSold.sum(soldIndex(cashRegisterNumber, paymentType)); }
+        return total;
+    }
+
+    /**
+     * @return amount of the cups sold for the given payment type by the given cash register.
      * */
-    public void submitEvent(Event event) {
-        if (event instanceof CupSold) { cupSoldEvents.add((CupSold) event ); }
-        else if (event instanceof  CupDispensed) { cupDispensedEvents.add( (CupDispensed) event); }
-        else if (event instanceof CustomerServiced) { customerServicedEvents.add( (CustomerServiced) event ); }
+    public long getCupsSold(int cashRegisterNumber, PaymentType paymentType) { return cupsSold.sum(soldIndex(cashRegisterNumber, paymentType)); }
+
+    /**
+     * @return amount of the cups sold for the given payment type by all the cash registers.
+     * */
+    public long getCupsSold(PaymentType paymentType) {
+        long total = 0;
+        for (int i=0; i < cashRegistersCount; i++) { total += cupsSold.sum(soldIndex(i+1, paymentType)); }
+        return total;
+    }
+
+    /**
+     * @return modeled time in milliseconds the given cash register was serving the customers.
+     * Approximate while the simulation is running.
+     * */
+    public long getCashRegisterBusyTime(int cashRegisterNumber) { return cashRegisterBusyTime.sum(cashRegisterNumber - 1); }
+
+    /**
+     * @return total amount of the cups dispensed by all the machines.
+     * Approximate while the simulation is running.
+     * */
+    public long getTotalCupsDispensed() {
+        long total = 0;
+        for (int i=0; i < cupsDispensed.size(); i++) { total += cupsDispensed.sum(i); }
+        return total;
+    }
+
+    /**
+     * @return amount of the cups of the given coffee type dispensed by the given coffee machine.
+     * Approximate while the simulation is running.
+     * */
+    public long getCupsDispensed(int coffeeMachineNumber, CoffeeType coffeeType) { return cupsDispensed.sum(dispensedIndex(coffeeMachineNumber, coffeeType)); }
+
+    /**
+     * @return total amount of the customers left without being serviced.
+     * Approximate while the simulation is running.
+     * */
+    public long getTotalCustomersLost() {
+        long total = 0;
+        for (int i=0; i < customersLost.size(); i++) { total += customersLost.sum(i); }
+        return total;
+    }
+
+    /**
+     * @return amount of the customers left the queue of the given stage for the given reason.
+     * */
+    public long getCustomersLost(Stage stage, CustomerLost.Reason reason) { return customersLost.sum(lostIndex(stage, reason)); }
+
+    /**
+     * @return modeled time in milliseconds the given coffee machine was serving the customers:
+     * finding a cup, pouring and leaving, summed over its outlets. Approximate while the simulation is running.
+     * */
+    public long getCoffeeMachineBusyTime(int coffeeMachineNumber) { return coffeeMachineBusyTime.sum(coffeeMachineNumber - 1); }
+
+    /**
+     * @return modeled time in milliseconds the given coffee machine was offline for the given reason.
+     * Approximate while the simulation is running.
+     * */
+    public long getCoffeeMachineDowntime(int coffeeMachineNumber, MachineDowntime.Reason reason) {
+        return coffeeMachineDowntime.sum(downtimeIndex(coffeeMachineNumber, reason));
+    }
+
+    /**
+     * @return modeled time in milliseconds the given coffee machine was offline: refilled or maintained.
+     * */
+    public long getCoffeeMachineDowntime(int coffeeMachineNumber) {
+        long total = 0;
+        for (MachineDowntime.Reason reason : MachineDowntime.Reason.values()) { total += getCoffeeMachineDowntime(coffeeMachineNumber, reason); }
+        return total;
+    }
+
+    /**
+     * @return amount of the times the given coffee machine went offline for the given reason.
+     * */
+    public long getCoffeeMachineDowntimes(int coffeeMachineNumber, MachineDowntime.Reason reason) {
+        return coffeeMachineDowntimes.sum(downtimeIndex(coffeeMachineNumber, reason));
     }
 
     /**
-     * Replaces the heavy synchronized collections with plain lists for a single-threaded processing.
+     * @return share of the modeled time the given coffee machine was online, 1 if the modeled time is unknown.
      * */
-    private void cleanBlockingQueues() {
-        cupSoldEvents = new ArrayList<>( cupSoldEvents );
-        cupDispensedEvents = new ArrayList<>( cupDispensedEvents );
-        customerServicedEvents = new ArrayList<>( customerServicedEvents );
+    public double getCoffeeMachineAvailability(int coffeeMachineNumber) {
+        return modeledTime > 0 ? Math.max(0, 1 - (double) getCoffeeMachineDowntime(coffeeMachineNumber) / modeledTime) : 1;
     }
 
     /**
-     * Processes all the events submitted during the simulation and generates an html report.
+     * @return amount of the cups the given coffee machine could have poured while offline,
+     * estimated from its own pour rate: the cups it dispensed per millisecond of its busy time at each of its outlets.
+     * An upper bound of the throughput lost to the downtime: an idle machine loses nothing.
+     * */
+    public double getCupsLostToDowntime(int coffeeMachineNumber) {
+        long busyTime = getCoffeeMachineBusyTime(coffeeMachineNumber);
+        if (busyTime == 0) { return 0; }
+        long dispensed = 0;
+        for (CoffeeType coffeeType : CoffeeType.values()) { dispensed += cupsDispensed.sum(dispensedIndex(coffeeMachineNumber, coffeeType)); }
+        return (double) getCoffeeMachineDowntime(coffeeMachineNumber) * getCoffeeMachineOutlets(coffeeMachineNumber) * dispensed / busyTime;
+    }
+
+    /**
+     * @return distribution of the customers service time (in milliseconds), e.g. to get its percentiles.
+     * */
+    public LatencyHistogram getServiceTimeHistogram() { return serviceTime; }
+
+    /**
+     * @return distribution of the time (in milliseconds) the customers spent in the queue of the given stage.
+     * */
+    public LatencyHistogram getStageWaitTimeHistogram(Stage stage) { return stageWaitTime[stage.ordinal()]; }
+
+    /**
+     * @return distribution of the time (in milliseconds) the customers spent being serviced at the given stage.
+     * */
+    public LatencyHistogram getStageServiceTimeHistogram(Stage stage) { return stageServiceTime[stage.ordinal()]; }
+
+    /**
+     * @return distribution of the time (in milliseconds) the customers spent in the queue of the given coffee machine.
+     * */
+    public LatencyHistogram getCoffeeMachineWaitTimeHistogram(int coffeeMachineNumber) { return coffeeMachineWaitTime[coffeeMachineNumber - 1]; }
+
+    private static int lostIndex(Stage stage, CustomerLost.Reason reason) { return stage.ordinal() * LOSS_REASONS + reason.ordinal(); }
+
+    private static int soldIndex(int cashRegisterNumber, PaymentType paymentType) {
+        return (cashRegisterNumber - 1) * PAYMENT_TYPES + paymentType.ordinal();
+    }
+
+    private static int dispensedIndex(int coffeeMachineNumber, CoffeeType coffeeType) {
+        return (coffeeMachineNumber - 1) * COFFEE_TYPES + coffeeType.ordinal();
+    }
+
+    private static int downtimeIndex(int coffeeMachineNumber, MachineDowntime.Reason reason) {
+        return (coffeeMachineNumber - 1) * DOWNTIME_REASONS + reason.ordinal();
+    }
+
+    /**
+     * Generates the report of the events submitted so far in each of the report formats
+     * and stores it in the report directory.
      * */
     public void processEvents() {
-        /* thread-safe collection are no longer needed */
-        cleanBlockingQueues();
-
-        /* convert the markdown text into html */
-        String cupsSoldStats = Processor.process(getCupsSoldStats());
-        String coffeeMachineStats = Processor.process(getCoffeeMachineStats());
-        String customerWaitStats = Processor.process(getCustomerWaitStats());
-
-        /* write the html report into a file */
-        Path outputPath = new File(String.format(reportPath, cupSoldEvents.size())).toPath();
-        logger.info("Generating report: " + outputPath);
-        try (Writer writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
-            writer.write(cupsSoldStats);
-            writer.write(coffeeMachineStats);
-            writer.write(customerWaitStats);
+        try {
+            getReport().writeTo(reportDirectory, String.format(reportName, getTotalCupsSold()), reportFormats);
         } catch (Exception e) {
             logger.error("Error during report generation: ", e);
         }
     }
 
     /**
-     * Processes relevant events to generate a markdown report text
+     * Generates an html report of the events submitted so far.
+     *
+     * @param writer – destination of the report, not closed by this method.
+     * */
+    public void writeReport(Writer writer) throws IOException { writeReport(writer, ReportFormat.HTML); }
+
+    /**
+     * Generates a report of the events submitted so far in the given format.
+     *
+     * @param writer – destination of the report, not closed by this method.
+     * */
+    public void writeReport(Writer writer, ReportFormat format) throws IOException { getReport().writeTo(writer, format); }
+
+    /* the sections are computed concurrently: they only read the counters and the histograms */
+    private Report getReport() {
+        return new Report(Arrays.asList(this::getScenario, this::getCupsSoldStats, this::getCashRegisterStats, this::getCoffeeMachineStats,
+                this::getCustomerWaitStats, this::getCustomersLostStats, this::getStageStats));
+    }
+
+    private long getTotalCupsSold() {
+        long total = 0;
+        for (int i=0; i < cupsSold.size(); i++) { total += cupsSold.sum(i); }
+        return total;
+    }
+
+    /**
+     * Generates a report section
+     * to describe the simulated scenario settings.
+     * */
+    private ReportSection getScenario() {
+        ReportSection section = new ReportSection("Scenario");
+        scenarioProperties.forEach(section::add);
+        randomTimeouts.forEach(section::add);
+        if (modeledTime > 0) {
+            section.add("Modeled time", modeledTime, "milliseconds")
+                    .add("Throughput", getThroughput(), "customers per minute", "%.2f");
+        }
+        return section;
+    }
+
+    /**
+     * Generates a report section
      * to describe coffee machine statistics.
      * */
-    private String getCoffeeMachineStats() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("# Coffee machine stats").append("\n");
+    private ReportSection getCoffeeMachineStats() {
+        ReportSection section = new ReportSection("Coffee machine stats");
 
-        for (int i=0; i < Config.get(PICK_COFFEE_PARALLELISM); i++) {
+        for (int i=0; i < coffeeMachinesCount; i++) {
             final int machineNumber = i + 1;
-            long totalCupsDispensed = cupDispensedEvents.stream().filter( c -> c.getCoffeeMachineNumber() == machineNumber ).count();
-            long espressoCupsDispensed = cupDispensedEvents.stream().filter(c -> (c.getCoffeeMachineNumber() == machineNumber && c.getCoffeeType() == CoffeeType.ESPRESSO) ).count();
-            long latteCupsDispensed = cupDispensedEvents.stream().filter(c -> (c.getCoffeeMachineNumber() == machineNumber && c.getCoffeeType() == CoffeeType.LATTE)).count();
-            long macchiatoCupsDispensed = cupDispensedEvents.stream().filter(c -> (c.getCoffeeMachineNumber() == machineNumber && c.getCoffeeType() == CoffeeType.MACCHIATO) ).count();
-            long CappuccinoCupsDispensed = cupDispensedEvents.stream().filter(c -> (c.getCoffeeMachineNumber() == machineNumber && c.getCoffeeType() == CoffeeType.CAPPUCCINO)).count();
+            long totalCupsDispensed = 0;
+            for (CoffeeType coffeeType : CoffeeType.values()) { totalCupsDispensed += cupsDispensed.sum(dispensedIndex(machineNumber, coffeeType)); }
 
-            sb.append("##Coffee machine ").append(machineNumber).append("\n\n")
-                    .append("Total cups dispensed: ").append(totalCupsDispensed).append("\n\n")
-                    .append("Espresso dispensed: ").append(espressoCupsDispensed).append("\n\n")
-                    .append("Latte dispensed: ").append(latteCupsDispensed).append("\n\n")
-                    .append("Macchiato dispensed: ").append(macchiatoCupsDispensed).append("\n\n")
-                    .append("Cappuccino dispensed: ").append(CappuccinoCupsDispensed).append("\n\n\n\n");
+            section.entity("Coffee machine " + machineNumber)
+                    .add("Menu", coffeeMachineMenus[i])
+                    .add("Outlets", coffeeMachineOutlets[i])
+                    .add("Total cups dispensed", totalCupsDispensed)
+                    .add("Espresso dispensed", cupsDispensed.sum(dispensedIndex(machineNumber, CoffeeType.ESPRESSO)))
+                    .add("Latte dispensed", cupsDispensed.sum(dispensedIndex(machineNumber, CoffeeType.LATTE)))
+                    .add("Macchiato dispensed", cupsDispensed.sum(dispensedIndex(machineNumber, CoffeeType.MACCHIATO)))
+                    .add("Cappuccino dispensed", cupsDispensed.sum(dispensedIndex(machineNumber, CoffeeType.CAPPUCCINO)))
+                    .add("Average wait in queue", coffeeMachineWaitTime[i].getMean(), "milliseconds")
+                    .add("99.0 percentile wait in queue", coffeeMachineWaitTime[i].getValueAtPercentile(99), "milliseconds")
+                    .add("Refills", getCoffeeMachineDowntimes(machineNumber, MachineDowntime.Reason.REFILL))
+                    .add("Offline for refills", getCoffeeMachineDowntime(machineNumber, MachineDowntime.Reason.REFILL), "milliseconds")
+                    .add("Maintenance cycles", getCoffeeMachineDowntimes(machineNumber, MachineDowntime.Reason.MAINTENANCE))
+                    .add("Offline for maintenance", getCoffeeMachineDowntime(machineNumber, MachineDowntime.Reason.MAINTENANCE), "milliseconds");
+            if (modeledTime > 0) {
+                double cupsLost = getCupsLostToDowntime(machineNumber);
+                /* the outlets share the queue of the machine: its busy time is tracked as a whole, not per outlet */
+                section.add("Average outlet utilization", 100.0 * coffeeMachineBusyTime.sum(i) / coffeeMachineOutlets[i] / modeledTime, "%", "%.1f")
+                        .add("Availability", 100.0 * getCoffeeMachineAvailability(machineNumber), "%", "%.1f")
+                        .add("Throughput lost to downtime, up to", cupsLost, "cups", "%.0f")
+                        .add("Throughput lost to downtime per minute, up to", cupsLost * 60_000.0 / modeledTime, "cups per minute", "%.2f");
+            }
         }
-        return sb.toString();
+        return section;
     }
 
     /**
-     * Processes relevant events to generate a markdown report text
+     * Generates a report section
      * to describe customer service time statistics.
      * */
-    private String getCustomerWaitStats() {
-        long minServiceTime = customerServicedEvents.stream().min((p1, p2) -> Long.compare( p1.getServiceTime(), p2.getServiceTime())).get().getServiceTime();
-        long maxServiceTime = customerServicedEvents.stream().max((p1, p2) -> Long.compare(p1.getServiceTime(), p2.getServiceTime())).get().getServiceTime();
-        double avgServiceTime = customerServicedEvents.stream().mapToLong( CustomerServiced::getServiceTime ).average().getAsDouble();
+    private ReportSection getCustomerWaitStats() {
+        ReportSection section = new ReportSection("Service time")
+                .add("Min service time", serviceTime.getMin(), "milliseconds")
+                .add("Average service time", serviceTime.getMean(), "milliseconds")
+                .add("Max service time", serviceTime.getMax(), "milliseconds");
+        for (double percentile : REPORTED_PERCENTILES) {
+            section.add(percentile + " percentile service time", serviceTime.getValueAtPercentile(percentile), "milliseconds");
+        }
+        return section;
+    }
+
+    /**
+     * Generates a report section
+     * to describe the customers left without being serviced: the queues they left and why.
+     * */
+    private ReportSection getCustomersLostStats() {
+        ReportSection section = new ReportSection("Lost customers")
+                .add("Total", getTotalCustomersLost());
+        for (Stage stage : Stage.values()) {
+            for (CustomerLost.Reason reason : CustomerLost.Reason.values()) {
+                long lost = getCustomersLost(stage, reason);
+                if (lost > 0) { section.add(stage + " queue, " + reason.toString().toLowerCase(), lost); }
+            }
+        }
+        return section;
+    }
+
+    /**
+     * Generates a report section
+     * to describe where the time goes: waiting and service time at each stage.
+     * */
+    private ReportSection getStageStats() {
+        double totalTime = 0;
+        for (Stage stage : Stage.values()) {
+            totalTime += getStageWaitTimeHistogram(stage).getMean() + getStageServiceTimeHistogram(stage).getMean();
+        }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("# Service time").append("\n")
-                .append("Min service time: ").append(minServiceTime).append(" milliseconds").append("\n\n")
-                .append("Average service time: ").append(avgServiceTime).append(" milliseconds").append("\n\n")
-                .append("Max service time: ").append(maxServiceTime).append(" milliseconds").append("\n\n");
-        return sb.toString();
+        ReportSection section = new ReportSection("Time per stage");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram wait = getStageWaitTimeHistogram(stage), service = getStageServiceTimeHistogram(stage);
+            double share = totalTime > 0 ? (wait.getMean() + service.getMean()) * 100 / totalTime : 0;
+            section.entity(stage.toString())
+                    .add("Average wait in queue", wait.getMean(), "milliseconds")
+                    .add("99.0 percentile wait in queue", wait.getValueAtPercentile(99), "milliseconds")
+                    .add("Average service time", service.getMean(), "milliseconds")
+                    .add("99.0 percentile service time", service.getValueAtPercentile(99), "milliseconds")
+                    .add("Share of the total time", share, "%", "%.1f");
+        }
+        return section;
     }
 
     /**
-     * Processes relevant events to generate a markdown report text
+     * Generates a report section
      * to describe sold coffee cups statistics.
      * */
-    private String getCupsSoldStats() {
-        int totalCupsSold = cupSoldEvents.size();
-        long cupsSoldForCash = cupSoldEvents.stream().filter( c -> c.getPaymentType() == PaymentType.CASH).count();
-        long cupsSoldForCredit = cupSoldEvents.stream().filter( c -> c.getPaymentType() == PaymentType.CREDIT).count();
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("# Cups Sold").append("\n")
-                .append("Total: ").append(totalCupsSold).append("\n\n")
-                .append("Cups sold for cash: ").append(cupsSoldForCash).append("\n\n")
-                .append("Cups sold for credit: ").append(cupsSoldForCredit).append("\n\n");
-        return sb.toString();
+    private ReportSection getCupsSoldStats() {
+        return new ReportSection("Cups Sold")
+                .add("Total", getTotalCupsSold())
+                .add("Cups sold for cash", getCupsSold(PaymentType.CASH))
+                .add("Cups sold for credit", getCupsSold(PaymentType.CREDIT));
+    }
+
+    /**
+     * Generates a report section
+     * to describe cash register statistics: the payments each register took and how busy it was.
+     * */
+    private ReportSection getCashRegisterStats() {
+        ReportSection section = new ReportSection("Cash register stats");
+
+        for (int i=0; i < cashRegistersCount; i++) {
+            final int cashRegisterNumber = i + 1;
+            section.entity("Cash register " + cashRegisterNumber)
+                    .add("Accepts", acceptedPaymentTypes[i])
+                    .add("Total cups sold", getCupsSold(cashRegisterNumber))
+                    .add("Cups sold for cash", getCupsSold(cashRegisterNumber, PaymentType.CASH))
+                    .add("Cups sold for credit", getCupsSold(cashRegisterNumber, PaymentType.CREDIT));
+            if (modeledTime > 0) {
+                section.add("Throughput", getCupsSold(cashRegisterNumber) * 60_000.0 / modeledTime, "customers per minute", "%.2f")
+                        .add("Utilization", 100.0 * cashRegisterBusyTime.sum(i) / modeledTime, "%", "%.1f");
+            }
+        }
+        return section;
     }
 
 }
@@ -0,0 +1,15 @@
+package net.ivango.metrics;
+
+/**
+ * Receives every event submitted to an {@link EventProcessor}, e.g. to store it for a post-hoc analysis.
+ * The events are passed encoded by {@link PackedEvent}, see {@link PackedEvent#toEvent(long, long, long)} for the object view.
+ * Implementations should be thread-safe: the events are submitted from multiple threads.
+ */
+@FunctionalInterface
+public interface EventSink {
+
+    /**
+     * @param waitTime – time in milliseconds spent in the queue by a customer who completed a stage or left, 0 otherwise.
+     * */
+    void accept(long event, long waitTime);
+}
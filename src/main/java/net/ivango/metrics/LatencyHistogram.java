@@ -0,0 +1,186 @@
+package net.ivango.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Fixed-memory histogram of latencies (in milliseconds) with the logarithmic buckets, similar to HdrHistogram.
+ *
+ * The values below 256 are counted exactly; larger values are counted in buckets keeping 8 significant bits:
+ * a bucket is at most 1/128 of its lowest value wide, so any reported percentile is within 1% of the recorded value.
+ * The values above the highest trackable value (2^36 milliseconds, more than 2 years) are counted as the highest one.
+ *
+ * Recording is thread-safe and lock-free; reading is supposed to happen once all the writers are complete.
+ * Reading while recording is possible but approximate, e.g. to watch the percentiles of a running simulation:
+ * see {@link #getBucketCounts()}.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int HIGHEST_TRACKABLE_BIT = 36;
+    private static final long HIGHEST_TRACKABLE_VALUE = (1L << HIGHEST_TRACKABLE_BIT) - 1;
+    private static final int BUCKET_COUNT = indexOf(HIGHEST_TRACKABLE_VALUE) + 1;
+
+    private static final int COUNT = 0, SUM = 1;
+
+    private final StripedCounters buckets, totals, min, max;
+
+    public LatencyHistogram() { this(StripedCounters.DEFAULT_STRIPES); }
+
+    /**
+     * @param stripes – amount of the copies of the buckets, a power of two: 1 if the values are recorded by a single thread,
+     *                the more stripes the less the concurrent writers contend.
+     * */
+    public LatencyHistogram(int stripes) {
+        buckets = new StripedCounters(BUCKET_COUNT, 0, stripes);
+        totals = new StripedCounters(2, 0, stripes);
+        min = new StripedCounters(1, Long.MAX_VALUE, stripes);
+        max = new StripedCounters(1, Long.MIN_VALUE, stripes);
+    }
+
+    /**
+     * Records a single value. Negative values are counted as zero.
+     * Thread-safe, lock-free.
+     * */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        buckets.add(indexOf(Math.min(clamped, HIGHEST_TRACKABLE_VALUE)), 1);
+        totals.add(COUNT, 1);
+        totals.add(SUM, clamped);
+        min.updateMin(0, clamped);
+        max.updateMax(0, clamped);
+    }
+
+    public long getCount() { return totals.sum(COUNT); }
+
+    /**
+     * @return the exact minimal recorded value or 0 if nothing was recorded.
+     * */
+    public long getMin() { return getCount() > 0 ? min.min(0) : 0; }
+
+    /**
+     * @return the exact maximal recorded value or 0 if nothing was recorded.
+     * */
+    public long getMax() { return getCount() > 0 ? max.max(0) : 0; }
+
+    /**
+     * @return the exact mean of the recorded values or 0 if nothing was recorded.
+     * */
+    public double getMean() {
+        long count = getCount();
+        return count > 0 ? (double) totals.sum(SUM) / count : 0;
+    }
+
+    /**
+     * @param percentile – percentile to calculate, e.g. 99.9.
+     * @return the value below or equal to which the given percentage of the recorded values fall, 0 if nothing was recorded.
+     * */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) { throw new IllegalArgumentException("Percentile should be in [0, 100]: " + percentile); }
+        long count = getCount();
+        if (count == 0) { return 0; }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long cumulative = 0;
+        for (int i=0; i < BUCKET_COUNT; i++) {
+            cumulative += buckets.sum(i);
+            if (cumulative >= target) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return a copy of the current counts of the buckets: the percentiles of the values recorded after the copy was taken
+     * are returned by {@link #getValueAtPercentileSince(long[], double)}.
+     * */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i=0; i < BUCKET_COUNT; i++) { counts[i] = buckets.sum(i); }
+        return counts;
+    }
+
+    /**
+     * @param previousCounts – bucket counts taken earlier by {@link #getBucketCounts()}.
+     * @param percentile – percentile to calculate, e.g. 99.9.
+     * @return the percentile of the values recorded since the previous counts were taken, 0 if nothing was recorded.
+     * */
+    public long getValueAtPercentileSince(long[] previousCounts, double percentile) {
+        if (percentile < 0 || percentile > 100) { throw new IllegalArgumentException("Percentile should be in [0, 100]: " + percentile); }
+        long[] counts = getBucketCounts();
+        long count = 0;
+        for (int i=0; i < BUCKET_COUNT; i++) {
+            counts[i] -= previousCounts[i];
+            count += counts[i];
+        }
+        if (count <= 0) { return 0; }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long cumulative = 0;
+        for (int i=0; i < BUCKET_COUNT; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) { return highestValueOf(i); }
+        }
+        return HIGHEST_TRACKABLE_VALUE;
+    }
+
+    /**
+     * Adds all the values recorded by the other histogram, e.g. to merge the results of several simulations.
+     * Supposed to be called once the other histogram is complete.
+     * */
+    public void add(LatencyHistogram other) {
+        buckets.addAll(other.buckets, 0);
+        totals.addAll(other.totals, 0);
+        if (other.getCount() > 0) {
+            min.updateMin(0, other.getMin());
+            max.updateMax(0, other.getMax());
+        }
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        buckets.writeTo(out);
+        totals.writeTo(out);
+        out.writeLong(getMin());
+        out.writeLong(getMax());
+    }
+
+    /**
+     * Adds the values of a histogram written by {@link #writeTo(DataOutput)}.
+     * */
+    void addFrom(DataInput in) throws IOException {
+        long count = getCount();
+        buckets.addFrom(in);
+        totals.addFrom(in);
+        long otherMin = in.readLong(), otherMax = in.readLong();
+        if (getCount() > count) {
+            min.updateMin(0, otherMin);
+            max.updateMax(0, otherMax);
+        }
+    }
+
+    /**
+     * @return index of the bucket counting the given value.
+     * */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) { return (int) value; }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - (SUB_BUCKET_BITS - 1);
+        /* keep the SUB_BUCKET_BITS most significant bits: the sub-bucket is in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT) */
+        int subBucket = (int) (value >>> shift);
+        return shift * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    /**
+     * @return the highest value counted by the given bucket.
+     * */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) { return index; }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,132 @@
+package net.ivango.metrics;
+
+import net.ivango.clock.Clock;
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Stage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.ivango.config.Properties.*;
+import static net.ivango.metrics.EventLogFormat.*;
+
+/**
+ * Writes the events into a binary file as fixed-width records (see {@link EventLogFormat}),
+ * so the reports may be rebuilt later by {@link EventLogReader} and the huge runs may be analysed post-hoc.
+ *
+ * The file is memory-mapped chunk by chunk: writing a record is a few stores into the page cache,
+ * no objects are created or retained and the heap stays flat regardless of the amount of events.
+ * Thread-safe, lock-free except for mapping the next chunk.
+ */
+public class MappedEventLog implements EventSink, Closeable {
+
+    private final FileChannel channel;
+    /* modeled time source to timestamp the events, the timestamps are relative to the log creation */
+    private final Clock clock;
+    private final long origin;
+    private final int coffeeMachines, cashRegisters, cashOnlyRegisters, creditOnlyRegisters, espressoOnlyMachines, twoOutletMachines;
+
+    /* index of the next record to write */
+    private final AtomicLong nextRecord = new AtomicLong();
+    /* mapped chunks of the file, indexed by the chunk number; replaced with a longer copy when a new chunk is mapped */
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    /* modeled duration of the simulation in milliseconds, stored in the header */
+    private volatile long modeledTime;
+
+    /**
+     * @param path – file to write, replaced if exists.
+     * @param clock – modeled time source of the simulation.
+     * @param config – settings of the simulation, the coffee machines and the cash registers (amounts and capabilities) are stored to rebuild the reports.
+     * */
+    public MappedEventLog(Path path, Clock clock, Config config) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.clock = clock;
+        this.origin = clock.currentTimeMillis();
+        this.coffeeMachines = config.get(PICK_COFFEE_PARALLELISM);
+        this.cashRegisters = config.get(PAYMENT_PARALLELISM);
+        this.cashOnlyRegisters = config.get(CASH_ONLY_REGISTERS);
+        this.creditOnlyRegisters = config.get(CREDIT_ONLY_REGISTERS);
+        this.espressoOnlyMachines = config.get(ESPRESSO_ONLY_MACHINES);
+        this.twoOutletMachines = config.get(TWO_OUTLET_MACHINES);
+    }
+
+    @Override
+    public void accept(long event, long waitTime) {
+        long offset = HEADER_SIZE + nextRecord.getAndIncrement() * RECORD_SIZE;
+        MappedByteBuffer chunk = getChunk( (int) (offset / CHUNK_SIZE) );
+        int position = (int) (offset % CHUNK_SIZE);
+
+        Stage stage = PackedEvent.getStage(event);
+        CoffeeType coffeeType = PackedEvent.getCoffeeType(event);
+        PaymentType paymentType = PackedEvent.getPaymentType(event);
+        chunk.put(position + TYPE_OFFSET, PackedEvent.getType(event));
+        chunk.put(position + STAGE_OFFSET, stage != null ? (byte) stage.ordinal() : NONE);
+        chunk.put(position + COFFEE_TYPE_OFFSET, coffeeType != null ? (byte) coffeeType.ordinal() : NONE);
+        chunk.put(position + PAYMENT_TYPE_OFFSET, paymentType != null ? (byte) paymentType.ordinal() : NONE);
+        chunk.putInt(position + COFFEE_MACHINE_OFFSET, PackedEvent.getNumber(event));
+        chunk.putLong(position + TIMESTAMP_OFFSET, clock.currentTimeMillis() - origin);
+        chunk.putLong(position + DURATION_OFFSET, PackedEvent.getDuration(event));
+        chunk.putLong(position + WAIT_TIME_OFFSET, waitTime);
+    }
+
+    private MappedByteBuffer getChunk(int index) {
+        MappedByteBuffer[] mapped = chunks;
+        if (index < mapped.length) { return mapped[index]; }
+        synchronized (this) {
+            mapped = chunks;
+            if (index >= mapped.length) {
+                mapped = Arrays.copyOf(mapped, index + 1);
+                try {
+                    for (int i = chunks.length; i <= index; i++) {
+                        mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * CHUNK_SIZE, CHUNK_SIZE);
+                        mapped[i].order(ByteOrder.LITTLE_ENDIAN);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to map the event log", e);
+                }
+                chunks = mapped;
+            }
+            return mapped[index];
+        }
+    }
+
+    /**
+     * Sets the modeled duration of the whole simulation, used to report the throughput.
+     * */
+    public void setModeledTime(long modeledTime) { this.modeledTime = modeledTime; }
+
+    public long getRecordCount() { return nextRecord.get(); }
+
+    /**
+     * Writes the header and trims the file to the written records.
+     * Should be called once all the events are submitted.
+     * */
+    @Override
+    public void close() throws IOException {
+        long recordCount = nextRecord.get();
+        MappedByteBuffer header = getChunk(0);
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+        header.putInt(COFFEE_MACHINES_OFFSET, coffeeMachines);
+        header.putLong(MODELED_TIME_OFFSET, modeledTime);
+        header.putLong(RECORD_COUNT_OFFSET, recordCount);
+        header.putInt(CASH_REGISTERS_OFFSET, cashRegisters);
+        header.putInt(CASH_ONLY_REGISTERS_OFFSET, cashOnlyRegisters);
+        header.putInt(CREDIT_ONLY_REGISTERS_OFFSET, creditOnlyRegisters);
+        header.putInt(ESPRESSO_ONLY_MACHINES_OFFSET, espressoOnlyMachines);
+        header.putInt(TWO_OUTLET_MACHINES_OFFSET, twoOutletMachines);
+        channel.truncate(HEADER_SIZE + recordCount * RECORD_SIZE);
+        channel.close();
+    }
+}
@@ -0,0 +1,154 @@
+package net.ivango.metrics;
+
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Stage;
+import net.ivango.metrics.events.*;
+
+import static net.ivango.metrics.EventLogFormat.*;
+
+/**
+ * Encodes the events into primitive longs, so submitting an event does not allocate:
+ * see {@link EventProcessor#submitEvent(long, long)}. The {@link Event} objects are a decoded view of the same events.
+ *
+ * An event is a packed long plus the wait time in milliseconds (0 if not applicable):
+ *   bits 60-63: type, the record types of the event log, e.g. CUP_SOLD; the reasons are the part of the type,
+ *   bits 56-59: stage ordinal, 52-55: coffee type or payment type ordinal (NO_ORDINAL if not applicable),
+ *   bits 36-51: coffee machine or cash register number (StageCompleted.NO_COFFEE_MACHINE if none),
+ *   bits 0-35: duration in milliseconds: the service time, the payment time or the downtime (up to two years).
+ */
+public final class PackedEvent {
+
+    private static final int TYPE_SHIFT = 60, STAGE_SHIFT = 56, KIND_SHIFT = 52, NUMBER_SHIFT = 36;
+    private static final long ORDINAL_MASK = 0xF, NUMBER_MASK = 0xFFFF, DURATION_MASK = (1L << NUMBER_SHIFT) - 1;
+    private static final int NO_ORDINAL = 0xF;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final CoffeeType[] COFFEE_TYPES = CoffeeType.values();
+    private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+
+    private PackedEvent() {}
+
+    public static long cupSold(PaymentType paymentType, int cashRegisterNumber, long paymentTime) {
+        return pack(CUP_SOLD, NO_ORDINAL, paymentType.ordinal(), cashRegisterNumber, paymentTime);
+    }
+
+    public static long cupDispensed(CoffeeType coffeeType, int coffeeMachineNumber) {
+        return pack(CUP_DISPENSED, NO_ORDINAL, coffeeType.ordinal(), coffeeMachineNumber, 0);
+    }
+
+    public static long customerServiced(long serviceTime) {
+        return pack(CUSTOMER_SERVICED, NO_ORDINAL, NO_ORDINAL, StageCompleted.NO_COFFEE_MACHINE, serviceTime);
+    }
+
+    /**
+     * The time spent in the queue is passed along as the wait time.
+     * */
+    public static long customerLost(Stage stage, CustomerLost.Reason reason, int coffeeMachineNumber) {
+        return pack(reason == CustomerLost.Reason.BALKED ? CUSTOMER_BALKED : CUSTOMER_RENEGED,
+                stage.ordinal(), NO_ORDINAL, coffeeMachineNumber, 0);
+    }
+
+    public static long machineDowntime(int coffeeMachineNumber, MachineDowntime.Reason reason, long duration) {
+        return pack(reason == MachineDowntime.Reason.REFILL ? MACHINE_REFILLED : MACHINE_MAINTAINED,
+                NO_ORDINAL, NO_ORDINAL, coffeeMachineNumber, duration);
+    }
+
+    /**
+     * The time spent in the queue is passed along as the wait time.
+     *
+     * @param serviceTime – time in milliseconds spent being serviced.
+     * */
+    public static long stageCompleted(Stage stage, long serviceTime, int coffeeMachineNumber) {
+        return pack(STAGE_COMPLETED, stage.ordinal(), NO_ORDINAL, coffeeMachineNumber, serviceTime);
+    }
+
+    private static long pack(byte type, int stage, int kind, int number, long duration) {
+        if (number < 0 || number > NUMBER_MASK) { throw new IllegalArgumentException("Machine or register number out of range: " + number); }
+        if (duration < 0 || duration > DURATION_MASK) { throw new IllegalArgumentException("Duration out of range: " + duration); }
+        return (long) type << TYPE_SHIFT | (long) stage << STAGE_SHIFT | (long) kind << KIND_SHIFT
+                | (long) number << NUMBER_SHIFT | duration;
+    }
+
+    /* fields of a packed event */
+    public static byte getType(long event) { return (byte) (event >>> TYPE_SHIFT); }
+    public static int getNumber(long event) { return (int) (event >>> NUMBER_SHIFT & NUMBER_MASK); }
+    public static long getDuration(long event) { return event & DURATION_MASK; }
+
+    /**
+     * @return the stage of a completed stage or a lost customer event, null otherwise.
+     * */
+    public static Stage getStage(long event) { return ordinal(event, STAGE_SHIFT, STAGES); }
+
+    /**
+     * @return the coffee type of a cup dispensed event, null otherwise.
+     * */
+    public static CoffeeType getCoffeeType(long event) { return getType(event) == CUP_DISPENSED ? ordinal(event, KIND_SHIFT, COFFEE_TYPES) : null; }
+
+    /**
+     * @return the payment type of a cup sold event, null otherwise.
+     * */
+    public static PaymentType getPaymentType(long event) { return getType(event) == CUP_SOLD ? ordinal(event, KIND_SHIFT, PAYMENT_TYPES) : null; }
+
+    private static <T> T ordinal(long event, int shift, T[] values) {
+        int ordinal = (int) (event >>> shift & ORDINAL_MASK);
+        return ordinal == NO_ORDINAL ? null : values[ordinal];
+    }
+
+    /**
+     * Encodes an event object.
+     * */
+    public static long pack(Event event) {
+        if (event instanceof CupSold) {
+            CupSold cupSold = (CupSold) event;
+            return cupSold(cupSold.getPaymentType(), cupSold.getCashRegisterNumber(), cupSold.getPaymentTime());
+        } else if (event instanceof CupDispensed) {
+            return cupDispensed( ((CupDispensed) event).getCoffeeType(), ((CupDispensed) event).getCoffeeMachineNumber() );
+        } else if (event instanceof CustomerServiced) {
+            return customerServiced( ((CustomerServiced) event).getServiceTime() );
+        } else if (event instanceof CustomerLost) {
+            CustomerLost customerLost = (CustomerLost) event;
+            return customerLost(customerLost.getStage(), customerLost.getReason(), customerLost.getCoffeeMachineNumber());
+        } else if (event instanceof MachineDowntime) {
+            MachineDowntime machineDowntime = (MachineDowntime) event;
+            return machineDowntime(machineDowntime.getCoffeeMachineNumber(), machineDowntime.getReason(), machineDowntime.getDuration());
+        } else if (event instanceof StageCompleted) {
+            StageCompleted stageCompleted = (StageCompleted) event;
+            return stageCompleted(stageCompleted.getStage(), stageCompleted.getServiceTime(), stageCompleted.getCoffeeMachineNumber());
+        }
+        throw new IllegalArgumentException("Unsupported event: " + event.getClass());
+    }
+
+    /**
+     * @return the wait time of an event object to pass along with its packed form, 0 if not applicable.
+     * */
+    public static long getWaitTime(Event event) {
+        if (event instanceof StageCompleted) { return ((StageCompleted) event).getWaitTime(); }
+        if (event instanceof CustomerLost) { return ((CustomerLost) event).getWaitTime(); }
+        return 0;
+    }
+
+    /**
+     * Decodes an event into its object view.
+     *
+     * @param timestamp – modeled time in milliseconds the event happened at: the completion of a completed stage.
+     * */
+    public static Event toEvent(long event, long waitTime, long timestamp) {
+        byte type = getType(event);
+        int number = getNumber(event);
+        long duration = getDuration(event);
+        switch (type) {
+            case CUP_SOLD: return new CupSold(getPaymentType(event), number, duration);
+            case CUP_DISPENSED: return new CupDispensed(getCoffeeType(event), number);
+            case CUSTOMER_SERVICED: return new CustomerServiced(duration);
+            case CUSTOMER_BALKED: return new CustomerLost(getStage(event), CustomerLost.Reason.BALKED, waitTime, number);
+            case CUSTOMER_RENEGED: return new CustomerLost(getStage(event), CustomerLost.Reason.RENEGED, waitTime, number);
+            case MACHINE_REFILLED: return new MachineDowntime(number, MachineDowntime.Reason.REFILL, duration);
+            case MACHINE_MAINTAINED: return new MachineDowntime(number, MachineDowntime.Reason.MAINTENANCE, duration);
+            case STAGE_COMPLETED:
+                long started = timestamp - duration;
+                return new StageCompleted(getStage(event), started - waitTime, started, timestamp, number);
+            default: throw new IllegalArgumentException("Unknown event type: " + type);
+        }
+    }
+}
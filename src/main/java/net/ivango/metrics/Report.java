@@ -0,0 +1,75 @@
+package net.ivango.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * A report made of independent sections, e.g. the statistics of an {@link EventProcessor}.
+ *
+ * The sections are computed and rendered in parallel on the common fork-join pool, if it has more than one thread,
+ * and streamed to the writer in their order as soon as they are ready: the whole document is never held in memory.
+ * Each section is computed once, however many formats it is rendered into.
+ */
+public class Report {
+
+    /* computes each section, called once per writing */
+    private final List<Supplier<ReportSection>> sections;
+
+    /* a single processor gets no speedup: CompletableFuture would start a thread per section then, so run them in place */
+    private static final Executor executor = ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : Runnable::run;
+
+    private static Logger logger = LoggerFactory.getLogger(Report.class);
+
+    public Report(List<Supplier<ReportSection>> sections) { this.sections = sections; }
+
+    /**
+     * @param writer – destination of the report, not closed by this method.
+     * */
+    public void writeTo(Writer writer, ReportFormat format) throws IOException { write(compute(), writer, format); }
+
+    /**
+     * Writes the report into a file per format, named after the format: directory/name.html, directory/name.json and so on.
+     * The directory is created if absent, the files are replaced if exist.
+     * */
+    public void writeTo(Path directory, String name, Collection<ReportFormat> formats) throws IOException {
+        Files.createDirectories(directory);
+        List<CompletableFuture<ReportSection>> computed = compute();
+        for (ReportFormat format : formats) {
+            Path path = directory.resolve(name + "." + format.getExtension());
+            logger.info("Generating report: " + path);
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                write(computed, writer, format);
+            }
+        }
+    }
+
+    private List<CompletableFuture<ReportSection>> compute() {
+        List<CompletableFuture<ReportSection>> computed = new ArrayList<>(sections.size());
+        for (Supplier<ReportSection> section : sections) { computed.add( CompletableFuture.supplyAsync(section, executor) ); }
+        return computed;
+    }
+
+    private void write(List<CompletableFuture<ReportSection>> computed, Writer writer, ReportFormat format) throws IOException {
+        List<CompletableFuture<String>> rendered = new ArrayList<>(computed.size());
+        for (CompletableFuture<ReportSection> section : computed) { rendered.add( section.thenApplyAsync(format::render, executor) ); }
+        writer.write(format.getHeader());
+        for (int i=0; i < rendered.size(); i++) {
+            if (i > 0) { writer.write(format.getSeparator()); }
+            writer.write( rendered.get(i).join() );
+        }
+        writer.write(format.getFooter());
+    }
+}
@@ -0,0 +1,52 @@
+package net.ivango.metrics;
+
+import com.github.rjeschke.txtmark.Processor;
+
+/**
+ * Output formats of the reports: html and markdown for reading, JSON and CSV for machine consumption.
+ */
+public enum ReportFormat {
+
+    HTML("html") {
+        @Override
+        String render(ReportSection section) { return Processor.process(section.toMarkdown()); }
+    },
+    MARKDOWN("md") {
+        @Override
+        String render(ReportSection section) { return section.toMarkdown(); }
+    },
+    /* an object with the array of the sections, each with the array of its metrics */
+    JSON("json") {
+        @Override
+        String render(ReportSection section) { return section.toJson(); }
+        @Override
+        String getHeader() { return "{\"sections\":[\n"; }
+        @Override
+        String getSeparator() { return ",\n"; }
+        @Override
+        String getFooter() { return "\n]}\n"; }
+    },
+    /* a line per metric */
+    CSV("csv") {
+        @Override
+        String render(ReportSection section) { return section.toCsv(); }
+        @Override
+        String getHeader() { return "section,entity,name,value,unit\n"; }
+    };
+
+    private final String extension;
+
+    ReportFormat(String extension) { this.extension = extension; }
+
+    /**
+     * @return file name extension of the format, without the dot.
+     * */
+    public String getExtension() { return extension; }
+
+    abstract String render(ReportSection section);
+
+    /* written before the first section, between the sections and after the last one */
+    String getHeader() { return ""; }
+    String getSeparator() { return ""; }
+    String getFooter() { return ""; }
+}
@@ -0,0 +1,131 @@
+package net.ivango.metrics;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A section of a report: a titled list of metrics, either of the whole run or of an entity such as a coffee machine.
+ * Holds the values rather than the text, so it may be rendered into any {@link ReportFormat}.
+ * Not thread-safe: built by a single thread, rendered once built.
+ */
+public class ReportSection {
+
+    /* a single metric: the entity is null for the metrics of the whole run */
+    private static class Metric {
+        private final String entity, name, unit, pattern;
+        private final Object value;
+
+        private Metric(String entity, String name, Object value, String unit, String pattern) {
+            this.entity = entity;
+            this.name = name;
+            this.value = value;
+            this.unit = unit;
+            this.pattern = pattern;
+        }
+
+        /* the value as shown in the text formats */
+        private String getText() {
+            String text = pattern != null ? String.format(pattern, value) : String.valueOf(value);
+            if (unit == null) { return text; }
+            return unit.equals("%") ? text + unit : text + " " + unit;
+        }
+    }
+
+    private final String title;
+    private final List<Metric> metrics = new ArrayList<>();
+    /* entity the metrics added next belong to, null for the whole run */
+    private String entity;
+
+    public ReportSection(String title) { this.title = title; }
+
+    /**
+     * Starts the metrics of an entity, e.g. "Coffee machine 1": the metrics added next belong to it.
+     * */
+    public ReportSection entity(String entity) {
+        this.entity = entity;
+        return this;
+    }
+
+    public ReportSection add(String name, Object value) { return add(name, value, null, null); }
+
+    public ReportSection add(String name, Object value, String unit) { return add(name, value, unit, null); }
+
+    /**
+     * @param value – a number or a text.
+     * @param unit – unit of the value, e.g. "milliseconds", null if none.
+     * @param pattern – format of the value in the text formats, e.g. "%.1f"; the machine-readable formats keep the exact value.
+     * */
+    public ReportSection add(String name, Object value, String unit, String pattern) {
+        metrics.add(new Metric(entity, name, value, unit, pattern));
+        return this;
+    }
+
+    public String getTitle() { return title; }
+
+    String toMarkdown() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# ").append(title).append("\n");
+        String current = null;
+        for (Metric metric : metrics) {
+            if (metric.entity != null && !metric.entity.equals(current)) {
+                if (current != null) { sb.append("\n\n"); }
+                sb.append("##").append(escape(metric.entity)).append("\n\n");
+                current = metric.entity;
+            }
+            sb.append(escape(metric.name)).append(": ").append(metric.value instanceof String ? escape(metric.getText()) : metric.getText()).append("\n\n");
+        }
+        if (current != null) { sb.append("\n\n"); }
+        return sb.toString();
+    }
+
+    /* escape the underscores of the enum and setting names: they are markdown emphasis otherwise */
+    private static String escape(String text) { return text.replace("_", "\\_"); }
+
+    String toJson() {
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            /* NaN and infinite values are written as is */
+            writer.setLenient(true);
+            writer.beginObject().name("title").value(title).name("metrics").beginArray();
+            for (Metric metric : metrics) {
+                writer.beginObject();
+                if (metric.entity != null) { writer.name("entity").value(metric.entity); }
+                writer.name("name").value(metric.name);
+                if (metric.value instanceof Number) {
+                    writer.name("value").value((Number) metric.value);
+                } else {
+                    writer.name("value").value(String.valueOf(metric.value));
+                }
+                if (metric.unit != null) { writer.name("unit").value(metric.unit); }
+                writer.endObject();
+            }
+            writer.endArray().endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * @return a line per metric: section, entity, name, value, unit.
+     * */
+    String toCsv() {
+        StringBuilder sb = new StringBuilder();
+        for (Metric metric : metrics) {
+            sb.append(csv(title)).append(',').append(csv(metric.entity)).append(',').append(csv(metric.name)).append(',')
+                    .append(csv(String.valueOf(metric.value))).append(',').append(csv(metric.unit)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static String csv(String field) {
+        if (field == null) { return ""; }
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) { return field; }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
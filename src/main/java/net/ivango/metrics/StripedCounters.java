@@ -0,0 +1,119 @@
+package net.ivango.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size array of long counters updated from multiple threads.
+ *
+ * The counters are split into stripes selected by the updating thread, so the concurrent writers rarely touch the same memory.
+ * Each update is a single lock-free atomic operation; the stripes are combined only when a value is read,
+ * which is supposed to happen once all the writers are complete (e.g. when a report is generated).
+ * A value read while the writers are running is approximate: the concurrent updates may be missed.
+ */
+class StripedCounters {
+
+    /* a power of two not less than twice the amount of cores: keeps the collisions between the writers rare */
+    static final int DEFAULT_STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+    private final int size;
+
+    /**
+     * @param size – amount of the counters.
+     * @param initialValue – initial value of each counter, e.g. Long.MAX_VALUE for the counters tracking a minimum.
+     * */
+    StripedCounters(int size, long initialValue) { this(size, initialValue, DEFAULT_STRIPES); }
+
+    /**
+     * @param stripeCount – amount of the copies of the counters, a power of two: 1 if updated by a single thread.
+     * */
+    StripedCounters(int size, long initialValue, int stripeCount) {
+        if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count should be a power of two: " + stripeCount);
+        }
+        stripes = new AtomicLongArray[stripeCount];
+        for (int i=0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(size);
+            for (int j=0; j < size; j++) { stripes[i].set(j, initialValue); }
+        }
+        this.mask = stripeCount - 1;
+        this.size = size;
+    }
+
+    int size() { return size; }
+
+    void add(int index, long delta) { stripe().getAndAdd(index, delta); }
+
+    void updateMin(int index, long value) { stripe().accumulateAndGet(index, value, Math::min); }
+
+    void updateMax(int index, long value) { stripe().accumulateAndGet(index, value, Math::max); }
+
+    long sum(int index) {
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) { sum += stripe.get(index); }
+        return sum;
+    }
+
+    long min(int index) {
+        long min = Long.MAX_VALUE;
+        for (AtomicLongArray stripe : stripes) { min = Math.min(min, stripe.get(index)); }
+        return min;
+    }
+
+    long max(int index) {
+        long max = Long.MIN_VALUE;
+        for (AtomicLongArray stripe : stripes) { max = Math.max(max, stripe.get(index)); }
+        return max;
+    }
+
+    /**
+     * Adds the sums of the other counters to these ones, starting from the given index.
+     * */
+    void addAll(StripedCounters other, int offset) {
+        for (int i=0; i < other.size; i++) { add(offset + i, other.sum(i)); }
+    }
+
+    /**
+     * Writes the sums of the counters: the non-zero ones only, most of the histogram buckets are empty.
+     * */
+    void writeTo(DataOutput out) throws IOException {
+        int nonZero = 0;
+        long[] sums = new long[size];
+        for (int i=0; i < size; i++) {
+            sums[i] = sum(i);
+            if (sums[i] != 0) { nonZero++; }
+        }
+        out.writeInt(size);
+        out.writeInt(nonZero);
+        for (int i=0; i < size; i++) {
+            if (sums[i] != 0) {
+                out.writeInt(i);
+                out.writeLong(sums[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds the sums written by {@link #writeTo(DataOutput)} to these counters.
+     * */
+    void addFrom(DataInput in) throws IOException {
+        if (in.readInt() != size) { throw new IOException("Counters size mismatch, expected " + size); }
+        int nonZero = in.readInt();
+        for (int i=0; i < nonZero; i++) {
+            int index = in.readInt();
+            if (index < 0 || index >= size) { throw new IOException("Counter index out of range: " + index); }
+            add(index, in.readLong());
+        }
+    }
+
+    private AtomicLongArray stripe() {
+        long id = Thread.currentThread().getId();
+        /* spread the sequential thread ids across the stripes */
+        int hash = (int) (id ^ (id >>> 16)) * 0x9E3779B9;
+        return stripes[(hash >>> 16) & mask];
+    }
+}
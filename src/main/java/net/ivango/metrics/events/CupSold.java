@@ -10,7 +10,17 @@ import net.ivango.entities.PaymentType;
 public class CupSold implements Event {
 
     private PaymentType paymentType;
+    private int cashRegisterNumber;
+    /* time in milliseconds the payment took */
+    private long paymentTime;
+
+    public CupSold(PaymentType paymentType, int cashRegisterNumber, long paymentTime) {
+        this.paymentType = paymentType;
+        this.cashRegisterNumber = cashRegisterNumber;
+        this.paymentTime = paymentTime;
+    }
 
-    public CupSold(PaymentType paymentType) { this.paymentType = paymentType; }
     public PaymentType getPaymentType() { return paymentType; }
+    public int getCashRegisterNumber() { return cashRegisterNumber; }
+    public long getPaymentTime() { return paymentTime; }
 }
@@ -0,0 +1,44 @@
+package net.ivango.metrics.events;
+
+import net.ivango.entities.Stage;
+
+/**
+ * Event used to track the customers who left without being serviced, see {@link net.ivango.components.QueuePolicy}.
+ */
+public class CustomerLost implements Event {
+
+    public enum Reason {
+        /* the queue was full */
+        BALKED,
+        /* waited for too long */
+        RENEGED
+    }
+
+    /* stage the customer was queueing for */
+    private Stage stage;
+    private Reason reason;
+    /* time in milliseconds spent in the queue before leaving */
+    private long waitTime;
+    /* number of the machine the customer was queueing for, StageCompleted.NO_COFFEE_MACHINE if none */
+    private int coffeeMachineNumber;
+
+    public CustomerLost(Stage stage, Reason reason, long waitTime) { this(stage, reason, waitTime, StageCompleted.NO_COFFEE_MACHINE); }
+
+    /**
+     * @param stage – stage the customer was queueing for.
+     * @param reason – why the customer left.
+     * @param waitTime – time in milliseconds spent in the queue before leaving.
+     * @param coffeeMachineNumber – number of the machine the customer was queueing for.
+     * */
+    public CustomerLost(Stage stage, Reason reason, long waitTime, int coffeeMachineNumber) {
+        this.stage = stage;
+        this.reason = reason;
+        this.waitTime = waitTime;
+        this.coffeeMachineNumber = coffeeMachineNumber;
+    }
+
+    public Stage getStage() { return stage; }
+    public Reason getReason() { return reason; }
+    public long getWaitTime() { return waitTime; }
+    public int getCoffeeMachineNumber() { return coffeeMachineNumber; }
+}
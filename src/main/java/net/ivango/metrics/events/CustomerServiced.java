@@ -1,8 +1,5 @@
 package net.ivango.metrics.events;
 
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
-
 /**
  * Event used to track the serviced customers.
  *
@@ -12,9 +9,16 @@ public class CustomerServiced implements Event {
     /* service time in milliseconds */
     private long serviceTime;
 
-    public CustomerServiced(LocalDateTime start, LocalDateTime end) {
-        this.serviceTime = ChronoUnit.MILLIS.between(start, end);
-    }
+    /**
+     * @param start – modeled time in milliseconds when the service started.
+     * @param end – modeled time in milliseconds when the service ended.
+     * */
+    public CustomerServiced(long start, long end) { this.serviceTime = end - start; }
+
+    /**
+     * @param serviceTime – service time in milliseconds, e.g. measured by a simulation clock.
+     * */
+    public CustomerServiced(long serviceTime) { this.serviceTime = serviceTime; }
 
     public long getServiceTime() { return serviceTime; }
 }
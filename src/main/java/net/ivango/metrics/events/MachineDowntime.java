@@ -0,0 +1,29 @@
+package net.ivango.metrics.events;
+
+/**
+ * Event used to track the time a coffee machine was offline, submitted once the downtime starts.
+ */
+public class MachineDowntime implements Event {
+
+    public enum Reason {
+        /* out of water, beans or milk */
+        REFILL,
+        /* a descaling cycle */
+        MAINTENANCE
+    }
+
+    private int coffeeMachineNumber;
+    private Reason reason;
+    /* time in milliseconds the machine is offline */
+    private long duration;
+
+    public MachineDowntime(int coffeeMachineNumber, Reason reason, long duration) {
+        this.coffeeMachineNumber = coffeeMachineNumber;
+        this.reason = reason;
+        this.duration = duration;
+    }
+
+    public int getCoffeeMachineNumber() { return coffeeMachineNumber; }
+    public Reason getReason() { return reason; }
+    public long getDuration() { return duration; }
+}
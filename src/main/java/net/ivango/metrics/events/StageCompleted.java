@@ -0,0 +1,51 @@
+package net.ivango.metrics.events;
+
+import net.ivango.entities.Stage;
+
+/**
+ * Event used to track the time a customer spent at a single stage:
+ * waiting in the queue and being serviced.
+ */
+public class StageCompleted implements Event {
+
+    /* used as the machine number for the stages served without a coffee machine */
+    public static final int NO_COFFEE_MACHINE = 0;
+
+    private Stage stage;
+    /* modeled time in milliseconds */
+    private long enqueued, started, completed;
+    /* number of the machine the stage was served at */
+    private int coffeeMachineNumber;
+
+    /**
+     * @param stage – completed stage.
+     * @param enqueued – modeled time when the customer joined the queue of this stage.
+     * @param started – modeled time when the customer left the queue and the service started.
+     * @param completed – modeled time when the service completed.
+     * */
+    public StageCompleted(Stage stage, long enqueued, long started, long completed) {
+        this(stage, enqueued, started, completed, NO_COFFEE_MACHINE);
+    }
+
+    /**
+     * @param coffeeMachineNumber – number of the machine the stage was served at.
+     * */
+    public StageCompleted(Stage stage, long enqueued, long started, long completed, int coffeeMachineNumber) {
+        this.stage = stage;
+        this.enqueued = enqueued;
+        this.started = started;
+        this.completed = completed;
+        this.coffeeMachineNumber = coffeeMachineNumber;
+    }
+
+    public Stage getStage() { return stage; }
+    public long getEnqueued() { return enqueued; }
+    public long getStarted() { return started; }
+    public long getCompleted() { return completed; }
+    public int getCoffeeMachineNumber() { return coffeeMachineNumber; }
+
+    /* time in milliseconds spent in the queue */
+    public long getWaitTime() { return started - enqueued; }
+    /* time in milliseconds spent being serviced */
+    public long getServiceTime() { return completed - started; }
+}
@@ -0,0 +1,82 @@
+package net.ivango.monitoring;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Serves the latest snapshot of a simulation in the Prometheus text exposition format
+ * at http://localhost:port/metrics. Listens at the loopback interface only.
+ */
+class PrometheusEndpoint {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final Supplier<SimulationSnapshot> snapshots;
+
+    PrometheusEndpoint(int port, Supplier<SimulationSnapshot> snapshots) throws IOException {
+        this.snapshots = snapshots;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+    }
+
+    int getPort() { return server.getAddress().getPort(); }
+
+    void stop() { server.stop(0); }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = format(snapshots.get()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    static String format(SimulationSnapshot snapshot) {
+        StringBuilder sb = new StringBuilder();
+        gauge(sb, "coffee_modeled_time_milliseconds", "Modeled time since the simulation start.");
+        sb.append("coffee_modeled_time_milliseconds ").append(snapshot.getModeledTime()).append('\n');
+
+        gauge(sb, "coffee_queue_length", "Customers waiting in the queue.");
+        sb.append("coffee_queue_length{queue=\"payment\"} ").append(snapshot.getPaymentQueueLength()).append('\n');
+        int[] dispenseQueueLengths = snapshot.getDispenseQueueLengths();
+        for (int i=0; i < dispenseQueueLengths.length; i++) {
+            sb.append("coffee_queue_length{queue=\"dispense\",machine=\"").append(i + 1).append("\"} ").append(dispenseQueueLengths[i]).append('\n');
+        }
+
+        gauge(sb, "coffee_machine_utilization", "Share of the last period the outlets of the coffee machine were serving the customers, averaged over the outlets.");
+        double[] utilization = snapshot.getCoffeeMachineUtilization();
+        for (int i=0; i < utilization.length; i++) {
+            sb.append("coffee_machine_utilization{machine=\"").append(i + 1).append("\"} ").append(number(utilization[i])).append('\n');
+        }
+
+        gauge(sb, "coffee_cups_per_second", "Cups dispensed per modeled second over the last period.");
+        sb.append("coffee_cups_per_second ").append(number(snapshot.getCupsPerSecond())).append('\n');
+
+        sb.append("# HELP coffee_customers_serviced_total Customers serviced since the simulation start.\n")
+                .append("# TYPE coffee_customers_serviced_total counter\n")
+                .append("coffee_customers_serviced_total ").append(snapshot.getCustomersServiced()).append('\n');
+
+        gauge(sb, "coffee_service_time_milliseconds", "Service time percentiles of the customers serviced over the last period.");
+        sb.append("coffee_service_time_milliseconds{quantile=\"0.5\"} ").append(snapshot.getServiceTimeP50()).append('\n');
+        sb.append("coffee_service_time_milliseconds{quantile=\"0.99\"} ").append(snapshot.getServiceTimeP99()).append('\n');
+        return sb.toString();
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" gauge\n");
+    }
+
+    private static String number(double value) { return String.format(Locale.ROOT, "%.4f", value); }
+}
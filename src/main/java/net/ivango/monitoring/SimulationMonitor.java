@@ -0,0 +1,169 @@
+package net.ivango.monitoring;
+
+import net.ivango.metrics.EventProcessor;
+import net.ivango.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes periodic snapshots of a running simulation, so a backlog building up is visible before the launch completes:
+ * queue lengths, coffee machines utilization averaged over the outlets, cups per second and the service time percentiles over the last period.
+ *
+ * The latest snapshot is logged and published as an MBean and, optionally, via a Prometheus HTTP endpoint.
+ *
+ * Usage:
+ *   try (SimulationMonitor monitor = new SimulationMonitor(coffeeModeling, 1000).registerMBean("coffee").start()) {
+ *       coffeeModeling.launch(customers);
+ *   }
+ */
+public class SimulationMonitor implements SimulationMonitorMBean, Closeable {
+
+    private final SimulationProbe probe;
+    /* real time in milliseconds between the snapshots */
+    private final long period;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simulation-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ObjectName objectName;
+    private PrometheusEndpoint prometheusEndpoint;
+
+    /* state at the previous snapshot, to calculate the rates over the period */
+    private long previousModeledTime, previousCupsDispensed;
+    private long[] previousBusyTime;
+    private long[] previousServiceTimeCounts;
+    private volatile SimulationSnapshot latestSnapshot;
+
+    private Logger logger = LoggerFactory.getLogger(SimulationMonitor.class);
+
+    /**
+     * @param probe – simulation to watch, e.g. a {@link net.ivango.CoffeeModeling}.
+     * @param period – real time in milliseconds between the snapshots.
+     * */
+    public SimulationMonitor(SimulationProbe probe, long period) {
+        if (period <= 0) { throw new IllegalArgumentException("Period should be positive: " + period); }
+        this.probe = probe;
+        this.period = period;
+        EventProcessor eventProcessor = probe.getEventProcessor();
+        this.previousBusyTime = new long[eventProcessor.getCoffeeMachinesCount()];
+        this.previousServiceTimeCounts = eventProcessor.getServiceTimeHistogram().getBucketCounts();
+        takeSnapshot();
+    }
+
+    /**
+     * Publishes the latest snapshot as an MBean of the platform MBean server.
+     *
+     * @param name – distinguishes the simulations watched at once.
+     * */
+    public SimulationMonitor registerMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        objectName = new ObjectName("net.ivango:type=SimulationMonitor,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        return this;
+    }
+
+    /**
+     * Serves the latest snapshot in the Prometheus text format at http://localhost:port/metrics.
+     *
+     * @param port – local port to listen at, 0 to pick a free one (see {@link #getHttpPort()}).
+     * */
+    public SimulationMonitor startHttpEndpoint(int port) throws IOException {
+        prometheusEndpoint = new PrometheusEndpoint(port, () -> latestSnapshot);
+        return this;
+    }
+
+    /**
+     * @return local port of the Prometheus endpoint, -1 if it is not started.
+     * */
+    public int getHttpPort() { return prometheusEndpoint != null ? prometheusEndpoint.getPort() : -1; }
+
+    /**
+     * Starts taking the periodic snapshots.
+     * */
+    public SimulationMonitor start() {
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                logger.info("Snapshot: " + takeSnapshot());
+            } catch (RuntimeException e) {
+                logger.error("Failed to take a snapshot: ", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public SimulationSnapshot getLatestSnapshot() { return latestSnapshot; }
+
+    /**
+     * Takes a snapshot of the current state; the rates and percentiles are calculated since the previous snapshot.
+     * The snapshot becomes the latest one.
+     * */
+    public synchronized SimulationSnapshot takeSnapshot() {
+        EventProcessor eventProcessor = probe.getEventProcessor();
+        int coffeeMachines = eventProcessor.getCoffeeMachinesCount();
+        long modeledTime = probe.getModeledTime();
+        long elapsed = modeledTime - previousModeledTime;
+
+        int[] dispenseQueueLengths = new int[coffeeMachines];
+        double[] utilization = new double[coffeeMachines];
+        for (int i=0; i < coffeeMachines; i++) {
+            dispenseQueueLengths[i] = probe.getDispenseQueueLength(i + 1);
+            long busyTime = eventProcessor.getCoffeeMachineBusyTime(i + 1);
+            /* the busy time is summed over the outlets: averaged over them like in the report.
+               It is counted when a stage completes, so a period may get slightly more than its share */
+            utilization[i] = elapsed > 0 ? Math.min(1.0, (double) (busyTime - previousBusyTime[i]) / eventProcessor.getCoffeeMachineOutlets(i + 1) / elapsed) : 0;
+            previousBusyTime[i] = busyTime;
+        }
+
+        long cupsDispensed = eventProcessor.getTotalCupsDispensed();
+        double cupsPerSecond = elapsed > 0 ? (cupsDispensed - previousCupsDispensed) * 1000.0 / elapsed : 0;
+
+        LatencyHistogram serviceTime = eventProcessor.getServiceTimeHistogram();
+        long p50 = serviceTime.getValueAtPercentileSince(previousServiceTimeCounts, 50);
+        long p99 = serviceTime.getValueAtPercentileSince(previousServiceTimeCounts, 99);
+
+        previousModeledTime = modeledTime;
+        previousCupsDispensed = cupsDispensed;
+        previousServiceTimeCounts = serviceTime.getBucketCounts();
+        latestSnapshot = new SimulationSnapshot(modeledTime, probe.getPaymentQueueLength(), dispenseQueueLengths, utilization,
+                cupsPerSecond, serviceTime.getCount(), p50, p99);
+        return latestSnapshot;
+    }
+
+    /**
+     * Stops taking the snapshots, unregisters the MBean and stops the HTTP endpoint.
+     * */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn("Failed to unregister the MBean " + objectName, e);
+            }
+        }
+        if (prometheusEndpoint != null) { prometheusEndpoint.stop(); }
+    }
+
+    /* MBean attributes: the latest snapshot */
+    @Override public long getModeledTime() { return latestSnapshot.getModeledTime(); }
+    @Override public int getPaymentQueueLength() { return latestSnapshot.getPaymentQueueLength(); }
+    @Override public int[] getDispenseQueueLengths() { return latestSnapshot.getDispenseQueueLengths(); }
+    @Override public double[] getCoffeeMachineUtilization() { return latestSnapshot.getCoffeeMachineUtilization(); }
+    @Override public double getCupsPerSecond() { return latestSnapshot.getCupsPerSecond(); }
+    @Override public long getCustomersServiced() { return latestSnapshot.getCustomersServiced(); }
+    @Override public long getServiceTimeP50() { return latestSnapshot.getServiceTimeP50(); }
+    @Override public long getServiceTimeP99() { return latestSnapshot.getServiceTimeP99(); }
+}
@@ -0,0 +1,16 @@
+package net.ivango.monitoring;
+
+/**
+ * JMX view of the latest {@link SimulationSnapshot}, e.g. to watch a running simulation in JConsole.
+ */
+public interface SimulationMonitorMBean {
+
+    long getModeledTime();
+    int getPaymentQueueLength();
+    int[] getDispenseQueueLengths();
+    double[] getCoffeeMachineUtilization();
+    double getCupsPerSecond();
+    long getCustomersServiced();
+    long getServiceTimeP50();
+    long getServiceTimeP99();
+}
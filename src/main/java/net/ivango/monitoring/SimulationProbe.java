@@ -0,0 +1,28 @@
+package net.ivango.monitoring;
+
+import net.ivango.metrics.EventProcessor;
+
+/**
+ * Exposes the current state of a running simulation to a {@link SimulationMonitor}.
+ * The methods are called from the monitoring thread while the simulation is running,
+ * so the returned values may be slightly out of date.
+ */
+public interface SimulationProbe {
+
+    EventProcessor getEventProcessor();
+
+    /**
+     * @return modeled time in milliseconds since the simulation start, 0 before the start.
+     * */
+    long getModeledTime();
+
+    /**
+     * @return amount of the customers waiting to pay.
+     * */
+    int getPaymentQueueLength();
+
+    /**
+     * @return amount of the customers waiting for the given coffee machine.
+     * */
+    int getDispenseQueueLength(int coffeeMachineNumber);
+}
@@ -0,0 +1,54 @@
+package net.ivango.monitoring;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * State of a running simulation at a moment: the queue lengths at the moment
+ * and the rates and latencies over the period since the previous snapshot.
+ */
+public class SimulationSnapshot {
+
+    /* modeled time in milliseconds since the simulation start */
+    private final long modeledTime;
+    private final int paymentQueueLength;
+    /* indexed by the coffee machine number - 1 */
+    private final int[] dispenseQueueLengths;
+    /* share of the period each machine was serving the customers, in [0, 1], indexed by the coffee machine number - 1 */
+    private final double[] coffeeMachineUtilization;
+    /* cups dispensed per modeled second over the period */
+    private final double cupsPerSecond;
+    private final long customersServiced;
+    /* service time percentiles in milliseconds of the customers serviced over the period */
+    private final long serviceTimeP50, serviceTimeP99;
+
+    public SimulationSnapshot(long modeledTime, int paymentQueueLength, int[] dispenseQueueLengths, double[] coffeeMachineUtilization,
+                              double cupsPerSecond, long customersServiced, long serviceTimeP50, long serviceTimeP99) {
+        this.modeledTime = modeledTime;
+        this.paymentQueueLength = paymentQueueLength;
+        this.dispenseQueueLengths = dispenseQueueLengths;
+        this.coffeeMachineUtilization = coffeeMachineUtilization;
+        this.cupsPerSecond = cupsPerSecond;
+        this.customersServiced = customersServiced;
+        this.serviceTimeP50 = serviceTimeP50;
+        this.serviceTimeP99 = serviceTimeP99;
+    }
+
+    public long getModeledTime() { return modeledTime; }
+    public int getPaymentQueueLength() { return paymentQueueLength; }
+    public int[] getDispenseQueueLengths() { return dispenseQueueLengths.clone(); }
+    public double[] getCoffeeMachineUtilization() { return coffeeMachineUtilization.clone(); }
+    public double getCupsPerSecond() { return cupsPerSecond; }
+    public long getCustomersServiced() { return customersServiced; }
+    public long getServiceTimeP50() { return serviceTimeP50; }
+    public long getServiceTimeP99() { return serviceTimeP99; }
+
+    @Override
+    public String toString() {
+        return String.format("modeled time: %d ms, payment queue: %d, dispense queues: %s, utilization: %s, cups/sec: %.2f, " +
+                        "serviced: %d, service time p50: %d ms, p99: %d ms",
+                modeledTime, paymentQueueLength, Arrays.toString(dispenseQueueLengths),
+                Arrays.stream(coffeeMachineUtilization).mapToObj(value -> String.format("%.2f", value)).collect(Collectors.joining(", ", "[", "]")),
+                cupsPerSecond, customersServiced, serviceTimeP50, serviceTimeP99);
+    }
+}
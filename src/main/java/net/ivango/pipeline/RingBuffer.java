@@ -0,0 +1,237 @@
+package net.ivango.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded queue of a fixed amount of pre-allocated slots, used to pass the customers from one stage to the next
+ * in the Disruptor style: no node is allocated per customer and neither the producers nor the consumers take a lock.
+ *
+ * Each slot has a sequence stamp telling whether it is free for the producer of the given sequence
+ * or published for its consumer: a producer or a consumer claims a sequence with a single CAS
+ * and hands the slot over with a single volatile write.
+ * A consumer claims all the published entries at once (up to the batch size) and frees each slot only
+ * as its entry is passed to the handler: the entries claimed but not handled yet keep their slots and are counted by {@link #size()},
+ * so the entries waiting in the buffer, a claimed batch included, never exceed the capacity.
+ *
+ * Waiting threads spin for a while and then block: they are only signalled if somebody is blocked,
+ * so a busy pipeline never touches the lock. Thread-safe for any amount of producers and consumers.
+ */
+public class RingBuffer<E> {
+
+    /**
+     * Processes an entry taken from the buffer.
+     * */
+    @FunctionalInterface
+    public interface Handler<E> {
+        void onEntry(E entry) throws InterruptedException;
+    }
+
+    /* iterations to spin before blocking: a busy pipeline hands the entries over without parking the threads.
+       No spinning on a single processor: the thread to make the progress cannot run while this one spins */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+
+    private final Object[] entries;
+    /* the slot is free for the producer of sequence s if its stamp is 2s, published for the consumer if 2s + 1:
+       the doubling keeps "published for s" apart from "free for s + 1" in a ring of a single slot */
+    private final AtomicLongArray stamps;
+    private final int capacity;
+    /* next sequences to produce and to consume */
+    private final AtomicLong tail = new AtomicLong(), head = new AtomicLong();
+    /* entries claimed by the consumers but not passed to their handlers yet: they still wait in the buffer */
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    /* blocked threads wait for any progress: either an entry published or a slot freed */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
+    private final AtomicInteger blocked = new AtomicInteger();
+
+    /**
+     * @param capacity – amount of the slots: the maximum amount of the entries waiting in the buffer.
+     * */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) { throw new IllegalArgumentException("Capacity should be positive: " + capacity); }
+        this.capacity = capacity;
+        entries = new Object[capacity];
+        stamps = new AtomicLongArray(capacity);
+        for (int i=0; i < capacity; i++) { stamps.set(i, 2L * i); }
+    }
+
+    /* a division instead of a mask: the capacity is the configured queue capacity, not necessarily a power of two */
+    private int index(long sequence) { return (int) (sequence % capacity); }
+
+    /**
+     * Adds the entry if there is a free slot.
+     *
+     * @return false if the buffer is full.
+     * */
+    public boolean offer(E entry) {
+        long sequence = tail.get();
+        while (true) {
+            int index = index(sequence);
+            long stamp = stamps.get(index);
+            if (stamp == 2 * sequence) {
+                if ( tail.compareAndSet(sequence, sequence + 1) ) {
+                    entries[index] = entry;
+                    /* publish: the entry write happens-before the consumer reading the stamp */
+                    stamps.set(index, 2 * sequence + 1);
+                    signal();
+                    return true;
+                }
+                sequence = tail.get();
+            } else if (stamp < 2 * sequence) {
+                /* the slot still holds the entry of the previous lap */
+                return false;
+            } else {
+                /* another producer has claimed this sequence */
+                sequence = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Adds the entry, waiting for a free slot if the buffer is full.
+     * */
+    public void put(E entry) throws InterruptedException {
+        for (int spins = 0; !offer(entry); spins++) {
+            if (spins < SPINS) {
+                if ( Thread.interrupted() ) { throw new InterruptedException(); }
+                Thread.onSpinWait();
+            } else {
+                awaitProgress(this::isFull);
+                spins = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds the entry, waiting up to the given time for a free slot if the buffer is full.
+     *
+     * @return false if the buffer is still full once the time is out.
+     * */
+    public boolean offer(E entry, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int spins = 0; !offer(entry); spins++) {
+            if (spins < SPINS) {
+                if ( Thread.interrupted() ) { throw new InterruptedException(); }
+                Thread.onSpinWait();
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) { return false; }
+                awaitProgress(this::isFull, remaining);
+                spins = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Claims the published entries, up to the batch size, and passes them to the handler one by one
+     * without waiting.
+     *
+     * @return amount of the processed entries, 0 if the buffer is empty.
+     * */
+    public int poll(Handler<? super E> handler, int maxBatch) throws InterruptedException {
+        long sequence;
+        int batch;
+        while (true) {
+            sequence = head.get();
+            batch = 0;
+            while ( batch < maxBatch && stamps.get(index(sequence + batch)) == 2 * (sequence + batch) + 1 ) { batch++; }
+            if (batch == 0) { return 0; }
+            if ( head.compareAndSet(sequence, sequence + batch) ) { break; }
+        }
+        claimed.addAndGet(batch);
+        for (int i=0; i < batch; i++) {
+            int index = index(sequence + i);
+            @SuppressWarnings("unchecked")
+            E entry = (E) entries[index];
+            entries[index] = null;
+            /* free the slot for the producer of the next lap once its entry leaves the buffer for the handler:
+               the rest of the batch keeps its slots */
+            claimed.decrementAndGet();
+            stamps.set(index, 2 * (sequence + i + capacity));
+            signal();
+            handler.onEntry(entry);
+        }
+        return batch;
+    }
+
+    /**
+     * Claims the published entries, up to the batch size, and passes them to the handler one by one,
+     * waiting for an entry if the buffer is empty.
+     *
+     * @return amount of the processed entries, at least 1.
+     * */
+    public int take(Handler<? super E> handler, int maxBatch) throws InterruptedException {
+        for (int spins = 0; ; spins++) {
+            int processed = poll(handler, maxBatch);
+            if (processed > 0) { return processed; }
+            if (spins < SPINS) {
+                if ( Thread.interrupted() ) { throw new InterruptedException(); }
+                Thread.onSpinWait();
+            } else {
+                awaitProgress(this::isEmpty);
+                spins = 0;
+            }
+        }
+    }
+
+    /**
+     * @return amount of the entries waiting in the buffer, the ones claimed by the consumers but not handled yet included.
+     * Approximate while the buffer is in use.
+     * */
+    public int size() { return (int) Math.max(0, Math.min(capacity, tail.get() - head.get() + claimed.get())); }
+
+    public int capacity() { return capacity; }
+
+    private boolean isEmpty() {
+        long sequence = head.get();
+        return stamps.get(index(sequence)) != 2 * sequence + 1;
+    }
+
+    private boolean isFull() {
+        long sequence = tail.get();
+        return stamps.get(index(sequence)) < 2 * sequence;
+    }
+
+    /**
+     * Blocks the current thread while the condition holds.
+     * */
+    private void awaitProgress(BooleanSupplier stillWaiting) throws InterruptedException { awaitProgress(stillWaiting, Long.MAX_VALUE); }
+
+    /**
+     * Blocks the current thread while the condition holds, up to the given time in nanoseconds.
+     * The blocked counter is raised before the condition is checked again:
+     * a thread making progress either sees the counter and signals or its progress is seen here.
+     * */
+    private void awaitProgress(BooleanSupplier stillWaiting, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            blocked.incrementAndGet();
+            try {
+                while ( stillWaiting.getAsBoolean() && nanos > 0 ) { nanos = progress.awaitNanos(nanos); }
+            } finally {
+                blocked.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signal() {
+        if (blocked.get() > 0) {
+            lock.lock();
+            try {
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
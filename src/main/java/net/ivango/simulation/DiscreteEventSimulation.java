@@ -0,0 +1,117 @@
+package net.ivango.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A single-threaded discrete-event simulation engine:
+ * keeps a priority queue of timestamped events and executes them in the time order,
+ * moving the virtual clock from one event to the next instead of waiting.
+ *
+ * Not thread-safe: events should be scheduled either before calling run()
+ * or from the actions executed by the engine itself.
+ */
+public class DiscreteEventSimulation {
+
+    private final SimulationClock clock = new SimulationClock();
+    private final PriorityQueue<ScheduledEvent> events = new PriorityQueue<>();
+    private long sequence;
+
+    public SimulationClock getClock() { return clock; }
+
+    /**
+     * Schedules an action to be executed after the given delay.
+     *
+     * @param delay – delay in virtual milliseconds relative to the current simulation time.
+     * @param action – action to execute.
+     * */
+    public void schedule(long delay, Runnable action) { scheduleEvent(delay, action, false); }
+
+    /**
+     * Schedules the timeout of a resource request.
+     *
+     * @return the scheduled event, e.g. to cancel it later.
+     * */
+    ScheduledEvent scheduleTimeout(long delay, Runnable action) { return scheduleEvent(delay, action, true); }
+
+    private ScheduledEvent scheduleEvent(long delay, Runnable action, boolean timeout) {
+        if (delay < 0) { throw new IllegalArgumentException("Negative delay: " + delay); }
+        return addEvent(clock.currentTimeMillis() + delay, sequence++, action, timeout);
+    }
+
+    private ScheduledEvent addEvent(long time, long sequence, Runnable action, boolean timeout) {
+        ScheduledEvent event = new ScheduledEvent(time, sequence, action, timeout);
+        events.add(event);
+        return event;
+    }
+
+    /**
+     * @return the events to execute in the execution order, e.g. to store them in a checkpoint.
+     * The timeouts of the resource requests are left out: they are stored along with the requests, see {@link Resource#getWaiting()}.
+     * */
+    public List<ScheduledEvent> getPendingEvents() {
+        List<ScheduledEvent> pending = new ArrayList<>();
+        for (ScheduledEvent event : events) {
+            if ( !event.isCancelled() && !event.isTimeout() ) { pending.add(event); }
+        }
+        Collections.sort(pending);
+        return pending;
+    }
+
+    /**
+     * @return sequence number of the next event to schedule, stored in a checkpoint to keep the execution order of the events.
+     * */
+    public long getSequence() { return sequence; }
+
+    /**
+     * Moves the clock forward with no events scheduled, e.g. to resume a simulation from a checkpoint.
+     *
+     * @param time – virtual time in milliseconds, must not be in the past.
+     * @param sequence – sequence number of the next event to schedule, see {@link #getSequence()}.
+     * */
+    public void resumeAt(long time, long sequence) {
+        if ( !events.isEmpty() ) { throw new IllegalStateException("Can not resume a simulation with events scheduled"); }
+        clock.advanceTo(time);
+        this.sequence = sequence;
+    }
+
+    /**
+     * Schedules an event stored in a checkpoint, keeping its place in the execution order.
+     * */
+    public void restore(long time, long sequence, Runnable action) { restoreEvent(time, sequence, action, false); }
+
+    ScheduledEvent restoreTimeout(long time, long sequence, Runnable action) { return restoreEvent(time, sequence, action, true); }
+
+    private ScheduledEvent restoreEvent(long time, long sequence, Runnable action, boolean timeout) {
+        if (time < clock.currentTimeMillis() || sequence >= this.sequence) {
+            throw new IllegalArgumentException("Event out of the checkpoint: " + time + " ms, sequence " + sequence);
+        }
+        return addEvent(time, sequence, action, timeout);
+    }
+
+    /**
+     * Executes all the scheduled events (including the ones scheduled during the execution)
+     * until the event queue is empty.
+     * */
+    public void run() {
+        while ( runNext() ) {}
+    }
+
+    /**
+     * Executes the next scheduled event, e.g. to checkpoint the simulation in between the events.
+     *
+     * @return false if there are no events left.
+     * */
+    public boolean runNext() {
+        while ( !events.isEmpty() ) {
+            ScheduledEvent event = events.poll();
+            if ( event.isCancelled() ) { continue; }
+            clock.advanceTo(event.getTime());
+            event.getAction().run();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,148 @@
+package net.ivango.simulation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * A resource with a limited capacity (e.g. cash desks or coffee machines) used in a discrete-event simulation.
+ * Requests which can not be granted immediately are queued in the FIFO order.
+ */
+public class Resource {
+
+    private final DiscreteEventSimulation simulation;
+    private final int capacity;
+    /* amount of units currently in use */
+    private int busy;
+    private final Queue<Request> waiting = new ArrayDeque<>();
+
+    /**
+     * A queued request: the timeout event and action are absent if the request waits for as long as needed.
+     * */
+    public static class Request {
+        private final Runnable onAcquired, onTimeout;
+        private ScheduledEvent timeout;
+
+        private Request(Runnable onAcquired, Runnable onTimeout) {
+            this.onAcquired = onAcquired;
+            this.onTimeout = onTimeout;
+        }
+
+        public Runnable getOnAcquired() { return onAcquired; }
+        public Runnable getOnTimeout() { return onTimeout; }
+        public ScheduledEvent getTimeout() { return timeout; }
+    }
+
+    public Resource(DiscreteEventSimulation simulation, int capacity) {
+        if (capacity <= 0) { throw new IllegalArgumentException("Resource capacity should be positive: " + capacity); }
+        this.simulation = simulation;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Requests a unit of this resource.
+     *
+     * @param onAcquired – action to execute once the unit is granted.
+     * */
+    public void acquire(Runnable onAcquired) {
+        if (busy < capacity) {
+            busy++;
+            onAcquired.run();
+        } else {
+            waiting.add(new Request(onAcquired, null));
+        }
+    }
+
+    /**
+     * Requests a unit of this resource, waiting for it no longer than the given time.
+     *
+     * @param onAcquired – action to execute once the unit is granted.
+     * @param timeout – virtual milliseconds to wait for the unit.
+     * @param onTimeout – action to execute if the unit is not granted in time: the request is withdrawn.
+     * */
+    public void acquire(Runnable onAcquired, long timeout, Runnable onTimeout) {
+        if (busy < capacity) {
+            busy++;
+            onAcquired.run();
+            return;
+        }
+        Request request = new Request(onAcquired, onTimeout);
+        waiting.add(request);
+        request.timeout = simulation.scheduleTimeout(timeout, () -> withdraw(request));
+    }
+
+    private void withdraw(Request request) {
+        waiting.remove(request);
+        request.onTimeout.run();
+    }
+
+    /**
+     * Requests a unit of this resource only if it is available right now.
+     *
+     * @return true if the unit is granted.
+     * */
+    public boolean tryAcquire() {
+        if (busy < capacity) {
+            busy++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a unit of this resource: it is handed over to the next waiting request if any.
+     * */
+    public void release() {
+        Request next = waiting.poll();
+        if (next != null) {
+            if (next.timeout != null) { next.timeout.cancel(); }
+            /* the unit stays busy: it is passed directly to the next request */
+            simulation.schedule(0, next.onAcquired);
+        } else {
+            busy--;
+        }
+    }
+
+    public int getQueueLength() { return waiting.size(); }
+
+    /* amount of units currently in use */
+    public int getBusy() { return busy; }
+
+    /**
+     * @return the queued requests in the FIFO order, e.g. to store them in a checkpoint.
+     * */
+    public List<Request> getWaiting() { return new ArrayList<>(waiting); }
+
+    /**
+     * Restores the units in use stored in a checkpoint, before the queued requests.
+     * */
+    public void restore(int busy) {
+        if (busy < 0 || busy > capacity || !waiting.isEmpty()) { throw new IllegalStateException("Can not restore " + busy + " units in use"); }
+        this.busy = busy;
+    }
+
+    /**
+     * Queues a request stored in a checkpoint, waiting for as long as needed.
+     * The requests should be restored in the FIFO order, once the units in use are.
+     * */
+    public void restoreRequest(Runnable onAcquired) { restoreRequest(onAcquired, null); }
+
+    /**
+     * Queues a request stored in a checkpoint along with its timeout event.
+     *
+     * @param timeoutTime – virtual time in milliseconds the request times out at.
+     * @param timeoutSequence – sequence number of the timeout event, see {@link ScheduledEvent#getSequence()}.
+     * */
+    public void restoreRequest(Runnable onAcquired, long timeoutTime, long timeoutSequence, Runnable onTimeout) {
+        Request request = restoreRequest(onAcquired, onTimeout);
+        request.timeout = simulation.restoreTimeout(timeoutTime, timeoutSequence, () -> withdraw(request));
+    }
+
+    private Request restoreRequest(Runnable onAcquired, Runnable onTimeout) {
+        if (busy < capacity) { throw new IllegalStateException("A request is queued while a unit is available"); }
+        Request request = new Request(onAcquired, onTimeout);
+        waiting.add(request);
+        return request;
+    }
+}
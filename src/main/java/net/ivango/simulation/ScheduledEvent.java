@@ -0,0 +1,37 @@
+package net.ivango.simulation;
+
+/**
+ * An action scheduled for execution at some point of the virtual time.
+ * Events with the same timestamp are executed in the order they were scheduled.
+ */
+public class ScheduledEvent implements Comparable<ScheduledEvent> {
+
+    private final long time;
+    /* tie-breaker to keep the execution order stable */
+    private final long sequence;
+    private final Runnable action;
+    /* the timeout of a resource request: it is stored in a checkpoint along with the request, see Resource */
+    private final boolean timeout;
+    /* a cancelled event is dropped without moving the clock */
+    private boolean cancelled;
+
+    ScheduledEvent(long time, long sequence, Runnable action, boolean timeout) {
+        this.time = time;
+        this.sequence = sequence;
+        this.action = action;
+        this.timeout = timeout;
+    }
+
+    public long getTime() { return time; }
+    public long getSequence() { return sequence; }
+    public Runnable getAction() { return action; }
+    boolean isTimeout() { return timeout; }
+    boolean isCancelled() { return cancelled; }
+    void cancel() { cancelled = true; }
+
+    @Override
+    public int compareTo(ScheduledEvent other) {
+        int byTime = Long.compare(time, other.time);
+        return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+    }
+}
@@ -0,0 +1,37 @@
+package net.ivango.simulation;
+
+import net.ivango.clock.Clock;
+
+/**
+ * Virtual clock of a discrete-event simulation.
+ * The time is measured in milliseconds since the simulation start
+ * and only moves forward when the next scheduled event is executed.
+ */
+public class SimulationClock implements Clock {
+
+    /* current virtual time in milliseconds: volatile to be watched from another thread, e.g. by a monitor */
+    private volatile long now;
+
+    @Override
+    public long currentTimeMillis() { return now; }
+
+    /**
+     * Virtual time can not be waited for: the delays should be scheduled as simulation events instead.
+     * */
+    @Override
+    public void sleep(long millis) {
+        throw new UnsupportedOperationException("Virtual time only advances through scheduled simulation events");
+    }
+
+    /**
+     * Moves the clock forward to the given point in time.
+     *
+     * @param time – virtual time in milliseconds, must not be in the past.
+     * */
+    void advanceTo(long time) {
+        if (time < now) {
+            throw new IllegalStateException("Simulation clock can not go backwards: " + time + " < " + now);
+        }
+        this.now = time;
+    }
+}
@@ -0,0 +1,378 @@
+package net.ivango.sweep;
+
+import net.ivango.DiscreteEventModeling;
+import net.ivango.arrivals.ArrivalProcess;
+import net.ivango.clock.RealTimeClock;
+import net.ivango.components.DispatchPolicy;
+import net.ivango.components.QueueFiller;
+import net.ivango.components.QueuePolicy;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import net.ivango.config.Properties;
+import net.ivango.metrics.LatencyHistogram;
+import net.ivango.metrics.Report;
+import net.ivango.metrics.ReportFormat;
+import net.ivango.metrics.ReportSection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Explores the configurations of the coffee-drinking process, e.g. to find the cheapest staffing that meets an SLA:
+ * every combination of the varied settings is simulated independently and a single comparative report is generated.
+ *
+ * The simulations are run concurrently on a fork-join pool, one simulation per task.
+ * Each simulation gets its own {@link Config} and runs in the virtual time of {@link DiscreteEventModeling}:
+ * it is single-threaded and never blocks, so the pool keeps all the cores busy.
+ * All the configurations are simulated with the same seed: they serve the same customers arriving at the same moments,
+ * so the differences of the results are caused by the settings rather than by the chance.
+ * A long sweep may store the results of the configurations as they complete, see {@link #withCheckpoint(Path)}.
+ * The dispatch policy may be varied as well, see {@link #varyDispatchPolicy(DispatchPolicy...)}:
+ * the report then compares the policies for each combination of the settings.
+ *
+ * Usage:
+ *   List<SweepResult> results = new ParameterSweep(Config.load())
+ *           .vary(PAYMENT_PARALLELISM, 1, 5, 1)
+ *           .vary(PICK_COFFEE_PARALLELISM, 1, 4, 1)
+ *           .run(10000, random -> new PoissonArrivals(60, random));
+ */
+public class ParameterSweep {
+
+    /* returned by getServiceTimeSla() if no SLA is set */
+    public static final long NO_SLA = -1;
+
+    /* settings not varied by the sweep */
+    private final Config baseConfig;
+    /* values of the varied settings, in the order they were added */
+    private final Map<Properties, int[]> ranges = new LinkedHashMap<>();
+    /* dispatch policies to simulate each combination of the settings with */
+    private List<DispatchPolicy> dispatchPolicies = Collections.singletonList(StandardDispatchPolicy.RANDOM);
+    private QueuePolicy queuePolicy = QueuePolicy.BLOCK;
+    /* the 99.0 percentile of the service time in milliseconds a configuration should meet */
+    private long serviceTimeSla = NO_SLA;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    /* master seed of all the simulations, random unless set */
+    private long seed = new SplittableRandom().nextLong();
+    /* file storing the results of the simulated configurations, none if null */
+    private Path checkpointPath;
+    /* results of the simulated configurations by their dispatch policy and settings, in the order of completion: guarded by itself */
+    private final Map<List<Object>, SweepResult> completed = new LinkedHashMap<>();
+    /* serializes the checkpoint writes, amount of the results in the last one written: guarded by checkpointLock */
+    private final Object checkpointLock = new Object();
+    private int checkpointed;
+    private static final int CHECKPOINT_MAGIC = 0x53575054, CHECKPOINT_VERSION = 2;
+
+    /* file name of the sweep reports, without the extension */
+    private final static String reportName = "sweep-report";
+    /* directory to store the sweep reports in and the formats to store them in */
+    private Path reportDirectory = Paths.get("target");
+    private Set<ReportFormat> reportFormats = EnumSet.of(ReportFormat.HTML);
+
+    private Logger logger = LoggerFactory.getLogger(ParameterSweep.class);
+
+    public ParameterSweep(Config baseConfig) { this.baseConfig = baseConfig; }
+
+    /**
+     * Varies the setting in the given range.
+     *
+     * @param from – first value, inclusive.
+     * @param to – last value, inclusive.
+     * @param step – positive difference between the consecutive values.
+     * */
+    public ParameterSweep vary(Properties property, int from, int to, int step) {
+        if (step <= 0) { throw new IllegalArgumentException("The step should be positive: " + step); }
+        return vary(property, IntStream.iterate(from, value -> value + step).limit(from <= to ? (to - from) / step + 1 : 0).toArray());
+    }
+
+    /**
+     * Varies the setting over the given values.
+     * */
+    public ParameterSweep vary(Properties property, int... values) {
+        if (values.length == 0) { throw new IllegalArgumentException("No values to sweep for " + property); }
+        ranges.put(property, values.clone());
+        return this;
+    }
+
+    public ParameterSweep withDispatchPolicy(DispatchPolicy dispatchPolicy) {
+        this.dispatchPolicies = Collections.singletonList(dispatchPolicy);
+        return this;
+    }
+
+    /**
+     * Simulates each combination of the varied settings with each of the given dispatch policies, to compare the policies.
+     * The policies are told apart by their names.
+     * */
+    public ParameterSweep varyDispatchPolicy(DispatchPolicy... dispatchPolicies) {
+        if (dispatchPolicies.length == 0) { throw new IllegalArgumentException("No dispatch policies to sweep"); }
+        this.dispatchPolicies = Arrays.asList(dispatchPolicies.clone());
+        return this;
+    }
+
+    /**
+     * @param queuePolicy – defines what the customers do when a queue is full, see the queue capacities of the config.
+     * */
+    public ParameterSweep withQueuePolicy(QueuePolicy queuePolicy) {
+        this.queuePolicy = queuePolicy;
+        return this;
+    }
+
+    /**
+     * @param p99ServiceTime – the 99.0 percentile of the service time in milliseconds a configuration should meet.
+     *                       Shown in the report only.
+     * */
+    public ParameterSweep withServiceTimeSla(long p99ServiceTime) {
+        this.serviceTimeSla = p99ServiceTime;
+        return this;
+    }
+
+    /**
+     * @param parallelism – amount of simulations to run at once, the amount of processors by default.
+     * */
+    public ParameterSweep withParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param seed – master seed of the simulations: a sweep with the same seed and settings produces the same results.
+     * */
+    public ParameterSweep withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param checkpointPath – file to store the results of the configurations as they complete, e.g. target/sweep.checkpoint.
+     *                       If it exists, the sweep resumes from it: the configurations already simulated are not simulated again.
+     *                       The sweep should have the same seed, base settings, queue policy and arrival process.
+     * */
+    public ParameterSweep withCheckpoint(Path checkpointPath) {
+        this.checkpointPath = checkpointPath;
+        return this;
+    }
+
+    /**
+     * @param reportDirectory – directory to store the reports in, "target" by default.
+     * */
+    public ParameterSweep withReportDirectory(Path reportDirectory) {
+        this.reportDirectory = reportDirectory;
+        return this;
+    }
+
+    /**
+     * @param reportFormats – formats to store the reports in, a file per format; html by default.
+     * */
+    public ParameterSweep withReportFormats(ReportFormat... reportFormats) {
+        if (reportFormats.length == 0) { throw new IllegalArgumentException("At least one report format expected"); }
+        this.reportFormats = EnumSet.copyOf(Arrays.asList(reportFormats));
+        return this;
+    }
+
+    public long getServiceTimeSla() { return serviceTimeSla; }
+    public long getSeed() { return seed; }
+
+    /**
+     * Simulates each combination of the varied settings.
+     *
+     * @param customers – amount of random customers to serve in each simulation.
+     * @param arrivalProcessFactory – creates the arrival process for each simulation from the given random stream:
+     *                              the processes are stateful and must not be shared.
+     * @return results in the order of the combinations: the dispatch policy changes the slowest, the last varied setting the fastest.
+     * */
+    public List<SweepResult> run(long customers, Function<SplittableRandom, ArrivalProcess> arrivalProcessFactory) {
+        List<Map<Properties, Integer>> combinations = getCombinations();
+        logger.info("Sweeping " + combinations.size() * dispatchPolicies.size() + " configurations, " + customers + " customers each");
+        if (checkpointPath != null && Files.exists(checkpointPath)) { readCheckpoint(customers); }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<SweepResult>> tasks = new ArrayList<>();
+            for (DispatchPolicy dispatchPolicy : dispatchPolicies) {
+                for (Map<Properties, Integer> settings : combinations) {
+                    tasks.add( pool.submit(() -> {
+                        SweepResult result = getCompleted(dispatchPolicy, settings);
+                        return result != null ? result : complete( simulate(dispatchPolicy, settings, customers, arrivalProcessFactory), customers );
+                    }) );
+                }
+            }
+            return tasks.stream().map(ForkJoinTask::join).collect(Collectors.toList());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs a single simulation with its own settings.
+     * */
+    private SweepResult simulate(DispatchPolicy dispatchPolicy, Map<Properties, Integer> settings, long customers,
+                                 Function<SplittableRandom, ArrivalProcess> arrivalProcessFactory) {
+        Config config = baseConfig.with(settings);
+        /* the streams are split in the same order by each simulation */
+        SplittableRandom random = new SplittableRandom(seed);
+        QueueFiller queueFiller = new QueueFiller(RealTimeClock.INSTANCE, config, random.split());
+        ArrivalProcess arrivalProcess = arrivalProcessFactory.apply(random.split());
+
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, dispatchPolicy);
+        dem.setQueuePolicy(queuePolicy);
+        dem.simulate(queueFiller.streamRandomCustomers(customers), arrivalProcess);
+
+        LatencyHistogram serviceTime = dem.getEventProcessor().getServiceTimeHistogram();
+        return new SweepResult(dispatchPolicy, settings, dem.getEventProcessor().getThroughput(),
+                serviceTime.getMean(), serviceTime.getValueAtPercentile(99), serviceTime.getCount(), dem.getEventProcessor().getTotalCustomersLost());
+    }
+
+    private SweepResult getCompleted(DispatchPolicy dispatchPolicy, Map<Properties, Integer> settings) {
+        synchronized (completed) { return completed.get( Arrays.asList(dispatchPolicy, settings) ); }
+    }
+
+    /**
+     * Tracks the result of a configuration and rewrites the checkpoint with it if any.
+     * The results are copied under the lock and written outside it: the other simulations complete meanwhile.
+     * */
+    private SweepResult complete(SweepResult result, long customers) {
+        if (checkpointPath == null) { return result; }
+        List<SweepResult> results;
+        synchronized (completed) {
+            completed.put(Arrays.asList(result.getDispatchPolicy(), result.getSettings()), result);
+            results = new ArrayList<>( completed.values() );
+        }
+        synchronized (checkpointLock) {
+            /* the results only grow: a writer done meanwhile may have already stored these ones */
+            if (results.size() <= checkpointed) { return result; }
+            try {
+                writeCheckpoint(results, customers);
+                checkpointed = results.size();
+            } catch (IOException e) {
+                logger.error("Failed to write the sweep checkpoint: ", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the checkpoint next to its file and moves it in place: a sweep dying meanwhile keeps the previous checkpoint.
+     * */
+    private void writeCheckpoint(List<SweepResult> results, long customers) throws IOException {
+        Path temporary = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeUTF(getCheckpointScenario(customers));
+            out.writeInt(results.size());
+            for (SweepResult result : results) { result.writeTo(out); }
+        }
+        Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readCheckpoint(long customers) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointPath)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) { throw new IOException("Not a sweep checkpoint"); }
+            if ( !in.readUTF().equals(getCheckpointScenario(customers)) ) {
+                throw new IllegalStateException("Checkpoint of another sweep: " + checkpointPath);
+            }
+            int size = in.readInt();
+            synchronized (completed) {
+                for (int i=0; i < size; i++) {
+                    /* the results of the dispatch policies no longer swept are dropped */
+                    SweepResult result = SweepResult.readFrom(in, dispatchPolicies);
+                    if (result != null) { completed.put(Arrays.asList(result.getDispatchPolicy(), result.getSettings()), result); }
+                }
+            }
+            logger.info("Resuming the sweep, configurations already simulated: " + size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the sweep checkpoint " + checkpointPath, e);
+        }
+    }
+
+    /* everything but the varied settings and the dispatch policy a result depends on, the arrival process aside */
+    private String getCheckpointScenario(long customers) {
+        return baseConfig + ", " + queuePolicy + ", seed " + seed + ", " + customers + " customers";
+    }
+
+    /**
+     * @return the cartesian product of the varied settings.
+     * */
+    private List<Map<Properties, Integer>> getCombinations() {
+        List<Map<Properties, Integer>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (Map.Entry<Properties, int[]> range : ranges.entrySet()) {
+            List<Map<Properties, Integer>> extended = new ArrayList<>();
+            for (Map<Properties, Integer> combination : combinations) {
+                for (int value : range.getValue()) {
+                    Map<Properties, Integer> settings = new LinkedHashMap<>(combination);
+                    settings.put(range.getKey(), value);
+                    extended.add(settings);
+                }
+            }
+            combinations = extended;
+        }
+        return combinations;
+    }
+
+    /**
+     * Generates the comparative report and stores it in a file per report format.
+     * */
+    public void processResults(List<SweepResult> results) {
+        try {
+            getReport(results).writeTo(reportDirectory, reportName, reportFormats);
+        } catch (Exception e) {
+            logger.error("Error during report generation: ", e);
+        }
+    }
+
+    /**
+     * Writes the comparative html report: throughput and service time per configuration and dispatch policy.
+     * */
+    public void writeReport(List<SweepResult> results, Writer writer) throws IOException { writeReport(results, writer, ReportFormat.HTML); }
+
+    /**
+     * Writes the comparative report in the given format.
+     * */
+    public void writeReport(List<SweepResult> results, Writer writer, ReportFormat format) throws IOException {
+        getReport(results).writeTo(writer, format);
+    }
+
+    private Report getReport(List<SweepResult> results) {
+        return new Report(Collections.singletonList(() -> getSweepStats(results)));
+    }
+
+    private ReportSection getSweepStats(List<SweepResult> results) {
+        ReportSection section = new ReportSection("Parameter sweep")
+                .add(dispatchPolicies.size() > 1 ? "Dispatch policies" : "Dispatch policy",
+                        dispatchPolicies.stream().map(Object::toString).collect(Collectors.joining(", ")))
+                .add("Queue policy", queuePolicy.toString())
+                .add("Seed", seed);
+        if (serviceTimeSla != NO_SLA) { section.add("SLA, 99.0 percentile service time within", serviceTimeSla, "milliseconds"); }
+
+        for (SweepResult result : results) {
+            section.entity(getName(result))
+                    .add("Customers serviced", result.getCustomersServiced())
+                    .add("Customers lost", result.getCustomersLost())
+                    .add("Throughput", result.getThroughput(), "customers per minute", "%.2f")
+                    .add("Average service time", result.getMeanServiceTime(), "milliseconds", "%.0f")
+                    .add("99.0 percentile service time", result.getP99ServiceTime(), "milliseconds");
+            if (serviceTimeSla != NO_SLA) { section.add("Meets the SLA", result.getP99ServiceTime() <= serviceTimeSla ? "yes" : "no"); }
+        }
+        return section;
+    }
+
+    /* the varied settings of the result, preceded by its dispatch policy if the policies are compared */
+    private String getName(SweepResult result) {
+        String settings = result.getSettings().entrySet().stream()
+                .map(setting -> setting.getKey() + ": " + setting.getValue())
+                .collect(Collectors.joining(", "));
+        if (dispatchPolicies.size() == 1) { return settings; }
+        return "Dispatch policy: " + result.getDispatchPolicy() + (settings.isEmpty() ? "" : ", " + settings);
+    }
+}
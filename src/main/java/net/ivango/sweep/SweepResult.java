@@ -0,0 +1,93 @@
+package net.ivango.sweep;
+
+import net.ivango.components.DispatchPolicy;
+import net.ivango.config.Properties;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a single simulation of a parameter sweep.
+ */
+public class SweepResult {
+
+    private final DispatchPolicy dispatchPolicy;
+    /* values of the varied settings, in the order they were added to the sweep */
+    private final Map<Properties, Integer> settings;
+    /* customers per minute of the modeled time */
+    private final double throughput;
+    /* service time in milliseconds */
+    private final double meanServiceTime;
+    private final long p99ServiceTime;
+    private final long customersServiced;
+    /* customers left without being serviced: the queues were full or they ran out of patience */
+    private final long customersLost;
+
+    public SweepResult(DispatchPolicy dispatchPolicy, Map<Properties, Integer> settings, double throughput, double meanServiceTime,
+                       long p99ServiceTime, long customersServiced, long customersLost) {
+        this.dispatchPolicy = dispatchPolicy;
+        this.settings = settings;
+        this.throughput = throughput;
+        this.meanServiceTime = meanServiceTime;
+        this.p99ServiceTime = p99ServiceTime;
+        this.customersServiced = customersServiced;
+        this.customersLost = customersLost;
+    }
+
+    public DispatchPolicy getDispatchPolicy() { return dispatchPolicy; }
+    public Map<Properties, Integer> getSettings() { return settings; }
+    public double getThroughput() { return throughput; }
+    public double getMeanServiceTime() { return meanServiceTime; }
+    public long getP99ServiceTime() { return p99ServiceTime; }
+    public long getCustomersServiced() { return customersServiced; }
+    public long getCustomersLost() { return customersLost; }
+
+    /**
+     * Writes this result to a checkpoint of the sweep.
+     * */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(dispatchPolicy.toString());
+        out.writeInt(settings.size());
+        for (Map.Entry<Properties, Integer> setting : settings.entrySet()) {
+            out.writeUTF(setting.getKey().name());
+            out.writeInt(setting.getValue());
+        }
+        out.writeDouble(throughput);
+        out.writeDouble(meanServiceTime);
+        out.writeLong(p99ServiceTime);
+        out.writeLong(customersServiced);
+        out.writeLong(customersLost);
+    }
+
+    /**
+     * @param dispatchPolicies – dispatch policies of the sweep, the one of the result is looked up by its name.
+     * @return a result written by {@link #writeTo(DataOutput)}, null if its dispatch policy is not among the given ones.
+     * */
+    static SweepResult readFrom(DataInput in, List<DispatchPolicy> dispatchPolicies) throws IOException {
+        String dispatchPolicyName = in.readUTF();
+        int size = in.readInt();
+        Map<Properties, Integer> settings = new LinkedHashMap<>();
+        for (int i=0; i < size; i++) {
+            try {
+                settings.put(Properties.valueOf(in.readUTF()), in.readInt());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown setting in the checkpoint", e);
+            }
+        }
+        double throughput = in.readDouble(), meanServiceTime = in.readDouble();
+        long p99ServiceTime = in.readLong(), customersServiced = in.readLong(), customersLost = in.readLong();
+        for (DispatchPolicy dispatchPolicy : dispatchPolicies) {
+            if ( dispatchPolicy.toString().equals(dispatchPolicyName) ) {
+                return new SweepResult(dispatchPolicy, settings, throughput, meanServiceTime, p99ServiceTime, customersServiced, customersLost);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() { return dispatchPolicy + " " + settings + ": " + String.format("%.2f", throughput) + " customers per minute, 99.0 percentile " + p99ServiceTime + " ms"; }
+}
@@ -1,11 +1,24 @@
 package net.ivango;
 
+import net.ivango.clock.Clock;
+import net.ivango.clock.ScaledClock;
 import net.ivango.components.QueueFiller;
+import net.ivango.components.QueuePolicy;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import net.ivango.entities.Programmer;
+import net.ivango.metrics.EventProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.util.List;
+
+import static net.ivango.config.Properties.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 /**
  * Launches coffee-drinking scenarios with different customer queue capacity.
  * A separate html report is generated for each scenario.
@@ -52,4 +65,62 @@ public class CoffeeModelingTest {
         logger.info("Running test, programmers count: " + count);
         cm.launch(queueFiller.generateRandomCustomers(count));
     }
+
+    @Test
+    public void test1000Accelerated() {
+        /* model time runs 100 times faster than the real time */
+        Clock clock = new ScaledClock(100);
+        CoffeeModeling cm = new CoffeeModeling(clock);
+        int count = 1000;
+        logger.info("Running accelerated test, programmers count: " + count);
+        cm.launch(new QueueFiller(clock).generateRandomCustomers(count));
+    }
+
+    @Test
+    public void test1000VirtualThreads() {
+        Clock clock = new ScaledClock(100);
+        CoffeeModeling cm = new CoffeeModeling(clock, CoffeeModeling.ExecutionMode.VIRTUAL_THREADS);
+        int count = 1000;
+        logger.info("Running accelerated test on virtual threads, programmers count: " + count);
+        cm.launch(new QueueFiller(clock).generateRandomCustomers(count));
+    }
+
+    @Test
+    public void test1000RingBuffers() {
+        Clock clock = new ScaledClock(100);
+        CoffeeModeling cm = new CoffeeModeling(clock, CoffeeModeling.ExecutionMode.RING_BUFFERS);
+        int count = 1000;
+        logger.info("Running accelerated test on ring buffers, programmers count: " + count);
+        cm.launch(new QueueFiller(clock).generateRandomCustomers(count));
+        assertEquals(cm.getEventProcessor().getServiceTimeHistogram().getCount(), count);
+    }
+
+    @Test
+    public void renegeWaitingForPlace() throws InterruptedException {
+        /* a single coffee machine busy with a 50 minutes pour and a single place in its queue:
+         * the customers blocked at the full queue leave once their patience of 20 seconds runs out, not after the pour */
+        Config config = Config.load().with(PICK_COFFEE_PARALLELISM, 1).with(DISPENSE_QUEUE_CAPACITY, 1).with(CUSTOMER_PATIENCE_TIMEOUT, 20_000)
+                .with(POUR_ESPRESSO_TIMEOUT, 3_000_000).with(POUR_LATTE_TIMEOUT, 3_000_000)
+                .with(POUR_MACCHIATTO_TIMEOUT, 3_000_000).with(POUR_CAPPUCCINO_TIMEOUT, 3_000_000);
+        int count = 20;
+        for (CoffeeModeling.ExecutionMode mode : CoffeeModeling.ExecutionMode.values()) {
+            Clock clock = new ScaledClock(1000);
+            CoffeeModeling cm = new CoffeeModeling(config, clock, mode, StandardDispatchPolicy.RANDOM);
+            cm.setQueuePolicy(QueuePolicy.RENEGE);
+            List<Programmer> customers = new QueueFiller(clock, config).generateRandomCustomers(count);
+            Thread launcher = new Thread(() -> cm.launch(customers));
+            launcher.start();
+
+            /* a third of the first pour */
+            Thread.sleep(1000);
+            long lostMeanwhile = cm.getEventProcessor().getTotalCustomersLost();
+            launcher.join();
+
+            EventProcessor eventProcessor = cm.getEventProcessor();
+            logger.info(mode + ": lost during the first pour: " + lostMeanwhile + ", serviced: " + eventProcessor.getServiceTimeHistogram().getCount());
+            /* the one pouring and the one in the queue of the worker threads, found gone once the pour is over */
+            assertTrue(lostMeanwhile >= count - 2, mode + ": " + lostMeanwhile);
+            assertEquals(eventProcessor.getServiceTimeHistogram().getCount() + eventProcessor.getTotalCustomersLost(), count);
+        }
+    }
 }
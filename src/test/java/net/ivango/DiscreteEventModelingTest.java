@@ -0,0 +1,321 @@
+package net.ivango;
+
+import net.ivango.arrivals.ArrivalProcess;
+import net.ivango.arrivals.BurstyArrivals;
+import net.ivango.arrivals.PoissonArrivals;
+import net.ivango.clock.RealTimeClock;
+import net.ivango.components.CashRegister;
+import net.ivango.components.QueueFiller;
+import net.ivango.components.QueuePolicy;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import net.ivango.distributions.ExponentialDistribution;
+import net.ivango.distributions.LogNormalDistribution;
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Programmer;
+import net.ivango.metrics.EventProcessor;
+import net.ivango.metrics.LatencyHistogram;
+import net.ivango.metrics.events.MachineDowntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static net.ivango.config.Properties.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Launches coffee-drinking scenarios in the virtual time of a discrete-event simulation.
+ * A separate html report is generated for each scenario.
+ */
+public class DiscreteEventModelingTest {
+
+    private QueueFiller queueFiller;
+
+    private Logger logger = LoggerFactory.getLogger(DiscreteEventModelingTest.class);
+
+    @BeforeClass
+    public void init() { queueFiller = new QueueFiller(); }
+
+    @Test
+    public void test1000() {
+        DiscreteEventModeling dem = new DiscreteEventModeling();
+        int count = 1000;
+        logger.info("Running discrete-event simulation, programmers count: " + count);
+        dem.launch(queueFiller.generateRandomCustomers(count));
+    }
+
+    @Test
+    public void test100000() {
+        DiscreteEventModeling dem = new DiscreteEventModeling();
+        int count = 100000;
+        logger.info("Running discrete-event simulation, programmers count: " + count);
+        dem.launch(queueFiller.generateRandomCustomers(count));
+    }
+
+    @Test
+    public void compareDispatchPolicies() {
+        /* run each policy on the same customers */
+        List<Programmer> customers = queueFiller.generateRandomCustomers(10000);
+        for (StandardDispatchPolicy policy : StandardDispatchPolicy.values()) {
+            DiscreteEventModeling dem = new DiscreteEventModeling(policy);
+            dem.launch(customers);
+            LatencyHistogram serviceTime = dem.getEventProcessor().getServiceTimeHistogram();
+            logger.info(String.format("Dispatch policy: %s, average service time: %.0f, 99.0 percentile: %d milliseconds",
+                    policy, serviceTime.getMean(), serviceTime.getValueAtPercentile(99)));
+        }
+    }
+
+    @Test
+    public void testPoissonArrivals() {
+        DiscreteEventModeling dem = new DiscreteEventModeling();
+        int count = 1000000;
+        logger.info("Running discrete-event simulation with Poisson arrivals, programmers count: " + count);
+        /* slightly below the capacity of two coffee machines */
+        dem.launch(queueFiller.streamRandomCustomers(count), new PoissonArrivals(70));
+    }
+
+    @Test
+    public void testBurstyArrivals() {
+        DiscreteEventModeling dem = new DiscreteEventModeling();
+        int count = 10000;
+        logger.info("Running discrete-event simulation with bursty arrivals, programmers count: " + count);
+        /* a team of 20 every hour plus occasional visitors */
+        dem.launch(queueFiller.streamRandomCustomers(count), new BurstyArrivals(3_600_000, 20, 0.5));
+    }
+
+    @Test
+    public void testRandomServiceTimes() {
+        /* the same average timings as configured, but scattered */
+        Config defaults = Config.load();
+        Config config = defaults
+                .with(COFFEE_SELECTION_TIMEOUT, new LogNormalDistribution(defaults.get(COFFEE_SELECTION_TIMEOUT), 250))
+                .with(CASH_PAYMENT_TIMEOUT, new ExponentialDistribution(defaults.get(CASH_PAYMENT_TIMEOUT)))
+                .with(POUR_CAPPUCCINO_TIMEOUT, new LogNormalDistribution(defaults.get(POUR_CAPPUCCINO_TIMEOUT), 300));
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.RANDOM);
+        int count = 10000;
+        logger.info("Running discrete-event simulation with random service times, programmers count: " + count);
+        dem.launch(new QueueFiller(RealTimeClock.INSTANCE, config).streamRandomCustomers(count), new PoissonArrivals(60));
+    }
+
+    @Test
+    public void testBoundedQueues() {
+        /* twice the capacity of two coffee machines: the dispense queues overflow */
+        Config config = Config.load().with(DISPENSE_QUEUE_CAPACITY, 5).with(CUSTOMER_PATIENCE_TIMEOUT, 20000);
+        int count = 10000;
+        for (QueuePolicy policy : QueuePolicy.values()) {
+            SplittableRandom random = new SplittableRandom(42);
+            DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+            dem.setQueuePolicy(policy);
+            dem.launch(new QueueFiller(RealTimeClock.INSTANCE, config, random.split()).streamRandomCustomers(count), new PoissonArrivals(140, random.split()));
+
+            EventProcessor eventProcessor = dem.getEventProcessor();
+            logger.info(String.format("Queue policy: %s, serviced: %d, lost: %d, 99.0 percentile service time: %d milliseconds", policy,
+                    eventProcessor.getServiceTimeHistogram().getCount(), eventProcessor.getTotalCustomersLost(),
+                    eventProcessor.getServiceTimeHistogram().getValueAtPercentile(99)));
+            /* every customer is either serviced or lost, only the blocked ones are never lost */
+            assertEquals(eventProcessor.getServiceTimeHistogram().getCount() + eventProcessor.getTotalCustomersLost(), count);
+            assertEquals(eventProcessor.getTotalCustomersLost() == 0, policy == QueuePolicy.BLOCK);
+        }
+    }
+
+    @Test
+    public void compareCashRegisterCapabilities() {
+        /* the payment is the bottleneck: is a third register better card-only or general? */
+        Config base = Config.load().with(PAYMENT_PARALLELISM, 3).with(PICK_COFFEE_PARALLELISM, 20);
+        int count = 10000;
+        for (Config config : new Config[]{ base, base.with(CREDIT_ONLY_REGISTERS, 1), base.with(CASH_ONLY_REGISTERS, 1).with(CREDIT_ONLY_REGISTERS, 1) }) {
+            SplittableRandom random = new SplittableRandom(42);
+            DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+            dem.simulate(new QueueFiller(RealTimeClock.INSTANCE, config, random.split()).streamRandomCustomers(count), new PoissonArrivals(300, random.split()));
+
+            EventProcessor eventProcessor = dem.getEventProcessor();
+            logger.info(String.format("Cash-only registers: %d, credit-only registers: %d, average service time: %.0f, 99.0 percentile: %d milliseconds",
+                    config.get(CASH_ONLY_REGISTERS), config.get(CREDIT_ONLY_REGISTERS),
+                    eventProcessor.getServiceTimeHistogram().getMean(), eventProcessor.getServiceTimeHistogram().getValueAtPercentile(99)));
+            long sold = 0;
+            for (int i=1; i <= eventProcessor.getCashRegistersCount(); i++) {
+                sold += eventProcessor.getCupsSold(i);
+                assertTrue(eventProcessor.getCashRegisterBusyTime(i) <= dem.getModeledTime());
+                /* a register only takes the payments it accepts */
+                List<PaymentType> accepted = Arrays.asList( CashRegister.getAcceptedPaymentTypes(config, i) );
+                for (PaymentType paymentType : PaymentType.values()) {
+                    if ( !accepted.contains(paymentType) ) { assertEquals(eventProcessor.getCupsSold(i, paymentType), 0); }
+                }
+            }
+            assertEquals(sold, count);
+        }
+    }
+
+    @Test
+    public void testMachineDowntime() {
+        /* the milk runs out each 100 or so cups, the machines are descaled each 500 cups */
+        Config config = Config.load().with(PICK_COFFEE_PARALLELISM, 3)
+                .with(WATER_CAPACITY, 5000).with(BEANS_CAPACITY, 1000).with(MILK_CAPACITY, 8000).with(MAINTENANCE_INTERVAL, 500);
+        SplittableRandom random = new SplittableRandom(42);
+        int count = 10000;
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+        dem.simulate(new QueueFiller(RealTimeClock.INSTANCE, config, random.split()).streamRandomCustomers(count), new PoissonArrivals(60, random.split()));
+
+        EventProcessor eventProcessor = dem.getEventProcessor();
+        assertEquals(eventProcessor.getServiceTimeHistogram().getCount(), count);
+        for (int i=1; i <= eventProcessor.getCoffeeMachinesCount(); i++) {
+            logger.info(String.format("Coffee machine %d, availability: %.1f%%, throughput lost to downtime: up to %.0f cups", i,
+                    100 * eventProcessor.getCoffeeMachineAvailability(i), eventProcessor.getCupsLostToDowntime(i)));
+            assertTrue(eventProcessor.getCoffeeMachineDowntimes(i, MachineDowntime.Reason.REFILL) > 0);
+            assertTrue(eventProcessor.getCoffeeMachineAvailability(i) < 1);
+        }
+    }
+
+    @Test
+    public void testMenusAndOutlets() {
+        /* an espresso-only machine, a regular one and a two-outlet one running out of milk now and then */
+        Config config = Config.load().with(PICK_COFFEE_PARALLELISM, 3).with(ESPRESSO_ONLY_MACHINES, 1).with(TWO_OUTLET_MACHINES, 1)
+                .with(MILK_CAPACITY, 8000);
+        SplittableRandom random = new SplittableRandom(42);
+        int count = 10000;
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+        dem.simulate(new QueueFiller(RealTimeClock.INSTANCE, config, random.split()).streamRandomCustomers(count), new PoissonArrivals(60, random.split()));
+
+        EventProcessor eventProcessor = dem.getEventProcessor();
+        assertEquals(eventProcessor.getServiceTimeHistogram().getCount(), count);
+        assertTrue(eventProcessor.getCupsDispensed(1, CoffeeType.ESPRESSO) > 0);
+        for (CoffeeType coffeeType : Arrays.asList(CoffeeType.LATTE, CoffeeType.MACCHIATO, CoffeeType.CAPPUCCINO)) {
+            assertEquals(eventProcessor.getCupsDispensed(1, coffeeType), 0);
+        }
+        assertEquals(eventProcessor.getCoffeeMachineOutlets(3), 2);
+        assertTrue(eventProcessor.getCoffeeMachineDowntimes(3, MachineDowntime.Reason.REFILL) > 0);
+        for (int i=1; i <= eventProcessor.getCoffeeMachinesCount(); i++) {
+            double utilization = (double) eventProcessor.getCoffeeMachineBusyTime(i) / eventProcessor.getCoffeeMachineOutlets(i) / dem.getModeledTime();
+            logger.info(String.format("Coffee machine %d, average outlet utilization: %.1f%%", i, 100 * utilization));
+            assertTrue(utilization <= 1);
+        }
+        /* the second outlet takes more customers off the shortest queue */
+        assertTrue(eventProcessor.getCoffeeMachineBusyTime(3) > eventProcessor.getCoffeeMachineBusyTime(2));
+    }
+
+    @Test
+    public void testReproducibleRuns() throws IOException {
+        /* the same seed produces the same report, every random choice included */
+        String first = reportOfSeededRun(42), second = reportOfSeededRun(42);
+        assertEquals(first, second);
+        assertNotEquals(reportOfSeededRun(43), first);
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws IOException {
+        /* the machines run out of milk and are descaled now and then: their state is checkpointed as well */
+        Config config = Config.load().with(PICK_COFFEE_PARALLELISM, 3).with(MILK_CAPACITY, 8000).with(MAINTENANCE_INTERVAL, 500)
+                .with(POUR_LATTE_TIMEOUT, new ExponentialDistribution(500));
+        Path checkpoint = Files.createTempFile("coffee-modeling", ".checkpoint");
+        try {
+            DiscreteEventModeling uninterrupted = seededSimulation(config);
+            uninterrupted.checkpointTo(checkpoint, 600_000);
+            uninterrupted.simulate(seededCustomers(config, 42, 10000), new PoissonArrivals(60, new SplittableRandom(43)));
+
+            /* resume from the last checkpoint as if the run died right after it */
+            DiscreteEventModeling resumed = seededSimulation(config);
+            resumed.resumeFrom(checkpoint);
+            resumed.simulate(seededCustomers(config, 42, 10000), new PoissonArrivals(60, new SplittableRandom(43)));
+
+            assertEquals(reportOf(resumed), reportOf(uninterrupted));
+        } finally {
+            Files.delete(checkpoint);
+        }
+    }
+
+    @Test
+    public void testResumeOverloadedRun() throws IOException {
+        /* the customers arrive faster than served: the checkpoints are taken mid-backlog, with the pours and the downtimes in progress
+         * and the impatient customers waiting for a place in the bounded payment queues */
+        Config config = Config.load().with(PICK_COFFEE_PARALLELISM, 3).with(MILK_CAPACITY, 8000).with(PAYMENT_QUEUE_CAPACITY, 10);
+        Path checkpoint = Files.createTempFile("coffee-modeling", ".checkpoint");
+        try {
+            DiscreteEventModeling uninterrupted = overloadedSimulation(config);
+            uninterrupted.simulate(seededCustomers(config, 42, 5000), new PoissonArrivals(600, new SplittableRandom(43)));
+
+            /* the run dies partway with a backlog */
+            DiscreteEventModeling crashed = overloadedSimulation(config);
+            crashed.checkpointTo(checkpoint, 60_000);
+            ArrivalProcess arrivals = new PoissonArrivals(600, new SplittableRandom(43));
+            boolean died = false;
+            try {
+                crashed.simulate(seededCustomers(config, 42, 5000), new ArrivalProcess() {
+                    private int remaining = 3000;
+
+                    @Override
+                    public long nextInterArrivalTime() {
+                        if (remaining-- == 0) { throw new IllegalStateException("The run died"); }
+                        return arrivals.nextInterArrivalTime();
+                    }
+
+                    @Override
+                    public void writeState(DataOutput out) throws IOException { arrivals.writeState(out); }
+
+                    @Override
+                    public String toString() { return arrivals.toString(); }
+                });
+            } catch (IllegalStateException e) {
+                died = true;
+            }
+            assertTrue(died);
+            assertTrue(crashed.getPaymentQueueLength() > 0);
+
+            /* resume from the last checkpoint taken before the run died */
+            DiscreteEventModeling resumed = overloadedSimulation(config);
+            resumed.resumeFrom(checkpoint);
+            resumed.simulate(seededCustomers(config, 42, 5000), new PoissonArrivals(600, new SplittableRandom(43)));
+
+            assertEquals(reportOf(resumed), reportOf(uninterrupted));
+        } finally {
+            Files.delete(checkpoint);
+        }
+    }
+
+    private DiscreteEventModeling overloadedSimulation(Config config) {
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+        dem.setQueuePolicy(QueuePolicy.RENEGE);
+        return dem;
+    }
+
+    private DiscreteEventModeling seededSimulation(Config config) {
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+        dem.setQueuePolicy(QueuePolicy.BLOCK);
+        return dem;
+    }
+
+    private Iterator<Programmer> seededCustomers(Config config, long seed, int count) {
+        return new QueueFiller(RealTimeClock.INSTANCE, config, new SplittableRandom(seed)).streamRandomCustomers(count);
+    }
+
+    private String reportOf(DiscreteEventModeling dem) throws IOException {
+        StringWriter report = new StringWriter();
+        dem.getEventProcessor().writeReport(report);
+        return report.toString();
+    }
+
+    private String reportOfSeededRun(long seed) throws IOException {
+        Config config = Config.load().with(POUR_LATTE_TIMEOUT, new ExponentialDistribution(500));
+        SplittableRandom random = new SplittableRandom(seed);
+        QueueFiller seededQueueFiller = new QueueFiller(RealTimeClock.INSTANCE, config, random.split());
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.POWER_OF_TWO_CHOICES);
+        dem.simulate(seededQueueFiller.streamRandomCustomers(10000), new PoissonArrivals(60, random.split()));
+
+        StringWriter report = new StringWriter();
+        dem.getEventProcessor().writeReport(report);
+        return report.toString();
+    }
+}
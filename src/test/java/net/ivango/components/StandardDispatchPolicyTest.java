@@ -0,0 +1,61 @@
+package net.ivango.components;
+
+import net.ivango.clock.RealTimeClock;
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.metrics.EventProcessor;
+import org.testng.annotations.Test;
+
+import java.util.SplittableRandom;
+
+import static net.ivango.config.Properties.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks that the load based policies route by the load per outlet and break the ties at random.
+ */
+public class StandardDispatchPolicyTest {
+
+    /* two single-outlet machines and a two-outlet one, the last */
+    private final Config config = Config.load().with(PICK_COFFEE_PARALLELISM, 3).with(TWO_OUTLET_MACHINES, 1);
+
+    @Test
+    public void comparesLoadPerOutlet() {
+        CoffeeMachine[] coffeeMachines = CoffeeMachine.createCoffeeMachines(new EventProcessor(config), RealTimeClock.INSTANCE, config);
+        /* 2 customers per outlet at the single-outlet machines, 1.5 at the two-outlet one */
+        assign(coffeeMachines[0], 2);
+        assign(coffeeMachines[1], 2);
+        assign(coffeeMachines[2], 3);
+        SplittableRandom random = new SplittableRandom(42);
+        for (StandardDispatchPolicy policy : new StandardDispatchPolicy[]{ StandardDispatchPolicy.LEAST_LOADED, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE }) {
+            assertEquals(policy.select(coffeeMachines, CoffeeType.ESPRESSO, random), coffeeMachines[2], policy.name());
+        }
+        /* the two-outlet machine wins whenever it is one of the two choices: 3 times out of 4 */
+        CoffeeMachine[] pair = { coffeeMachines[0], coffeeMachines[2] };
+        int twoOutletSelected = 0;
+        for (int i=0; i < 1000; i++) {
+            if (StandardDispatchPolicy.POWER_OF_TWO_CHOICES.select(pair, CoffeeType.ESPRESSO, random) == coffeeMachines[2]) { twoOutletSelected++; }
+        }
+        assertTrue(twoOutletSelected > 650, "two-outlet machine selected: " + twoOutletSelected);
+    }
+
+    @Test
+    public void breaksTiesAtRandom() {
+        CoffeeMachine[] coffeeMachines = CoffeeMachine.createCoffeeMachines(new EventProcessor(config), RealTimeClock.INSTANCE, config);
+        /* the same load per outlet everywhere */
+        assign(coffeeMachines[0], 1);
+        assign(coffeeMachines[1], 1);
+        assign(coffeeMachines[2], 2);
+        SplittableRandom random = new SplittableRandom(42);
+        for (StandardDispatchPolicy policy : new StandardDispatchPolicy[]{ StandardDispatchPolicy.JOIN_SHORTEST_QUEUE, StandardDispatchPolicy.POWER_OF_TWO_CHOICES }) {
+            int[] selected = new int[coffeeMachines.length];
+            for (int i=0; i < 3000; i++) { selected[policy.select(coffeeMachines, CoffeeType.ESPRESSO, random).getCoffeeMachineNumber() - 1]++; }
+            for (int count : selected) { assertTrue(count > 800, policy.name() + " favours a machine: " + count); }
+        }
+    }
+
+    private static void assign(CoffeeMachine coffeeMachine, int customers) {
+        for (int i=0; i < customers; i++) { coffeeMachine.assign(CoffeeType.ESPRESSO); }
+    }
+}
@@ -0,0 +1,74 @@
+package net.ivango.config;
+
+import com.google.common.collect.ImmutableMap;
+import net.ivango.distributions.LogNormalDistribution;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.ivango.config.Properties.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ConfigTest {
+
+    @Test
+    public void overridesDoNotChangeTheOriginal() {
+        Config defaults = Config.load();
+        Config modified = defaults.with(ImmutableMap.of(PAYMENT_PARALLELISM, 7, PICK_COFFEE_PARALLELISM, 3));
+
+        assertEquals(modified.get(PAYMENT_PARALLELISM), 7);
+        assertEquals(modified.get(PICK_COFFEE_PARALLELISM), 3);
+        assertEquals(modified.get(COFFEE_SELECTION_TIMEOUT), defaults.get(COFFEE_SELECTION_TIMEOUT));
+        assertEquals(defaults.get(PAYMENT_PARALLELISM), 5);
+    }
+
+    @Test
+    public void loadsFromFile() throws IOException {
+        Path path = Files.createTempFile("configuration", ".json");
+        StringBuilder json = new StringBuilder("{");
+        for (Properties property : Properties.values()) { json.append('"').append(property).append("\": ").append(property.ordinal() + 1).append(','); }
+        json.setCharAt(json.length() - 1, '}');
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+
+        Config config = Config.load(path);
+        for (Properties property : Properties.values()) { assertEquals(config.get(property), property.ordinal() + 1); }
+        Files.delete(path);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void rejectsIncompleteFile() throws IOException {
+        Path path = Files.createTempFile("configuration", ".json");
+        Files.write(path, "{\"PAYMENT_PARALLELISM\": 1}".getBytes(StandardCharsets.UTF_8));
+        try {
+            Config.load(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void readsDistributions() throws IOException {
+        Path path = Files.createTempFile("configuration", ".json");
+        StringBuilder json = new StringBuilder("{");
+        for (Properties property : Properties.values()) {
+            if (property == POUR_CAPPUCCINO_TIMEOUT) {
+                json.append('"').append(property).append("\": { \"distribution\": \"lognormal\", \"mean\": 750, \"stddev\": 250 },");
+            } else {
+                json.append('"').append(property).append("\": 1,");
+            }
+        }
+        json.setCharAt(json.length() - 1, '}');
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+
+        Config config = Config.load(path);
+        assertTrue(config.getDistribution(POUR_CAPPUCCINO_TIMEOUT) instanceof LogNormalDistribution);
+        assertEquals(config.get(POUR_CAPPUCCINO_TIMEOUT), 750);
+        /* a plain number is a fixed delay */
+        assertEquals(config.getDistribution(POUR_LATTE_TIMEOUT).getMean(), 1.0);
+        Files.delete(path);
+    }
+}
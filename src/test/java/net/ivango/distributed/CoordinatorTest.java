@@ -0,0 +1,93 @@
+package net.ivango.distributed;
+
+import com.google.common.collect.ImmutableMap;
+import net.ivango.DiscreteEventModeling;
+import net.ivango.arrivals.PoissonArrivals;
+import net.ivango.clock.RealTimeClock;
+import net.ivango.components.QueueFiller;
+import net.ivango.config.Config;
+import net.ivango.metrics.EventProcessor;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static net.ivango.config.Properties.PAYMENT_PARALLELISM;
+import static net.ivango.config.Properties.PICK_COFFEE_PARALLELISM;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Simulates a campus of three floors, each partition run by its own worker.
+ */
+public class CoordinatorTest {
+
+    private final List<Partition> floors = Arrays.asList(
+            new Partition("Floor 1", ImmutableMap.of(PICK_COFFEE_PARALLELISM, 2, PAYMENT_PARALLELISM, 2), 5000, 50).withSeed(1),
+            new Partition("Floor 2", ImmutableMap.of(PICK_COFFEE_PARALLELISM, 3, PAYMENT_PARALLELISM, 3), 8000, 80).withSeed(2),
+            new Partition("Floor 3", ImmutableMap.of(PICK_COFFEE_PARALLELISM, 1, PAYMENT_PARALLELISM, 1), 2000, 20).withSeed(3));
+
+    @Test
+    public void mergesInProcessWorkers() throws IOException {
+        InProcessTransport transport = new InProcessTransport();
+        EventProcessor merged = runWorkers(transport, transport::connect);
+
+        assertEquals(merged.getCoffeeMachinesCount(), 6);
+        assertEquals(merged.getCashRegistersCount(), 6);
+        assertEquals(merged.getServiceTimeHistogram().getCount(), 15000);
+        /* the machines of the second floor follow the machines of the first one */
+        EventProcessor secondFloor = simulateLocally(floors.get(1));
+        for (int i=1; i <= 3; i++) {
+            assertEquals(merged.getCoffeeMachineBusyTime(i + 2), secondFloor.getCoffeeMachineBusyTime(i));
+            assertEquals(merged.getCoffeeMachineWaitTimeHistogram(i + 2).getValueAtPercentile(99),
+                    secondFloor.getCoffeeMachineWaitTimeHistogram(i).getValueAtPercentile(99));
+        }
+        merged.processEvents();
+    }
+
+    @Test
+    public void mergesSocketWorkers() throws IOException {
+        try (SocketTransport transport = new SocketTransport(0)) {
+            EventProcessor merged = runWorkers(transport, () -> {
+                try {
+                    return SocketTransport.connect(InetAddress.getLoopbackAddress().getHostAddress(), transport.getPort());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            assertEquals(merged.getServiceTimeHistogram().getCount(), 15000);
+            assertEquals(merged.getServiceTimeHistogram().getMax(), Math.max(simulateLocally(floors.get(0)).getServiceTimeHistogram().getMax(),
+                    Math.max(simulateLocally(floors.get(1)).getServiceTimeHistogram().getMax(), simulateLocally(floors.get(2)).getServiceTimeHistogram().getMax())));
+        }
+    }
+
+    private EventProcessor runWorkers(Transport transport, Supplier<Channel> connect) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(floors.size());
+        try {
+            for (int i=0; i < floors.size(); i++) {
+                workers.submit(() -> {
+                    new Worker( connect.get() ).run();
+                    return null;
+                });
+            }
+            return new Coordinator(transport).run(floors);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private EventProcessor simulateLocally(Partition partition) {
+        Config config = Config.load().with(partition.getSettings());
+        SplittableRandom random = new SplittableRandom(partition.getSeed());
+        QueueFiller queueFiller = new QueueFiller(RealTimeClock.INSTANCE, config, random.split());
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, partition.getDispatchPolicy());
+        dem.simulate(queueFiller.streamRandomCustomers(partition.getCustomers()), new PoissonArrivals(partition.getCustomersPerMinute(), random.split()));
+        return dem.getEventProcessor();
+    }
+}
@@ -0,0 +1,47 @@
+package net.ivango.distributions;
+
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import static org.testng.Assert.assertEquals;
+
+public class RandomStreamTest {
+
+    @Test
+    public void sameValuesAsSplittableRandom() {
+        SplittableRandom expected = new SplittableRandom(42);
+        RandomStream actual = new RandomStream(42);
+        assertSameValues(actual, expected);
+        /* the split streams too */
+        assertSameValues(actual.split(), expected.split());
+        assertSameValues(actual, expected);
+    }
+
+    @Test
+    public void restoredStreamContinues() throws IOException {
+        RandomStream stream = new RandomStream(42).split();
+        stream.nextLong();
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        stream.writeState(new DataOutputStream(state));
+
+        RandomStream restored = new RandomStream();
+        restored.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        assertSameValues(restored, stream);
+    }
+
+    private static void assertSameValues(RandomGenerator actual, RandomGenerator expected) {
+        for (int i=0; i < 1000; i++) {
+            assertEquals(actual.nextInt(), expected.nextInt());
+            assertEquals(actual.nextLong(), expected.nextLong());
+            /* a bound just above a power of two rejects half of the values */
+            assertEquals(actual.nextInt((1 << 30) + 1), expected.nextInt((1 << 30) + 1));
+            assertEquals(actual.nextInt(7), expected.nextInt(7));
+            assertEquals(actual.nextDouble(), expected.nextDouble());
+            assertEquals(actual.nextGaussian(), expected.nextGaussian());
+            assertEquals(actual.nextExponential(), expected.nextExponential());
+        }
+    }
+}
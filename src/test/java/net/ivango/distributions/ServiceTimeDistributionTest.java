@@ -0,0 +1,46 @@
+package net.ivango.distributions;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.SplittableRandom;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ServiceTimeDistributionTest {
+
+    @DataProvider
+    public Object[][] distributions() {
+        return new Object[][] {
+                { new FixedDistribution(750) },
+                { new ExponentialDistribution(750) },
+                { new NormalDistribution(750, 100) },
+                { new LogNormalDistribution(750, 400) },
+                { new EmpiricalDistribution(400, 900, 500, 700, 1200) },
+        };
+    }
+
+    @Test(dataProvider = "distributions")
+    public void sampleMeanMatchesTheExpectedOne(ServiceTimeDistribution distribution) {
+        SplittableRandom random = new SplittableRandom(42);
+        int samples = 1_000_000;
+        double sum = 0;
+        for (int i=0; i < samples; i++) {
+            long sample = distribution.sample(random);
+            assertTrue(sample >= 0, "negative sample: " + sample);
+            sum += sample;
+        }
+        assertEquals(sum / samples, distribution.getMean(), distribution.getMean() * 0.01, distribution.toString());
+    }
+
+    @Test
+    public void empiricalStaysWithinTheObservations() {
+        EmpiricalDistribution distribution = new EmpiricalDistribution(400, 900, 500);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i=0; i < 10_000; i++) {
+            long sample = distribution.sample(random);
+            assertTrue(sample >= 400 && sample <= 900, "out of range: " + sample);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.ivango.metrics;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks the percentiles reported by the LatencyHistogram against the exact values.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getValueAtPercentile(99), 0);
+        assertEquals(histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i=1; i <= 100; i++) { histogram.record(i); }
+
+        assertEquals(histogram.getMin(), 1);
+        assertEquals(histogram.getMax(), 100);
+        assertEquals(histogram.getMean(), 50.5);
+        assertEquals(histogram.getValueAtPercentile(50), 50);
+        assertEquals(histogram.getValueAtPercentile(99), 99);
+        assertEquals(histogram.getValueAtPercentile(100), 100);
+    }
+
+    @Test
+    public void largeValuesWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i=1; i <= 1_000_000; i++) { histogram.record(i); }
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = (long) (percentile / 100 * 1_000_000);
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(Math.abs(reported - exact) <= exact / 100, percentile + ": " + reported + " vs " + exact);
+        }
+        assertEquals(histogram.getMax(), 1_000_000);
+    }
+
+    @Test
+    public void lowEdgesOfBucketsWithinOnePercent() {
+        /* a power of two is the lowest value of the widest bucket relative to it */
+        for (int bit=8; bit < 36; bit++) {
+            long edge = 1L << bit;
+            LatencyHistogram histogram = new LatencyHistogram(1);
+            for (int i=0; i < 99; i++) { histogram.record(edge); }
+            /* the maximum is above the bucket: the reported value is not clamped to it */
+            histogram.record(2 * edge);
+
+            long reported = histogram.getValueAtPercentile(50);
+            assertTrue(reported >= edge && reported - edge <= edge / 100, edge + ": " + reported);
+        }
+    }
+}
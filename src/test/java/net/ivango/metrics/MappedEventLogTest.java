@@ -0,0 +1,53 @@
+package net.ivango.metrics;
+
+import net.ivango.DiscreteEventModeling;
+import net.ivango.arrivals.PoissonArrivals;
+import net.ivango.clock.RealTimeClock;
+import net.ivango.components.QueueFiller;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static net.ivango.config.Properties.CREDIT_ONLY_REGISTERS;
+import static net.ivango.config.Properties.PAYMENT_PARALLELISM;
+import static net.ivango.config.Properties.PICK_COFFEE_PARALLELISM;
+import static org.testng.Assert.assertEquals;
+
+public class MappedEventLogTest {
+
+    @Test
+    public void reportsAreRebuiltFromTheLog() throws IOException {
+        Config config = Config.load().with(PICK_COFFEE_PARALLELISM, 3).with(CREDIT_ONLY_REGISTERS, 1);
+        SplittableRandom random = new SplittableRandom(42);
+        Path path = Files.createTempFile("events", ".bin");
+
+        DiscreteEventModeling dem = new DiscreteEventModeling(config, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+        dem.logEventsTo(path);
+        dem.simulate(new QueueFiller(RealTimeClock.INSTANCE, config, random.split()).streamRandomCustomers(10000),
+                new PoissonArrivals(90, random.split()));
+
+        EventLogReader reader = new EventLogReader(path);
+        assertEquals(reader.getCoffeeMachines(), 3);
+        assertEquals(reader.getCashRegisters(), config.get(PAYMENT_PARALLELISM));
+        /* cup sold, cup dispensed, customer serviced and a stage completed per stage */
+        assertEquals(reader.getRecordCount(), 10000 * 8);
+        EventProcessor rebuilt = reader.rebuild(Config.load());
+
+        /* everything but the scenario settings is the same */
+        assertEquals(statistics(rebuilt), statistics(dem.getEventProcessor()));
+        assertEquals(rebuilt.getThroughput(), dem.getEventProcessor().getThroughput());
+        Files.delete(path);
+    }
+
+    private String statistics(EventProcessor eventProcessor) throws IOException {
+        StringWriter report = new StringWriter();
+        eventProcessor.writeReport(report);
+        return report.toString().substring( report.toString().indexOf("<h1>Cups Sold</h1>") );
+    }
+}
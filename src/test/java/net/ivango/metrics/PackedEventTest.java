@@ -0,0 +1,67 @@
+package net.ivango.metrics;
+
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Stage;
+import net.ivango.metrics.events.*;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Checks that the events survive the encoding into longs and back into the objects.
+ */
+public class PackedEventTest {
+
+    @Test
+    public void roundTrip() {
+        CupSold cupSold = (CupSold) decode(new CupSold(PaymentType.CREDIT, 3, 1500));
+        assertEquals(cupSold.getPaymentType(), PaymentType.CREDIT);
+        assertEquals(cupSold.getCashRegisterNumber(), 3);
+        assertEquals(cupSold.getPaymentTime(), 1500);
+
+        CupDispensed cupDispensed = (CupDispensed) decode(new CupDispensed(CoffeeType.MACCHIATO, 65535));
+        assertEquals(cupDispensed.getCoffeeType(), CoffeeType.MACCHIATO);
+        assertEquals(cupDispensed.getCoffeeMachineNumber(), 65535);
+
+        assertEquals(((CustomerServiced) decode(new CustomerServiced(2750))).getServiceTime(), 2750);
+
+        CustomerLost customerLost = (CustomerLost) decode(new CustomerLost(Stage.CUP_FINDING, CustomerLost.Reason.RENEGED, 60_000, 2));
+        assertEquals(customerLost.getStage(), Stage.CUP_FINDING);
+        assertEquals(customerLost.getReason(), CustomerLost.Reason.RENEGED);
+        assertEquals(customerLost.getWaitTime(), 60_000);
+        assertEquals(customerLost.getCoffeeMachineNumber(), 2);
+
+        MachineDowntime machineDowntime = (MachineDowntime) decode(new MachineDowntime(4, MachineDowntime.Reason.MAINTENANCE, 300_000));
+        assertEquals(machineDowntime.getReason(), MachineDowntime.Reason.MAINTENANCE);
+        assertEquals(machineDowntime.getCoffeeMachineNumber(), 4);
+        assertEquals(machineDowntime.getDuration(), 300_000);
+
+        /* a wait of a month in an overloaded queue still fits */
+        long month = 30L * 24 * 3600 * 1000;
+        StageCompleted stageCompleted = (StageCompleted) decode(new StageCompleted(Stage.POURING, 1000, 1000 + month, 2000 + month, 1));
+        assertEquals(stageCompleted.getStage(), Stage.POURING);
+        assertEquals(stageCompleted.getEnqueued(), 1000);
+        assertEquals(stageCompleted.getStarted(), 1000 + month);
+        assertEquals(stageCompleted.getServiceTime(), 1000);
+        assertEquals(stageCompleted.getCoffeeMachineNumber(), 1);
+    }
+
+    @Test
+    public void fieldsNotApplicable() {
+        long event = PackedEvent.customerServiced(100);
+        assertNull(PackedEvent.getStage(event));
+        assertNull(PackedEvent.getCoffeeType(event));
+        assertNull(PackedEvent.getPaymentType(event));
+        assertEquals(PackedEvent.getNumber(event), StageCompleted.NO_COFFEE_MACHINE);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void negativeDuration() { PackedEvent.customerServiced(-1); }
+
+    private Event decode(Event event) {
+        long timestamp = event instanceof StageCompleted ? ((StageCompleted) event).getCompleted() : 0;
+        return PackedEvent.toEvent(PackedEvent.pack(event), PackedEvent.getWaitTime(event), timestamp);
+    }
+}
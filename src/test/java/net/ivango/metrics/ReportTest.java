@@ -0,0 +1,63 @@
+package net.ivango.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.ivango.config.Config;
+import net.ivango.entities.CoffeeType;
+import net.ivango.entities.PaymentType;
+import net.ivango.entities.Stage;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks that the sections computed in parallel make the same report in every format.
+ */
+public class ReportTest {
+
+    @Test
+    public void writesEveryFormat() throws IOException {
+        EventProcessor eventProcessor = new EventProcessor(Config.load());
+        for (int i=0; i < 10; i++) {
+            eventProcessor.submitEvent(PackedEvent.cupSold(PaymentType.CASH, 1, 1000));
+            eventProcessor.submitEvent(PackedEvent.cupDispensed(CoffeeType.LATTE, 1));
+            eventProcessor.submitEvent(PackedEvent.stageCompleted(Stage.POURING, 1500, 1), 200);
+            eventProcessor.submitEvent(PackedEvent.customerServiced(4000));
+        }
+
+        Path directory = Files.createTempDirectory("report");
+        eventProcessor.setReportDirectory(directory);
+        eventProcessor.setReportFormats(ReportFormat.values());
+        eventProcessor.processEvents();
+
+        /* the html file is the same as the one written directly */
+        StringWriter html = new StringWriter();
+        eventProcessor.writeReport(html);
+        assertEquals(new String(Files.readAllBytes(directory.resolve("report-10-programmers.html")), StandardCharsets.UTF_8), html.toString());
+        assertTrue(Files.exists(directory.resolve("report-10-programmers.md")));
+
+        JsonArray sections;
+        try (Reader reader = Files.newBufferedReader(directory.resolve("report-10-programmers.json"), StandardCharsets.UTF_8)) {
+            sections = new JsonParser().parse(reader).getAsJsonObject().getAsJsonArray("sections");
+        }
+        assertEquals(sections.size(), 7);
+        JsonObject cupsSold = sections.get(1).getAsJsonObject();
+        assertEquals(cupsSold.get("title").getAsString(), "Cups Sold");
+        assertEquals(cupsSold.getAsJsonArray("metrics").get(0).getAsJsonObject().get("value").getAsLong(), 10);
+
+        List<String> csv = Files.readAllLines(directory.resolve("report-10-programmers.csv"), StandardCharsets.UTF_8);
+        assertEquals(csv.get(0), "section,entity,name,value,unit");
+        assertTrue(csv.contains("Cups Sold,,Cups sold for cash,10,"), csv.toString());
+        assertTrue(csv.contains("Coffee machine stats,Coffee machine 1,Latte dispensed,10,"), csv.toString());
+    }
+}
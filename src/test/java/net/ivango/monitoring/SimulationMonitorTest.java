@@ -0,0 +1,54 @@
+package net.ivango.monitoring;
+
+import net.ivango.CoffeeModeling;
+import net.ivango.arrivals.PoissonArrivals;
+import net.ivango.clock.ScaledClock;
+import net.ivango.components.QueueFiller;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import org.testng.annotations.Test;
+
+import javax.management.ObjectName;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Watches an accelerated threaded simulation.
+ */
+public class SimulationMonitorTest {
+
+    @Test
+    public void publishesSnapshots() throws Exception {
+        ScaledClock clock = new ScaledClock(100);
+        Config config = Config.load();
+        SplittableRandom random = new SplittableRandom(42);
+        CoffeeModeling cm = new CoffeeModeling(config, clock, CoffeeModeling.ExecutionMode.THREAD_POOLS, StandardDispatchPolicy.JOIN_SHORTEST_QUEUE);
+        int count = 500;
+
+        try (SimulationMonitor monitor = new SimulationMonitor(cm, 100).registerMBean("test").startHttpEndpoint(0).start()) {
+            /* beyond the capacity of the coffee machines: the queues build up */
+            cm.launch(new QueueFiller(clock, config, random.split()).streamRandomCustomers(count), new PoissonArrivals(120, random.split()));
+
+            SimulationSnapshot snapshot = monitor.takeSnapshot();
+            assertEquals(snapshot.getCustomersServiced(), count);
+            assertEquals(snapshot.getDispenseQueueLengths().length, config.get(net.ivango.config.Properties.PICK_COFFEE_PARALLELISM));
+
+            Object serviced = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName("net.ivango:type=SimulationMonitor,name=\"test\""), "CustomersServiced");
+            assertEquals(serviced, (long) count);
+
+            String metrics;
+            try (InputStream inputStream = new URL("http://localhost:" + monitor.getHttpPort() + "/metrics").openStream()) {
+                metrics = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertTrue(metrics.contains("coffee_customers_serviced_total " + count), metrics);
+            assertTrue(metrics.contains("coffee_queue_length{queue=\"dispense\",machine=\"2\"}"), metrics);
+        }
+    }
+}
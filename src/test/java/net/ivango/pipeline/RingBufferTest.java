@@ -0,0 +1,102 @@
+package net.ivango.pipeline;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+public class RingBufferTest {
+
+    @Test
+    public void offerFailsWhenFull() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        for (int i=0; i < 3; i++) { assertTrue(ring.offer(i)); }
+        assertFalse(ring.offer(3));
+        assertEquals(ring.size(), 3);
+
+        /* the entries are taken in the FIFO order, a batch frees the slots */
+        StringBuilder taken = new StringBuilder();
+        assertEquals(ring.poll(taken::append, 2), 2);
+        assertTrue(ring.offer(3));
+        assertEquals(ring.poll(taken::append, 10), 2);
+        assertEquals(taken.toString(), "0123");
+        assertEquals(ring.poll(taken::append, 10), 0);
+    }
+
+    @Test
+    public void singleSlot() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(1);
+        assertTrue(ring.offer(0));
+        assertFalse(ring.offer(1));
+
+        /* the slot is freed as soon as its entry is taken: one more entry fits while the first is processed */
+        StringBuilder taken = new StringBuilder();
+        assertEquals(ring.poll(entry -> {
+            taken.append(entry);
+            assertTrue(ring.offer(1));
+            assertFalse(ring.offer(2));
+        }, 10), 1);
+        assertEquals(ring.poll(taken::append, 10), 1);
+        assertEquals(taken.toString(), "01");
+        assertEquals(ring.poll(taken::append, 10), 0);
+    }
+
+    @Test
+    public void claimedBatchKeepsItsRoom() throws InterruptedException {
+        /* a slow consumer claims the whole ring at once: the entries not handled yet keep their slots and are still waiting */
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        for (int i=0; i < 4; i++) { assertTrue(ring.offer(i)); }
+        AtomicInteger next = new AtomicInteger(4);
+        StringBuilder taken = new StringBuilder();
+        assertEquals(ring.poll(entry -> {
+            taken.append(entry);
+            /* only the slot of the entry being handled is freed: the waiting entries never exceed the capacity */
+            assertEquals(ring.size(), 3);
+            assertTrue(ring.offer(next.getAndIncrement()));
+            assertFalse(ring.offer(-1));
+            assertEquals(ring.size(), 4);
+        }, 64), 4);
+        assertEquals(ring.poll(taken::append, 64), 4);
+        assertEquals(taken.toString(), "01234567");
+    }
+
+    @Test
+    public void passesEachEntryOnce() throws InterruptedException {
+        /* a small ring: the producers and the consumers keep blocking on each other */
+        RingBuffer<Integer> ring = new RingBuffer<>(7);
+        int producers = 4, consumers = 3, perProducer = 100_000;
+        AtomicIntegerArray received = new AtomicIntegerArray(producers * perProducer);
+        AtomicLong remaining = new AtomicLong(producers * perProducer);
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        for (int p=0; p < producers; p++) {
+            int first = p * perProducer;
+            executor.submit(() -> {
+                for (int i = first; i < first + perProducer; i++) { ring.put(i); }
+                return null;
+            });
+        }
+        for (int c=0; c < consumers; c++) {
+            executor.submit(() -> {
+                while (remaining.get() > 0) {
+                    int processed = ring.poll(entry -> {
+                        received.incrementAndGet(entry);
+                        remaining.decrementAndGet();
+                    }, 16);
+                    /* let the producers run on a single processor: busy polling consumers starve them otherwise */
+                    if (processed == 0) { Thread.yield(); }
+                }
+                return null;
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (int i=0; i < received.length(); i++) { assertEquals(received.get(i), 1, "entry " + i); }
+    }
+}
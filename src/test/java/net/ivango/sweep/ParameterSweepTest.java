@@ -0,0 +1,91 @@
+package net.ivango.sweep;
+
+import net.ivango.arrivals.PoissonArrivals;
+import net.ivango.components.StandardDispatchPolicy;
+import net.ivango.config.Config;
+import net.ivango.metrics.ReportFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.ivango.config.Properties.PAYMENT_PARALLELISM;
+import static net.ivango.config.Properties.PICK_COFFEE_PARALLELISM;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Sweeps the staffing of the coffee-drinking process.
+ * The comparative html report is generated.
+ */
+public class ParameterSweepTest {
+
+    private Logger logger = LoggerFactory.getLogger(ParameterSweepTest.class);
+
+    @Test
+    public void sweepParallelism() {
+        ParameterSweep sweep = new ParameterSweep(Config.load())
+                .vary(PAYMENT_PARALLELISM, 1, 3, 1)
+                .vary(PICK_COFFEE_PARALLELISM, 1, 4, 1)
+                .withServiceTimeSla(10_000);
+        /* beyond the capacity of a single coffee machine */
+        List<SweepResult> results = sweep.run(20000, random -> new PoissonArrivals(50, random));
+        results.forEach( result -> logger.info(result.toString()) );
+        sweep.processResults(results);
+
+        assertEquals(results.size(), 12);
+        assertEquals((int) results.get(0).getSettings().get(PAYMENT_PARALLELISM), 1);
+        assertEquals((int) results.get(11).getSettings().get(PICK_COFFEE_PARALLELISM), 4);
+        /* each simulation uses its own settings: an extra coffee machine shortens the queue */
+        assertTrue(results.get(0).getP99ServiceTime() > results.get(1).getP99ServiceTime());
+    }
+
+    @Test
+    public void compareDispatchPolicies() throws IOException {
+        ParameterSweep sweep = new ParameterSweep(Config.load().with(PICK_COFFEE_PARALLELISM, 3))
+                .varyDispatchPolicy(StandardDispatchPolicy.values())
+                .withSeed(42);
+        List<SweepResult> results = sweep.run(10000, random -> new PoissonArrivals(50, random));
+        results.forEach( result -> logger.info(result.toString()) );
+
+        assertEquals(results.size(), StandardDispatchPolicy.values().length);
+        for (int i=0; i < results.size(); i++) { assertEquals(results.get(i).getDispatchPolicy(), StandardDispatchPolicy.values()[i]); }
+        /* a random choice ignores the queues: its tail is the longest */
+        SweepResult random = results.get(StandardDispatchPolicy.RANDOM.ordinal());
+        SweepResult shortestQueue = results.get(StandardDispatchPolicy.JOIN_SHORTEST_QUEUE.ordinal());
+        assertTrue(shortestQueue.getP99ServiceTime() < random.getP99ServiceTime());
+
+        StringWriter report = new StringWriter();
+        sweep.writeReport(results, report, ReportFormat.MARKDOWN);
+        for (StandardDispatchPolicy policy : StandardDispatchPolicy.values()) {
+            assertTrue(report.toString().contains("Dispatch policy: " + policy.toString().replace("_", "\\_")), policy.toString());
+        }
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws IOException {
+        Path checkpoint = Files.createTempFile("coffee-modeling", ".sweep");
+        Files.delete(checkpoint);
+        try {
+            AtomicInteger simulations = new AtomicInteger();
+            List<SweepResult> first = new ParameterSweep(Config.load()).vary(PICK_COFFEE_PARALLELISM, 1, 3, 1).withSeed(42).withCheckpoint(checkpoint)
+                    .run(5000, random -> { simulations.incrementAndGet(); return new PoissonArrivals(50, random); });
+            assertEquals(simulations.get(), 3);
+
+            /* an extended sweep only simulates the new configuration */
+            List<SweepResult> resumed = new ParameterSweep(Config.load()).vary(PICK_COFFEE_PARALLELISM, 1, 4, 1).withSeed(42).withCheckpoint(checkpoint)
+                    .run(5000, random -> { simulations.incrementAndGet(); return new PoissonArrivals(50, random); });
+            assertEquals(simulations.get(), 4);
+            assertEquals(resumed.size(), 4);
+            for (int i=0; i < first.size(); i++) { assertEquals(resumed.get(i).toString(), first.get(i).toString()); }
+        } finally {
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+}